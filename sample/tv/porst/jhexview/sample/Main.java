@@ -3,7 +3,6 @@ package tv.porst.jhexview.sample;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 import javax.swing.AbstractAction;
@@ -14,7 +13,7 @@ import javax.swing.JMenuBar;
 
 import tv.porst.jhexview.JHexView;
 import tv.porst.jhexview.JHexView.DefinitionStatus;
-import tv.porst.jhexview.SimpleDataProvider;
+import tv.porst.jhexview.MappedFileDataProvider;
 
 /**
  * Sample application that demonstrates a minimal use of the JHexView component.
@@ -38,6 +37,11 @@ public final class Main {
 		final JMenu menu = new JMenu("File");
 		menu.add(new AbstractAction("Open") {
 
+			/**
+			 * The provider of the opened file.
+			 */
+			private MappedFileDataProvider m_provider;
+
 			@Override
 			public void actionPerformed(final ActionEvent arg0) {
 
@@ -48,7 +52,15 @@ public final class Main {
 					final File file = chooser.getSelectedFile();
 
 					try {
-						hexView.setData(new SimpleDataProvider(readFile(file)));
+						final MappedFileDataProvider provider = new MappedFileDataProvider(file);
+
+						// Release the mappings of the previous file
+						if (m_provider != null) {
+							m_provider.close();
+						}
+						m_provider = provider;
+
+						hexView.setData(provider);
 						hexView.setDefinitionStatus(DefinitionStatus.DEFINED);
 						hexView.setEnabled(true);
 					} catch (final IOException e) {
@@ -65,23 +77,4 @@ public final class Main {
 
 		frame.setVisible(true);
 	}
-
-	public static byte[] readFile(final File file) throws IOException {
-
-		if (file == null) {
-			throw new IllegalArgumentException("File argument must not be null");
-		}
-
-		final FileInputStream inputStream = new FileInputStream(file);
-		final byte[] data = new byte[(int) file.length()];
-
-		try {
-			inputStream.read(data);
-		}
-		finally {
-			inputStream.close();
-		}
-
-		return data;
-	}
 }
@@ -0,0 +1,351 @@
+package tv.porst.jhexview;
+
+import java.util.Arrays;
+
+/**
+ * Searches a byte pattern that may differ from the data in up to k bytes
+ * (Hamming distance).
+ *
+ * The search is bit-parallel (Wu-Manber extension of Shift-Or): for every
+ * number of mismatches j from 0 to k, a 64-bit state word tracks which
+ * prefixes of the pattern end at the current byte with at most j mismatches.
+ * Every byte of the data costs a table lookup and a few shifts and logical
+ * operations per allowed mismatch, so patterns are limited to 64 bytes. The
+ * states are carried from block to block, so blocks don't need to overlap.
+ *
+ * A searcher can be reused for any number of searches, but not by several
+ * threads at the same time.
+ */
+public final class ApproximateSearcher
+{
+  /**
+   * Maximum length of a pattern.
+   */
+  public static final int MAX_PATTERN_LENGTH = 64;
+
+  /**
+   * Number of states that are kept in local variables while searching. Up to
+   * this number minus one mismatches are searched faster.
+   */
+  private static final int UNROLLED_STATES = 4;
+
+  /**
+   * Receives the matches of {@link ApproximateSearcher#findAll}.
+   */
+  public interface IMatchHandler
+  {
+    /**
+     * Called for every match.
+     *
+     * @param offset
+     *          Offset of the match.
+     * @param mismatches
+     *          Positions of the mismatched bytes within the match in
+     *          ascending order. The array is reused for the next match.
+     * @param count
+     *          Number of mismatched bytes.
+     *
+     * @return True, to continue the search. False, to stop it.
+     */
+    boolean matchFound(long offset, int[] mismatches, int count);
+  }
+
+  private final byte[] m_pattern;
+
+  private final int m_maxMismatches;
+
+  /**
+   * Bit i of the mask of a byte is cleared if the pattern has the byte at
+   * position i.
+   */
+  private final long[] m_masks = new long[256];
+
+  /**
+   * Buffer that receives the blocks.
+   */
+  private byte[] m_buffer;
+
+  /**
+   * Positions of the mismatches of the current match.
+   */
+  private final int[] m_mismatches;
+
+  /**
+   * Creates a new searcher.
+   *
+   * @param pattern
+   *          The pattern to search.
+   * @param maxMismatches
+   *          Maximum number of bytes in which a match may differ from the
+   *          pattern.
+   *
+   * @throws IllegalArgumentException
+   *           Thrown if the pattern is empty or longer than 64 bytes, or if
+   *           the number of mismatches is negative or not smaller than the
+   *           length of the pattern.
+   */
+  public ApproximateSearcher(final byte[] pattern, final int maxMismatches)
+  {
+    if (pattern == null) {
+      throw new NullPointerException("Error: Pattern can't be null");
+    }
+
+    if (pattern.length == 0 || pattern.length > MAX_PATTERN_LENGTH) {
+      throw new IllegalArgumentException("Error: Pattern must have 1 to " + MAX_PATTERN_LENGTH + " bytes");
+    }
+
+    if (maxMismatches < 0 || maxMismatches >= pattern.length) {
+      throw new IllegalArgumentException("Error: Invalid number of mismatches");
+    }
+
+    m_pattern = pattern.clone();
+    m_maxMismatches = maxMismatches;
+    m_mismatches = new int[pattern.length];
+
+    Arrays.fill(m_masks, -1L);
+    for (int i = 0; i < pattern.length; i++) {
+      m_masks[pattern[i] & 255] &= ~(1L << i);
+    }
+  }
+
+  /**
+   * Reports all matches that lie completely within the specified window in
+   * ascending order, including overlapping matches.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window. It is limited to the length of the
+   *          data.
+   * @param handler
+   *          The handler that receives the matches.
+   *
+   * @return True, if the whole window has been searched. False, if the handler
+   *         has stopped the search.
+   */
+  public boolean findAll(final IDataProvider data, long from, long to, final IMatchHandler handler)
+  {
+    if (handler == null) {
+      throw new NullPointerException("Error: Handler can't be null");
+    }
+
+    from = Math.max(from, 0);
+    to = Math.min(to, LargeDataProviderAdapter.getDataLength(data));
+
+    final int length = m_pattern.length;
+    final long[] states = new long[Math.max(m_maxMismatches + 1, UNROLLED_STATES)];
+    Arrays.fill(states, -1L);
+
+    final byte[] buffer = getBuffer();
+    for (long blockStart = from; blockStart < to;) {
+      final int count = Math.max(0, data.read(blockStart, buffer, 0, (int) Math.min(buffer.length, to - blockStart)));
+      if (count == 0) {
+        break;
+      }
+
+      for (int end = advance(states, buffer, 0, count); end >= 0; end = advance(states, buffer, end, count)) {
+        final long offset = blockStart + end - length;
+        final int mismatches = getMismatches(data, buffer, end - length, offset);
+        if (!handler.matchFound(offset, m_mismatches, mismatches)) {
+          return false;
+        }
+      }
+
+      blockStart += count;
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the maximum number of mismatched bytes of a match.
+   */
+  public int getMaxMismatches()
+  {
+    return m_maxMismatches;
+  }
+
+  /**
+   * Returns the positions of the bytes in which the data differs from the
+   * pattern.
+   *
+   * @param data
+   *          The data.
+   * @param offset
+   *          The offset of the compared bytes.
+   *
+   * @return The positions relative to the offset in ascending order.
+   */
+  public int[] getMismatches(final IDataProvider data, final long offset)
+  {
+    final int count = getMismatches(data, null, -1, offset);
+    return Arrays.copyOf(m_mismatches, count);
+  }
+
+  /**
+   * Returns the offset of the first match that lies completely within the
+   * specified window.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window.
+   *
+   * @return The offset of the first match, or -1 if there is no match.
+   */
+  public long indexOf(final IDataProvider data, final long from, final long to)
+  {
+    final long[] result = { -1 };
+    findAll(data, from, to, new IMatchHandler() {
+      @Override
+      public boolean matchFound(final long offset, final int[] mismatches, final int count)
+      {
+        result[0] = offset;
+        return false;
+      }
+    });
+    return result[0];
+  }
+
+  /**
+   * Returns the offset of the last match that lies completely within the
+   * specified window.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window.
+   *
+   * @return The offset of the last match, or -1 if there is no match.
+   */
+  public long lastIndexOf(final IDataProvider data, long from, long to)
+  {
+    from = Math.max(from, 0);
+    to = Math.min(to, LargeDataProviderAdapter.getDataLength(data));
+
+    // Search the window in blocks from its end, every block continues into
+    // the following one to complete the matches that start in it
+    final long[] result = { -1 };
+    final int overlap = m_pattern.length - 1;
+    for (long end = to; end > from; end -= ByteSearcher.DEFAULT_BLOCK_SIZE) {
+      final long start = Math.max(from, end - ByteSearcher.DEFAULT_BLOCK_SIZE);
+      final long limit = end;
+      findAll(data, start, Math.min(to, end + overlap), new IMatchHandler() {
+        @Override
+        public boolean matchFound(final long offset, final int[] mismatches, final int count)
+        {
+          if (offset < limit) {
+            result[0] = offset;
+          }
+          return true;
+        }
+      });
+
+      if (result[0] >= 0) {
+        break;
+      }
+    }
+
+    return result[0];
+  }
+
+  /**
+   * Advances the states over the bytes [start, count) of the buffer until a
+   * match ends. A cleared bit i of state j marks that the first i + 1 bytes
+   * of the pattern end at the current byte with at most j mismatches.
+   *
+   * @return The index behind the last byte of the match, or -1 if no match
+   *         ends within the bytes.
+   */
+  private int advance(final long[] states, final byte[] buffer, final int start, final int count)
+  {
+    final long[] masks = m_masks;
+    final long found = 1L << (m_pattern.length - 1);
+    final int k = m_maxMismatches;
+
+    if (states.length == UNROLLED_STATES) {
+      // Keep the states in local variables. States behind the k-th one are
+      // updated as well, but never checked.
+      long state0 = states[0];
+      long state1 = states[1];
+      long state2 = states[2];
+      long state3 = states[3];
+      int end = -1;
+      for (int i = start; i < count; i++) {
+        final long mask = masks[buffer[i] & 255];
+        state3 = (state3 << 1 | mask) & state2 << 1;
+        state2 = (state2 << 1 | mask) & state1 << 1;
+        state1 = (state1 << 1 | mask) & state0 << 1;
+        state0 = state0 << 1 | mask;
+        if (((k == 0 ? state0 : k == 1 ? state1 : k == 2 ? state2 : state3) & found) == 0) {
+          end = i + 1;
+          break;
+        }
+      }
+      states[0] = state0;
+      states[1] = state1;
+      states[2] = state2;
+      states[3] = state3;
+      return end;
+    }
+
+    for (int i = start; i < count; i++) {
+      final long mask = masks[buffer[i] & 255];
+      long previous = states[0];
+      states[0] = previous << 1 | mask;
+      for (int j = 1; j <= k; j++) {
+        final long state = states[j];
+        states[j] = (state << 1 | mask) & previous << 1;
+        previous = state;
+      }
+
+      if ((states[k] & found) == 0) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+  private byte[] getBuffer()
+  {
+    if (m_buffer == null) {
+      m_buffer = new byte[ByteSearcher.DEFAULT_BLOCK_SIZE];
+    }
+    return m_buffer;
+  }
+
+  /**
+   * Collects the positions in which the bytes at the specified offset differ
+   * from the pattern. The bytes are taken from the buffer if they start at a
+   * valid index, and are read from the data otherwise.
+   *
+   * @return The number of mismatches.
+   */
+  private int getMismatches(final IDataProvider data, final byte[] buffer, final int index,
+                            final long offset)
+  {
+    byte[] bytes = buffer;
+    int start = index;
+    if (bytes == null || start < 0) {
+      bytes = new byte[m_pattern.length];
+      start = 0;
+      if (data.read(offset, bytes, 0, bytes.length) != bytes.length) {
+        throw new IllegalArgumentException("Error: Offset is out of bounds");
+      }
+    }
+
+    int count = 0;
+    for (int i = 0; i < m_pattern.length; i++) {
+      if (bytes[start + i] != m_pattern[i]) {
+        m_mismatches[count++] = i;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,680 @@
+package tv.porst.jhexview;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tv.porst.splib.convert.ConvertHelpers;
+
+/**
+ * Searches a byte pattern in the data of a data provider.
+ *
+ * The data is read in large blocks into a reusable buffer, and every block is
+ * searched with the Boyer-Moore algorithm. Consecutive blocks overlap by the
+ * length of the pattern minus one byte, so matches that straddle block
+ * boundaries are found as well. Searches can run forward or backward.
+ *
+ * Case-insensitive searches fold the pattern and each block through a table
+ * with 256 entries before comparing them.
+ *
+ * Forward searches can also be spread over the threads of a
+ * {@link ForkJoinPool} with {@link #indexOf(IDataProvider, long, long, ForkJoinPool)}.
+ * {@link #findAll(IDataProvider, long, long, IMatchHandler)} reports all
+ * matches of a window block by block.
+ *
+ * A searcher can be reused for any number of searches, but not by several
+ * threads at the same time.
+ */
+public final class ByteSearcher
+{
+  /**
+   * Default size of the blocks read from the data provider.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+  /**
+   * Minimum number of blocks per chunk of a parallel search.
+   */
+  private static final int MIN_BLOCKS_PER_CHUNK = 4;
+
+  /**
+   * Number of chunks per thread of a parallel search. More chunks balance the
+   * load better, fewer chunks cause less overhead.
+   */
+  private static final int CHUNKS_PER_THREAD = 8;
+
+  /**
+   * Tables that convert printable characters to lower case, by charset.
+   */
+  private static final Map<Charset, byte[]> s_foldTables = new HashMap<Charset, byte[]>();
+
+  /**
+   * The pattern, already folded.
+   */
+  private final byte[] m_pattern;
+
+  /**
+   * Folding table or null if the search is case-sensitive.
+   */
+  private final byte[] m_foldTable;
+
+  /**
+   * Boyer-Moore tables of the pattern for forward searches.
+   */
+  private final int[] m_byteTable;
+  private final int[] m_offsetTable;
+
+  /**
+   * The reversed pattern and its Boyer-Moore tables for backward searches.
+   * Created when needed.
+   */
+  private byte[] m_reversedPattern;
+  private int[] m_reversedByteTable;
+  private int[] m_reversedOffsetTable;
+
+  /**
+   * Size of the blocks read from the data provider.
+   */
+  private final int m_blockSize;
+
+  /**
+   * Receives the matches of {@link ByteSearcher#findAll}.
+   */
+  public interface IMatchHandler
+  {
+    /**
+     * Called after every searched block.
+     *
+     * @param matches
+     *          Offsets of the matches found in the block in ascending order.
+     *          The array is reused for the next block.
+     * @param count
+     *          Number of matches in the array.
+     * @param position
+     *          Offset up to which the window has been searched.
+     *
+     * @return True, to continue the search. False, to stop it.
+     */
+    boolean blockSearched(long[] matches, int count, long position);
+  }
+
+  /**
+   * Buffer that receives the blocks.
+   */
+  private byte[] m_buffer;
+
+  /**
+   * Creates a searcher that reads blocks of the default size.
+   *
+   * @param pattern
+   *          The pattern to search.
+   * @param caseSensitive
+   *          False, to ignore the case of printable characters.
+   */
+  public ByteSearcher(final byte[] pattern, final boolean caseSensitive)
+  {
+    this(pattern, caseSensitive, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a new searcher.
+   *
+   * @param pattern
+   *          The pattern to search.
+   * @param caseSensitive
+   *          False, to ignore the case of printable characters.
+   * @param blockSize
+   *          Size of the blocks read from the data provider. Blocks are
+   *          enlarged if they can't hold the pattern twice.
+   *
+   * @throws NullPointerException
+   *           Thrown if the pattern is null.
+   * @throws IllegalArgumentException
+   *           Thrown if the block size is not positive.
+   */
+  public ByteSearcher(final byte[] pattern, final boolean caseSensitive, final int blockSize)
+  {
+    if (pattern == null) {
+      throw new NullPointerException("Error: Pattern can't be null");
+    }
+
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Error: Block size must be positive");
+    }
+
+    m_foldTable = caseSensitive ? null : getLowerCaseTable();
+    m_pattern = pattern.clone();
+    fold(m_pattern, 0, m_pattern.length);
+
+    m_byteTable = makeByteTable(m_pattern);
+    m_offsetTable = makeOffsetTable(m_pattern);
+    m_blockSize = (int) Math.min(Math.max(blockSize, 2L * m_pattern.length), Integer.MAX_VALUE - 8);
+  }
+
+  /**
+   * Creates a searcher that shares the pattern and tables of another
+   * searcher, but has its own buffer.
+   */
+  private ByteSearcher(final ByteSearcher searcher)
+  {
+    m_pattern = searcher.m_pattern;
+    m_foldTable = searcher.m_foldTable;
+    m_byteTable = searcher.m_byteTable;
+    m_offsetTable = searcher.m_offsetTable;
+    m_blockSize = searcher.m_blockSize;
+  }
+
+  /**
+   * Returns a table that converts printable ASCII characters to lower case,
+   * as used by case-insensitive searches.
+   */
+  public static byte[] getLowerCaseTable()
+  {
+    return getFoldTable(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Returns a table that converts the bytes of printable characters of the
+   * specified charset to the bytes of their lower case characters. The tables
+   * are computed once per charset.
+   *
+   * For charsets that encode every character as a single byte, every byte
+   * whose lower case character is encoded as a single byte again is folded.
+   * For other charsets, single bytes don't stand for characters, so only the
+   * ASCII letters are folded.
+   *
+   * @param charset
+   *          The charset.
+   *
+   * @return The table with 256 entries.
+   */
+  public static byte[] getFoldTable(final Charset charset)
+  {
+    if (charset == null) {
+      throw new NullPointerException("Error: Charset can't be null");
+    }
+
+    synchronized (s_foldTables) {
+      byte[] table = s_foldTables.get(charset);
+      if (table == null) {
+        table = new byte[256];
+        for (int i = 0; i < table.length; i++) {
+          table[i] = (byte) i;
+        }
+
+        final CharsetEncoder encoder = charset.canEncode() ? charset.newEncoder() : null;
+        if (encoder != null && encoder.maxBytesPerChar() == 1.0f) {
+          final CharsetDecoder decoder = charset.newDecoder();
+          for (int i = 0; i < table.length; i++) {
+            try {
+              final CharBuffer chars = decoder.decode(ByteBuffer.wrap(new byte[] { (byte) i }));
+              if (chars.length() == 1 && ConvertHelpers.isPrintableCharacter(chars.get(0))) {
+                final char lower = Character.toLowerCase(chars.get(0));
+                if (encoder.canEncode(lower)) {
+                  final ByteBuffer bytes = encoder.encode(CharBuffer.wrap(new char[] { lower }));
+                  if (bytes.remaining() == 1) {
+                    table[i] = bytes.get(0);
+                  }
+                }
+              }
+            }
+            catch (final CharacterCodingException exception) {
+              // Bytes that don't stand for a character are not folded
+            }
+          }
+        }
+        else {
+          for (int i = 'A'; i <= 'Z'; i++) {
+            table[i] = (byte) Character.toLowerCase(i);
+          }
+        }
+
+        s_foldTables.put(charset, table);
+      }
+      return table.clone();
+    }
+  }
+
+  /**
+   * Reports all matches that lie completely within the specified window in
+   * ascending order, including overlapping matches. The handler is called on
+   * the calling thread after every block.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window. It is limited to the length of the
+   *          data.
+   * @param handler
+   *          The handler that receives the matches.
+   *
+   * @return True, if the whole window has been searched. False, if the handler
+   *         has stopped the search.
+   */
+  public boolean findAll(final IDataProvider data, long from, long to, final IMatchHandler handler)
+  {
+    if (handler == null) {
+      throw new NullPointerException("Error: Handler can't be null");
+    }
+
+    from = Math.max(from, 0);
+    to = Math.min(to, LargeDataProviderAdapter.getDataLength(data));
+    final int length = m_pattern.length;
+    if (length == 0) {
+      return handler.blockSearched(new long[0], 0, Math.max(from, to));
+    }
+
+    final byte[] buffer = getBuffer();
+    long[] matches = new long[64];
+    long blockStart = from;
+    while (to - blockStart >= length) {
+      final int count = read(data, blockStart, (int) Math.min(buffer.length, to - blockStart));
+      if (count < length) {
+        break;
+      }
+
+      // Matches that start in the overlap with the next block are not complete
+      // here, so every match is reported exactly once
+      int found = 0;
+      for (int index = searchForward(buffer, 0, count); index >= 0;
+           index = searchForward(buffer, index + 1, count)) {
+        if (found == matches.length) {
+          matches = Arrays.copyOf(matches, found * 2);
+        }
+        matches[found++] = blockStart + index;
+      }
+
+      final boolean last = blockStart + count >= to;
+      if (!handler.blockSearched(matches, found, last ? to : blockStart + count - (length - 1))) {
+        return false;
+      }
+
+      if (last) {
+        return true;
+      }
+
+      blockStart += count - (length - 1);
+    }
+
+    return handler.blockSearched(matches, 0, Math.max(from, to));
+  }
+
+  /**
+   * Returns the length of the pattern.
+   */
+  public int getPatternLength()
+  {
+    return m_pattern.length;
+  }
+
+  /**
+   * Returns the offset of the first match that lies completely within the
+   * specified window.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window. It is limited to the length of the
+   *          data.
+   *
+   * @return The offset of the first match, or -1 if there is no match.
+   */
+  public long indexOf(final IDataProvider data, long from, long to)
+  {
+    from = Math.max(from, 0);
+    to = Math.min(to, LargeDataProviderAdapter.getDataLength(data));
+    if (m_pattern.length == 0) {
+      return from <= to ? from : -1;
+    }
+
+    return indexOf(data, from, to, (AtomicLong) null);
+  }
+
+  /**
+   * Returns the offset of the first match that lies completely within the
+   * specified window. The window is split into overlapping chunks that are
+   * searched by the threads of the specified pool, in ascending order. Once a
+   * match has been found, chunks behind it are skipped or cancelled.
+   *
+   * The data provider must support concurrent reads.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window. It is limited to the length of the
+   *          data.
+   * @param pool
+   *          The pool whose threads perform the search.
+   *
+   * @return The offset of the first match, or -1 if there is no match.
+   */
+  public long indexOf(final IDataProvider data, long from, long to, final ForkJoinPool pool)
+  {
+    if (pool == null) {
+      throw new NullPointerException("Error: Pool can't be null");
+    }
+
+    from = Math.max(from, 0);
+    to = Math.min(to, LargeDataProviderAdapter.getDataLength(data));
+    final int threads = pool.getParallelism();
+    if (m_pattern.length == 0 || threads <= 1
+        || to - from <= (long) MIN_BLOCKS_PER_CHUNK * m_blockSize) {
+      return indexOf(data, from, to);
+    }
+
+    final long chunkSize = Math.max((long) MIN_BLOCKS_PER_CHUNK * m_blockSize,
+                                    (to - from) / ((long) threads * CHUNKS_PER_THREAD));
+    final long start = from;
+    final long end = to;
+    final int overlap = m_pattern.length - 1;
+
+    // Offset of the first match found so far, Long.MAX_VALUE if none
+    final AtomicLong found = new AtomicLong(Long.MAX_VALUE);
+    ParallelChunks.process(pool, threads, (int) ((end - start + chunkSize - 1) / chunkSize),
+                           new ParallelChunks.IChunkHandler<ByteSearcher>() {
+      @Override
+      public ByteSearcher createState()
+      {
+        return new ByteSearcher(ByteSearcher.this);
+      }
+
+      @Override
+      public boolean processChunk(final int index, final ByteSearcher searcher, final AtomicBoolean stopped)
+      {
+        // Chunks behind a match don't need to be searched
+        final long chunkStart = start + index * chunkSize;
+        if (found.get() < chunkStart) {
+          return false;
+        }
+
+        // Chunks overlap, so that matches across chunk boundaries are found
+        final long chunkEnd = Math.min(chunkStart + chunkSize + overlap, end);
+        final long offset = searcher.indexOf(data, chunkStart, chunkEnd, found);
+        if (offset >= 0) {
+          long current = found.get();
+          while (offset < current && !found.compareAndSet(current, offset)) {
+            current = found.get();
+          }
+        }
+        return true;
+      }
+    });
+
+    return found.get() == Long.MAX_VALUE ? -1 : found.get();
+  }
+
+  /**
+   * Returns the offset of the first match within the window, searching block
+   * by block. Stops early if another thread has found a match before the
+   * current block.
+   */
+  private long indexOf(final IDataProvider data, final long from, final long to,
+                       final AtomicLong found)
+  {
+    final int length = m_pattern.length;
+    final byte[] buffer = getBuffer();
+    long blockStart = from;
+    while (to - blockStart >= length) {
+      if (found != null && found.get() < blockStart) {
+        break;
+      }
+
+      final int count = read(data, blockStart, (int) Math.min(buffer.length, to - blockStart));
+      if (count < length) {
+        break;
+      }
+
+      final int index = searchForward(buffer, 0, count);
+      if (index >= 0) {
+        return blockStart + index;
+      }
+
+      if (blockStart + count >= to) {
+        break;
+      }
+
+      // The next block repeats the bytes that may start a straddling match
+      blockStart += count - (length - 1);
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the offset of the last match that lies completely within the
+   * specified window.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window. It is limited to the length of the
+   *          data.
+   *
+   * @return The offset of the last match, or -1 if there is no match.
+   */
+  public long lastIndexOf(final IDataProvider data, long from, long to)
+  {
+    from = Math.max(from, 0);
+    to = Math.min(to, LargeDataProviderAdapter.getDataLength(data));
+    final int length = m_pattern.length;
+    if (length == 0) {
+      return from <= to ? to : -1;
+    }
+
+    prepareBackwardSearch();
+
+    final byte[] buffer = getBuffer();
+    long blockEnd = to;
+    while (blockEnd - from >= length) {
+      final int size = (int) Math.min(buffer.length, blockEnd - from);
+      final long blockStart = blockEnd - size;
+      final int count = read(data, blockStart, size);
+      if (count < length) {
+        break;
+      }
+
+      final int index = searchBackward(buffer, count);
+      if (index >= 0) {
+        return blockStart + index;
+      }
+
+      if (blockStart <= from) {
+        break;
+      }
+
+      // The next block repeats the bytes that may end a straddling match
+      blockEnd = blockStart + length - 1;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Folds the specified bytes in place if the search is case-insensitive.
+   */
+  private void fold(final byte[] data, final int offset, final int length)
+  {
+    final byte[] table = m_foldTable;
+    if (table != null) {
+      for (int i = offset; i < offset + length; i++) {
+        data[i] = table[data[i] & 255];
+      }
+    }
+  }
+
+  private byte[] getBuffer()
+  {
+    if (m_buffer == null) {
+      m_buffer = new byte[m_blockSize];
+    }
+    return m_buffer;
+  }
+
+  /**
+   * Creates the tables for backward searches if necessary.
+   */
+  private void prepareBackwardSearch()
+  {
+    if (m_reversedPattern == null) {
+      final byte[] reversed = new byte[m_pattern.length];
+      for (int i = 0; i < reversed.length; i++) {
+        reversed[i] = m_pattern[m_pattern.length - 1 - i];
+      }
+      m_reversedByteTable = makeByteTable(reversed);
+      m_reversedOffsetTable = makeOffsetTable(reversed);
+      m_reversedPattern = reversed;
+    }
+  }
+
+  /**
+   * Reads and folds a block of data into the buffer.
+   *
+   * @return The number of bytes read.
+   */
+  private int read(final IDataProvider data, final long offset, final int length)
+  {
+    final int count = Math.max(0, data.read(offset, m_buffer, 0, length));
+    fold(m_buffer, 0, count);
+    return count;
+  }
+
+  /**
+   * Returns the index of the first match within the bytes [start, count) of
+   * the buffer, or -1 if there is no match.
+   */
+  private int searchForward(final byte[] buffer, final int start, final int count)
+  {
+    final byte[] pattern = m_pattern;
+    final int last = pattern.length - 1;
+
+    for (int i = start + last; i < count;) {
+      int j = last;
+      byte b;
+      while (pattern[j] == (b = buffer[i])) {
+        if (j == 0) {
+          return i;
+        }
+        i--;
+        j--;
+      }
+      i += Math.max(m_offsetTable[last - j], m_byteTable[b & 255]);
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the last match within the first count bytes of the
+   * buffer, or -1 if there is no match. This is a forward search for the
+   * reversed pattern in the reversed buffer.
+   */
+  private int searchBackward(final byte[] buffer, final int count)
+  {
+    final byte[] pattern = m_reversedPattern;
+    final int last = pattern.length - 1;
+
+    // Position i of the reversed buffer is position count - 1 - i of the buffer
+    for (int i = last; i < count;) {
+      int j = last;
+      byte b;
+      while (pattern[j] == (b = buffer[count - 1 - i])) {
+        if (j == 0) {
+          return count - 1 - i - last;
+        }
+        i--;
+        j--;
+      }
+      i += Math.max(m_reversedOffsetTable[last - j], m_reversedByteTable[b & 255]);
+    }
+    return -1;
+  }
+
+  /**
+   * Based on reference implementation from
+   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
+   *
+   * Makes the jump table based on the mismatched byte information.
+   */
+  private static int[] makeByteTable(byte[] pattern)
+  {
+    int[] table = new int[256];
+    for (int i = 0; i < table.length; i++) {
+      table[i] = pattern.length;
+    }
+    for (int i = 0; i < pattern.length - 1; i++) {
+      table[pattern[i] & 255] = pattern.length - 1 - i;
+    }
+    return table;
+  }
+
+  /**
+   * Based on reference implementation from
+   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
+   *
+   * Makes the jump table based on the scan offset which mismatch occurs.
+   */
+  private static int[] makeOffsetTable(byte[] pattern)
+  {
+    int[] table = new int[Math.max(pattern.length, 1)];
+    int lastPrefixPos = pattern.length;
+    for (int i = pattern.length - 1; i >= 0; i--) {
+      if (isPrefix(pattern, i + 1)) {
+        lastPrefixPos = i + 1;
+      }
+      table[pattern.length - 1 - i] = lastPrefixPos - i + pattern.length - 1;
+    }
+    for (int i = 0; i < pattern.length - 1; i++) {
+      int slen = suffixLength(pattern, i);
+      table[slen] = pattern.length - 1 - i + slen;
+    }
+    return table;
+  }
+
+  /**
+   * Based on reference implementation from
+   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
+   *
+   * Is pattern[p:end] a prefix of pattern?
+   */
+  private static boolean isPrefix(byte[] pattern, int p)
+  {
+    for (int i = p, j = 0; i < pattern.length; i++, j++) {
+      if (pattern[i] != pattern[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Based on reference implementation from
+   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
+   *
+   * Returns the maximum length of the subpattern ends at p and is a suffix.
+   */
+  private static int suffixLength(byte[] pattern, int p)
+  {
+    int len = 0;
+    for (int i = p, j = pattern.length - 1; i >= 0 && pattern[i] == pattern[j]; i--, j--) {
+      len += 1;
+    }
+    return len;
+  }
+}
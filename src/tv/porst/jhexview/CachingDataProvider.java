@@ -0,0 +1,586 @@
+package tv.porst.jhexview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Data provider that caches the data of a slow data provider in fixed-size
+ * pages. Pages are kept in a least-recently-used order and evicted once the
+ * cached data exceeds the configured byte budget.
+ *
+ * Repeated reads of the same region, e.g. the visible part of the hex view
+ * that is requested on every repaint, are served from the cache without
+ * accessing the backing provider. Changes made through this provider update
+ * the cached pages, changes reported by the backing provider invalidate the
+ * affected pages only.
+ *
+ * All methods are thread-safe. The backing provider is never accessed while
+ * holding the cache lock, except for writes.
+ */
+public final class CachingDataProvider implements ILargeDataProvider
+{
+  /**
+   * Default size of a single cache page in bytes.
+   */
+  public static final int DEFAULT_PAGE_SIZE = 4096;
+
+  /**
+   * Default maximum number of cached bytes.
+   */
+  public static final long DEFAULT_BYTE_BUDGET = 16L * 1024 * 1024;
+
+  /**
+   * Page returned for the data behind the end of the data.
+   */
+  private static final byte[] EMPTY_PAGE = new byte[0];
+
+  private final List<IDataChangedListener> listeners = new ArrayList<IDataChangedListener>();
+
+  /**
+   * The provider whose data is cached.
+   */
+  private final ILargeDataProvider m_source;
+
+  /**
+   * Size of a single page in bytes.
+   */
+  private final int m_pageSize;
+
+  /**
+   * Maximum number of cached bytes.
+   */
+  private final long m_byteBudget;
+
+  /**
+   * Cached pages by page index in access order. A page can be shorter than
+   * the page size if it is located at the end of the data.
+   */
+  private final LinkedHashMap<Long, byte[]> m_pages = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+
+  /**
+   * Listens for changes of the backing provider.
+   */
+  private final IDataChangedListener m_sourceListener = new IDataChangedListener() {
+    @Override
+    public void dataChanged(final DataChangedEvent event)
+    {
+      sourceChanged(event);
+    }
+  };
+
+  /**
+   * Number of bytes currently held by the cache.
+   */
+  private long m_cachedBytes = 0;
+
+  /**
+   * Incremented on every invalidation, so that pages which were read before
+   * an invalidation are not put into the cache afterwards.
+   */
+  private long m_generation = 0;
+
+  /**
+   * Set while this provider writes to the backing provider, so that the
+   * resulting notification doesn't flush the already updated pages.
+   */
+  private boolean m_writing = false;
+
+  private long m_hits = 0;
+  private long m_misses = 0;
+  private long m_evictions = 0;
+
+  /**
+   * Creates a cache with the default page size and byte budget.
+   *
+   * @param source
+   *          The provider whose data is cached.
+   */
+  public CachingDataProvider(final IDataProvider source)
+  {
+    this(source, DEFAULT_PAGE_SIZE, DEFAULT_BYTE_BUDGET);
+  }
+
+  /**
+   * Creates a new cache.
+   *
+   * @param source
+   *          The provider whose data is cached.
+   * @param pageSize
+   *          Size of a single cache page in bytes.
+   * @param byteBudget
+   *          Maximum number of cached bytes. Must be at least the page size.
+   */
+  public CachingDataProvider(final IDataProvider source, final int pageSize, final long byteBudget)
+  {
+    if (source == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Error: Page size must be positive");
+    }
+
+    if (byteBudget < pageSize) {
+      throw new IllegalArgumentException("Error: Byte budget must be at least the page size");
+    }
+
+    m_source = LargeDataProviderAdapter.wrap(source);
+    m_pageSize = pageSize;
+    m_byteBudget = byteBudget;
+
+    m_source.addListener(m_sourceListener);
+  }
+
+  @Override
+  public void addListener(final IDataChangedListener listener)
+  {
+    synchronized (listeners) {
+      if (listener != null && !listeners.contains(listener)) {
+        listeners.add(listener);
+      }
+    }
+  }
+
+  /**
+   * Stops listening to the backing provider and clears the cache.
+   */
+  public void dispose()
+  {
+    m_source.removeListener(m_sourceListener);
+    invalidateAll();
+  }
+
+  /**
+   * Returns the maximum number of cached bytes.
+   */
+  public long getByteBudget()
+  {
+    return m_byteBudget;
+  }
+
+  /**
+   * Returns the number of bytes currently held by the cache.
+   */
+  public synchronized long getCachedBytes()
+  {
+    return m_cachedBytes;
+  }
+
+  @Override
+  public byte[] getData(final long offset, final int length)
+  {
+    if (offset < 0 || length <= 0) {
+      return new byte[0];
+    }
+
+    final byte[] data = new byte[length];
+    final int count = read(offset, data, 0, length);
+    return (count == length) ? data : Arrays.copyOf(data, count);
+  }
+
+  /**
+   * Returns the number of pages that have been evicted to stay within the byte budget.
+   */
+  public synchronized long getEvictionCount()
+  {
+    return m_evictions;
+  }
+
+  /**
+   * Returns the number of page requests that were served from the cache.
+   */
+  public synchronized long getHitCount()
+  {
+    return m_hits;
+  }
+
+  @Override
+  public long getLargeDataLength()
+  {
+    return m_source.getLargeDataLength();
+  }
+
+  /**
+   * Returns the number of page requests that had to access the backing provider.
+   */
+  public synchronized long getMissCount()
+  {
+    return m_misses;
+  }
+
+  /**
+   * Returns the size of a single cache page in bytes.
+   */
+  public int getPageSize()
+  {
+    return m_pageSize;
+  }
+
+  /**
+   * Returns the provider whose data is cached.
+   */
+  public ILargeDataProvider getSource()
+  {
+    return m_source;
+  }
+
+  @Override
+  public boolean hasData(final long offset, final int length)
+  {
+    synchronized (this) {
+      if (isCached(offset, length)) {
+        return true;
+      }
+    }
+
+    return m_source.hasData(offset, length);
+  }
+
+  /**
+   * Removes all pages that overlap the specified range from the cache.
+   *
+   * @param offset
+   *          Start of the range.
+   * @param length
+   *          Length of the range in bytes.
+   */
+  public synchronized void invalidate(final long offset, final long length)
+  {
+    if (offset < 0 || length <= 0) {
+      return;
+    }
+
+    m_generation++;
+
+    final long first = offset / m_pageSize;
+    final long last = (offset + length - 1) / m_pageSize;
+
+    if (last - first < m_pages.size()) {
+      for (long index = first; index <= last; index++) {
+        final byte[] page = m_pages.remove(index);
+        if (page != null) {
+          m_cachedBytes -= page.length;
+        }
+      }
+    } else {
+      for (final Iterator<Map.Entry<Long, byte[]>> iter = m_pages.entrySet().iterator(); iter.hasNext();) {
+        final Map.Entry<Long, byte[]> entry = iter.next();
+        if (entry.getKey() >= first && entry.getKey() <= last) {
+          m_cachedBytes -= entry.getValue().length;
+          iter.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all pages at or behind the specified offset from the cache.
+   *
+   * @param offset
+   *          Start of the invalidated data.
+   */
+  public synchronized void invalidateFrom(final long offset)
+  {
+    m_generation++;
+
+    final long first = Math.max(offset, 0) / m_pageSize;
+    for (final Iterator<Map.Entry<Long, byte[]>> iter = m_pages.entrySet().iterator(); iter.hasNext();) {
+      final Map.Entry<Long, byte[]> entry = iter.next();
+      if (entry.getKey() >= first) {
+        m_cachedBytes -= entry.getValue().length;
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Removes all pages from the cache.
+   */
+  public synchronized void invalidateAll()
+  {
+    m_generation++;
+    m_pages.clear();
+    m_cachedBytes = 0;
+  }
+
+  @Override
+  public boolean isEditable()
+  {
+    return m_source.isEditable();
+  }
+
+  @Override
+  public boolean keepTrying()
+  {
+    return m_source.keepTrying();
+  }
+
+  @Override
+  public int read(long offset, final byte[] dst, int dstOffset, int length)
+  {
+    if (offset < 0 || length <= 0) {
+      return 0;
+    }
+
+    int count = 0;
+    while (length > 0) {
+      final long index = offset / m_pageSize;
+      final int position = (int) (offset % m_pageSize);
+
+      final byte[] page = getPage(index);
+      if (page == null) {
+        // The backing provider can't deliver the data yet, read around the cache
+        return count + m_source.read(offset, dst, dstOffset, length);
+      }
+
+      final int n = Math.min(length, page.length - position);
+      if (n <= 0) {
+        break;
+      }
+
+      System.arraycopy(page, position, dst, dstOffset, n);
+      count += n;
+      offset += n;
+      dstOffset += n;
+      length -= n;
+
+      if (page.length < m_pageSize) {
+        // End of data
+        break;
+      }
+    }
+
+    return count;
+  }
+
+  @Override
+  public void removeListener(final IDataChangedListener listener)
+  {
+    synchronized (listeners) {
+      if (listener != null) {
+        listeners.remove(listener);
+      }
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> requestData(final long offset, final int length)
+  {
+    synchronized (this) {
+      if (isCached(offset, length)) {
+        return CompletableFuture.completedFuture(null);
+      }
+    }
+
+    return m_source.requestData(offset, length);
+  }
+
+  /**
+   * Resets the hit, miss and eviction counters.
+   */
+  public synchronized void resetStatistics()
+  {
+    m_hits = 0;
+    m_misses = 0;
+    m_evictions = 0;
+  }
+
+  @Override
+  public void setData(final long offset, final byte[] data)
+  {
+    synchronized (this) {
+      m_writing = true;
+      try {
+        m_source.setData(offset, data);
+      } finally {
+        m_writing = false;
+      }
+
+      updatePages(offset, data);
+    }
+
+    if (data != null) {
+      fireDataChangedListener(new DataChangedEvent(this, DataChangedEvent.Kind.OVERWRITE, offset,
+                                                   data.length));
+    }
+  }
+
+  protected void fireDataChangedListener(final DataChangedEvent event)
+  {
+    final IDataChangedListener[] targets;
+    synchronized (listeners) {
+      if (listeners.isEmpty()) {
+        return;
+      }
+      targets = listeners.toArray(new IDataChangedListener[listeners.size()]);
+    }
+
+    for (final IDataChangedListener l : targets) {
+      l.dataChanged(event);
+    }
+  }
+
+  /**
+   * Adds a page to the cache and evicts the least recently used pages until
+   * the cache fits into the byte budget again.
+   */
+  private void addPage(final long index, final byte[] page)
+  {
+    final byte[] old = m_pages.put(index, page);
+    if (old != null) {
+      m_cachedBytes -= old.length;
+    }
+    m_cachedBytes += page.length;
+
+    final Iterator<byte[]> iter = m_pages.values().iterator();
+    while (m_cachedBytes > m_byteBudget && iter.hasNext()) {
+      final byte[] eldest = iter.next();
+      if (eldest == page) {
+        continue;
+      }
+      m_cachedBytes -= eldest.length;
+      m_evictions++;
+      iter.remove();
+    }
+  }
+
+  /**
+   * Returns the page with the given index, reading it from the backing
+   * provider if necessary.
+   *
+   * @return The page or null if the backing provider has no data for it yet.
+   */
+  private byte[] getPage(final long index)
+  {
+    final long generation;
+    synchronized (this) {
+      final byte[] page = m_pages.get(index);
+      if (page != null) {
+        m_hits++;
+        return page;
+      }
+      m_misses++;
+      generation = m_generation;
+    }
+
+    // The last page is shorter than the page size, pages behind the end of
+    // the data are empty and never cached
+    final long start = index * m_pageSize;
+    final int length = (int) Math.max(0, Math.min(m_pageSize, m_source.getLargeDataLength() - start));
+    if (length == 0) {
+      return EMPTY_PAGE;
+    }
+
+    if (!m_source.hasData(start, length)) {
+      return null;
+    }
+
+    byte[] page = new byte[length];
+    final int count = m_source.read(start, page, 0, length);
+    if (count < length) {
+      page = Arrays.copyOf(page, Math.max(count, 0));
+    }
+
+    synchronized (this) {
+      if (generation == m_generation && page.length > 0) {
+        addPage(index, page);
+      }
+    }
+
+    return page;
+  }
+
+  /**
+   * Returns whether all pages of the specified range are cached.
+   */
+  private boolean isCached(final long offset, final int length)
+  {
+    if (offset < 0 || length <= 0) {
+      return false;
+    }
+
+    final long last = (offset + length - 1) / m_pageSize;
+    for (long index = offset / m_pageSize; index <= last; index++) {
+      final byte[] page = m_pages.get(index);
+      if (page == null) {
+        return false;
+      }
+      if (page.length < m_pageSize) {
+        return true;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Called when the backing provider reports a change.
+   */
+  private void sourceChanged(final DataChangedEvent event)
+  {
+    synchronized (this) {
+      if (m_writing) {
+        return;
+      }
+
+      switch (event.getKind()) {
+        case OVERWRITE:
+          invalidate(event.getOffset(), event.getLength());
+          break;
+        case INSERT:
+        case DELETE:
+          // All data behind the offset moved
+          invalidateFrom(event.getOffset());
+          break;
+        default:
+          invalidateAll();
+          break;
+      }
+    }
+
+    fireDataChangedListener(new DataChangedEvent(this, event.getKind(), event.getOffset(),
+                                                 event.getLength()));
+  }
+
+  /**
+   * Copies written data into the cached pages that overlap it. Pages are
+   * replaced by updated copies, because readers may still copy from the old
+   * pages outside of the lock.
+   */
+  private void updatePages(long offset, final byte[] data)
+  {
+    if (offset < 0 || data == null) {
+      return;
+    }
+
+    m_generation++;
+
+    int position = 0;
+    while (position < data.length) {
+      final long index = offset / m_pageSize;
+      final int pageOffset = (int) (offset % m_pageSize);
+      final int n = Math.min(data.length - position, m_pageSize - pageOffset);
+
+      final byte[] page = m_pages.get(index);
+      if (page != null) {
+        if (pageOffset + n <= page.length) {
+          final byte[] copy = page.clone();
+          System.arraycopy(data, position, copy, pageOffset, n);
+          m_pages.put(index, copy);
+        } else {
+          // The write extends a partial page at the end of the data
+          m_pages.remove(index);
+          m_cachedBytes -= page.length;
+        }
+      }
+
+      position += n;
+      offset += n;
+    }
+  }
+}
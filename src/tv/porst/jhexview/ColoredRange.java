@@ -24,7 +24,7 @@ public class ColoredRange implements Comparable<ColoredRange>
   @Override
   public int compareTo(ColoredRange arg0)
   {
-    return (int) (start - arg0.start);
+    return Long.compare(start, arg0.start);
   }
 
   public boolean containsOffset(long offset)
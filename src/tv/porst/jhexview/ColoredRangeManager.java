@@ -1,145 +1,528 @@
 package tv.porst.jhexview;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 
+/**
+ * Keeps the colored ranges of a single level, sorted by their start offsets.
+ *
+ * Lookups use an interval index that is rebuilt lazily after the ranges have
+ * changed. The index treats the sorted ranges as an implicit balanced binary
+ * tree, where every node knows the largest end offset of its subtree. Finding
+ * the ranges that overlap an offset or a window therefore only visits the
+ * ranges that are actually there, plus a logarithmic number of others.
+ */
 public final class ColoredRangeManager
 {
   private final ArrayList<ColoredRange> ranges = new ArrayList<ColoredRange>();
 
+  /**
+   * Start and end offsets of the ranges, in the order of the sorted ranges.
+   */
+  private long[] starts = new long[0];
+  private long[] ends = new long[0];
+
+  /**
+   * Largest end offset within the subtree of the implicit tree node at the
+   * same index.
+   */
+  private long[] maxEnds = new long[0];
+
+  /**
+   * Determines whether the index reflects the current ranges.
+   */
+  private boolean indexValid = true;
+
   public void addRange(ColoredRange range)
   {
-    ranges.add(range);
-    Collections.sort(ranges);
+    // Binary search for the position behind all ranges with the same start
+    int low = 0;
+    int high = ranges.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (ranges.get(mid).getStart() <= range.getStart()) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+
+    ranges.add(low, range);
+    indexValid = false;
+  }
+
+  /**
+   * Adds many ranges at once. The new ranges are sorted and merged with the
+   * existing ranges in a single pass. Overlapping or adjacent ranges with the
+   * same colors are combined into one range. Sorted ranges that start behind
+   * the existing ranges, e.g. the matches of a search in batches, are simply
+   * appended.
+   *
+   * @param newRanges
+   *          The ranges to add, in any order.
+   */
+  public void addRanges(Collection<ColoredRange> newRanges)
+  {
+    if (newRanges.isEmpty()) {
+      return;
+    }
+
+    if (isAppendable(newRanges)) {
+      // Existing ranges go first if they start at the same offset, like in addRange
+      ranges.ensureCapacity(ranges.size() + newRanges.size());
+      for (final ColoredRange range : newRanges) {
+        append(ranges, range);
+      }
+      indexValid = false;
+      return;
+    }
+
+    // The sort is stable and takes linear time for input that is already sorted
+    final List<ColoredRange> sorted = new ArrayList<ColoredRange>(newRanges);
+    Collections.sort(sorted);
+
+    final ArrayList<ColoredRange> merged = new ArrayList<ColoredRange>(ranges.size() + sorted.size());
+    int i = 0;
+    int j = 0;
+    while (i < ranges.size() || j < sorted.size()) {
+      // Existing ranges go first if they start at the same offset, like in addRange
+      if (j == sorted.size()
+          || (i < ranges.size() && ranges.get(i).getStart() <= sorted.get(j).getStart())) {
+        append(merged, ranges.get(i++));
+      }
+      else {
+        append(merged, sorted.get(j++));
+      }
+    }
+
+    ranges.clear();
+    ranges.addAll(merged);
+    indexValid = false;
   }
 
   public void clear()
   {
     ranges.clear();
+    indexValid = false;
   }
 
   public ColoredRange findRange(long offset)
   {
-    for (final ColoredRange range : ranges) {
-      if (range.getStart() >= offset) {
-        return range;
+    updateIndex();
+
+    // Binary search for the first range that starts at or after the offset
+    int low = 0;
+    int high = ranges.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (starts[mid] < offset) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
       }
     }
 
-    return null;
+    return low < ranges.size() ? ranges.get(low) : null;
   }
 
   public ColoredRange findRangeWith(long offset)
   {
-    for (final ColoredRange range : ranges) {
-      if (range.containsOffset(offset)) {
-        return range;
-      }
+    updateIndex();
+
+    final int index = findFirstOverlap(0, ranges.size(), offset, offset + 1);
+    return index >= 0 ? ranges.get(index) : null;
+  }
+
+  /**
+   * Returns the ranges that overlap the window [start, end), sorted by their
+   * start offsets.
+   *
+   * @param start
+   *          The first offset of the window.
+   * @param end
+   *          The offset behind the window.
+   */
+  public List<ColoredRange> findRanges(long start, long end)
+  {
+    updateIndex();
+
+    final List<ColoredRange> result = new ArrayList<ColoredRange>();
+    if (start < end) {
+      collectOverlaps(0, ranges.size(), start, end, result);
     }
+    return result;
+  }
 
-    return null;
+  /**
+   * Returns a sweep over the ranges that overlap the window [start, end). It
+   * finds the range of each offset in the window with little effort, as long
+   * as the offsets are queried in ascending order.
+   *
+   * @param start
+   *          The first offset of the window.
+   * @param end
+   *          The offset behind the window.
+   */
+  public Sweep sweep(long start, long end)
+  {
+    return sweep(start, end, null);
   }
 
-  public void removeRange(long offset, int size)
+  /**
+   * Returns a sweep over the ranges that overlap the window [start, end), see
+   * {@link #sweep(long, long)}. The sweep of a previous window is reused, so
+   * that a sweep on every repaint doesn't allocate.
+   *
+   * @param start
+   *          The first offset of the window.
+   * @param end
+   *          The offset behind the window.
+   * @param reuse
+   *          The sweep to reuse, or null to create a new one.
+   */
+  public Sweep sweep(long start, long end, Sweep reuse)
   {
-    // Try to find the range that contains the offset
-    ColoredRange range = findRangeWith(offset);
+    updateIndex();
 
-    // If there is no such range, at least find the range right
-    // before the offset.
-    if (range == null) {
-      range = findRange(offset);
+    final Sweep sweep = (reuse != null) ? reuse : new Sweep();
+    sweep.ranges.clear();
+    sweep.first = 0;
+    if (start < end) {
+      collectOverlaps(0, ranges.size(), start, end, sweep.ranges);
     }
+    return sweep;
+  }
 
-    // If there is no such range then there is nothing to remove.
-    if (range == null) {
-      return;
+  /**
+   * Adjusts all ranges to bytes that have been inserted into the data. Ranges
+   * starting at or after the offset are moved back, ranges that span the offset
+   * grow by the number of inserted bytes.
+   *
+   * @param offset
+   *          The offset of the inserted bytes.
+   * @param length
+   *          The number of inserted bytes.
+   */
+  public void insertBytes(long offset, long length)
+  {
+    indexValid = false;
+    for (int i = 0; i < ranges.size(); i++) {
+      final ColoredRange range = ranges.get(i);
+      final long start = range.getStart();
+      final long end = start + range.getSize();
+
+      if (start >= offset) {
+        ranges.set(i, new ColoredRange(start + length, range.getSize(), range.getColor(),
+            range.getBackgroundColor()));
+      }
+      else if (end > offset) {
+        ranges.set(i, new ColoredRange(start, (int) Math.min(end + length - start, Integer.MAX_VALUE),
+            range.getColor(), range.getBackgroundColor()));
+      }
+    }
+  }
+
+  /**
+   * Adjusts all ranges to bytes that have been removed from the data. Ranges
+   * are cut where they overlap the removed bytes and ranges after the removed
+   * bytes are moved forward.
+   *
+   * @param offset
+   *          The offset of the removed bytes.
+   * @param length
+   *          The number of removed bytes.
+   */
+  public void removeBytes(long offset, long length)
+  {
+    indexValid = false;
+    int count = 0;
+    for (int i = 0; i < ranges.size(); i++) {
+      final ColoredRange range = ranges.get(i);
+      final long start = removeBytes(range.getStart(), offset, length);
+      final long end = removeBytes(range.getStart() + range.getSize(), offset, length);
+
+      if (end > start) {
+        if (start != range.getStart() || end - start != range.getSize()) {
+          ranges.set(count++, new ColoredRange(start, (int) (end - start), range.getColor(),
+              range.getBackgroundColor()));
+        }
+        else {
+          ranges.set(count++, range);
+        }
+      }
     }
 
-    // TODO: The <= is a hack; used to be just ==; Check this again
-    if (offset <= range.getStart()) {
-      // The offset starts exactly at the range. That means
-      // we start decolorizing at the beginning of the range.
+    while (ranges.size() > count) {
+      ranges.remove(ranges.size() - 1);
+    }
+  }
 
-      if (range.getSize() == size) {
-        // If the sizes are equal the entire range is decolorized and
-        // we're done.
+  /**
+   * Appends a range to sorted ranges. The range is combined with the last
+   * range if they overlap or touch and have the same colors.
+   */
+  private static void append(List<ColoredRange> target, ColoredRange range)
+  {
+    if (!target.isEmpty()) {
+      final ColoredRange last = target.get(target.size() - 1);
+      final long lastEnd = last.getStart() + last.getSize();
+      final long end = Math.max(lastEnd, range.getStart() + range.getSize());
+      if (range.getStart() <= lastEnd && end - last.getStart() <= Integer.MAX_VALUE
+          && Objects.equals(last.getColor(), range.getColor())
+          && Objects.equals(last.getBackgroundColor(), range.getBackgroundColor())) {
+        if (end != lastEnd) {
+          target.set(target.size() - 1, new ColoredRange(last.getStart(),
+              (int) (end - last.getStart()), last.getColor(), last.getBackgroundColor()));
+        }
+        return;
+      }
+    }
 
-        ranges.remove(range);
+    target.add(range);
+  }
+
+  /**
+   * Returns whether the specified ranges are sorted and start at or behind
+   * the start of the last existing range, so that they can be appended.
+   */
+  private boolean isAppendable(Collection<ColoredRange> newRanges)
+  {
+    long previous = ranges.isEmpty() ? Long.MIN_VALUE : ranges.get(ranges.size() - 1).getStart();
+    for (final ColoredRange range : newRanges) {
+      if (range.getStart() < previous) {
+        return false;
       }
-      else if (range.getSize() < size) {
-        // If the range is smaller the entire range is decolorized and
-        // the
-        // remaining bytes are decolorized in the next step.
+      previous = range.getStart();
+    }
+    return true;
+  }
 
-        ranges.remove(range);
-        removeRange(range.getStart() + range.getSize(), size - range.getSize());
+  /**
+   * Collects the ranges of the subtree [low, high) that overlap the window
+   * [start, end) in ascending order.
+   */
+  private void collectOverlaps(int low, int high, long start, long end, List<ColoredRange> result)
+  {
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (maxEnds[mid] <= start) {
+        // No range of this subtree reaches into the window
+        return;
       }
-      else
-      // if (range.getSize() > size)
-      {
-        // If the range is larger than the decolorizing area, ditch the
-        // range and add a new range that contains the area that stays
-        // colorized.
 
-        ranges.remove(range);
-        addRange(new ColoredRange(offset + size, range.getSize() - size, range.getColor(),
-            range.getBackgroundColor()));
+      collectOverlaps(low, mid, start, end, result);
+
+      if (starts[mid] >= end) {
+        // This range and all ranges of the right subtree start behind the window
+        return;
       }
+
+      if (ends[mid] > start) {
+        result.add(ranges.get(mid));
+      }
+
+      low = mid + 1;
     }
-    else
-    // if (offset > range.getStart())
-    {
-      // We start to decolorize somewhere in the middle of the range.
+  }
 
-      if (offset + size == range.getStart() + range.getSize()) {
-        // If the last offset of the range and the decolorizing area is equal,
-        // then the latter part of the range is ditched. Get rid of the range
-        // and create a new range that represents the first part of the area.
+  /**
+   * Returns the index of the first range of the subtree [low, high) that
+   * overlaps the window [start, end), or -1 if there is no such range.
+   */
+  private int findFirstOverlap(int low, int high, long start, long end)
+  {
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (maxEnds[mid] <= start) {
+        return -1;
+      }
 
-        ranges.remove(range);
+      final int index = findFirstOverlap(low, mid, start, end);
+      if (index >= 0) {
+        return index;
+      }
 
-        final long newStart = range.getStart();
-        final int newSize = range.getSize() - size;
-        // int newSize = (int)(offset - range.getStart());
-        addRange(new ColoredRange(newStart, newSize, range.getColor(), range.getBackgroundColor()));
+      if (starts[mid] >= end) {
+        return -1;
       }
-      else if (offset + size < range.getStart() + range.getSize()) {
-        // Some part is cut out of the middle of the range. Get rid of the old
-        // range
-        // and create two new ranges for the first part and last part of the old
-        // range.
 
-        ranges.remove(range);
+      if (ends[mid] > start) {
+        return mid;
+      }
 
-        final long newStartFirst = range.getStart();
-        final int newSizeFirst = (int) (offset - range.getStart());
+      low = mid + 1;
+    }
 
-        addRange(new ColoredRange(newStartFirst, newSizeFirst, range.getColor(),
-            range.getBackgroundColor()));
+    return -1;
+  }
+
+  /**
+   * Rebuilds the interval index if the ranges have changed.
+   */
+  private void updateIndex()
+  {
+    if (indexValid) {
+      return;
+    }
+
+    final int count = ranges.size();
+    if (starts.length < count || starts.length > 2 * count + 16) {
+      starts = new long[count];
+      ends = new long[count];
+      maxEnds = new long[count];
+    }
+
+    for (int i = 0; i < count; i++) {
+      final ColoredRange range = ranges.get(i);
+      starts[i] = range.getStart();
+      ends[i] = range.getStart() + range.getSize();
+    }
+
+    buildMaxEnds(0, count);
+    indexValid = true;
+  }
+
+  /**
+   * Calculates the largest end offsets of the subtree [low, high) and returns
+   * the largest end offset of its root.
+   */
+  private long buildMaxEnds(int low, int high)
+  {
+    if (low >= high) {
+      return Long.MIN_VALUE;
+    }
+
+    final int mid = (low + high) >>> 1;
+    final long max = Math.max(ends[mid], Math.max(buildMaxEnds(low, mid), buildMaxEnds(mid + 1, high)));
+    maxEnds[mid] = max;
+    return max;
+  }
+
+  /**
+   * Returns the position of an offset after removing the specified bytes.
+   */
+  private static long removeBytes(long position, long offset, long length)
+  {
+    if (position < offset) {
+      return position;
+    }
+    else if (position < offset + length) {
+      return offset;
+    }
+    else {
+      return position - length;
+    }
+  }
+
+  /**
+   * Removes the colors of the bytes [offset, offset + size). Ranges that only
+   * partially overlap these bytes are cut.
+   *
+   * @param offset
+   *          The first offset to uncolorize.
+   * @param size
+   *          The number of bytes to uncolorize.
+   */
+  public void removeRange(long offset, int size)
+  {
+    final long end = offset + size;
 
-        final long newStartLast = offset + size;
-        final int newSizeLast = (int) (range.getStart() + range.getSize() - offset - size);
+    // Remaining parts behind the removed bytes. They all start at the end of
+    // the removed bytes and are inserted in front of the first range that
+    // starts there or later.
+    final List<ColoredRange> tails = new ArrayList<ColoredRange>();
+    int tailIndex = -1;
 
-        addRange(new ColoredRange(newStartLast, newSizeLast, range.getColor(),
+    int count = 0;
+    boolean changed = false;
+    for (int i = 0; i < ranges.size(); i++) {
+      final ColoredRange range = ranges.get(i);
+      final long rangeStart = range.getStart();
+      final long rangeEnd = rangeStart + range.getSize();
+
+      if (rangeStart >= end && tailIndex < 0) {
+        tailIndex = count;
+      }
+
+      if (rangeEnd <= offset || rangeStart >= end) {
+        ranges.set(count++, range);
+        continue;
+      }
+
+      changed = true;
+      if (rangeStart < offset) {
+        ranges.set(count++, new ColoredRange(rangeStart, (int) (offset - rangeStart), range.getColor(),
             range.getBackgroundColor()));
       }
-      else
-      // if (offset + size > range.getStart() + range.getSize())
-      {
-        // More than the current range must be decolorized. That means
-        // the entire range
-        // except for the start is ditched.
 
-        ranges.remove(range);
+      if (rangeEnd > end) {
+        tails.add(new ColoredRange(end, (int) (rangeEnd - end), range.getColor(),
+            range.getBackgroundColor()));
+      }
+    }
+
+    if (!changed) {
+      // Nothing overlaps the removed bytes
+      return;
+    }
+
+    while (ranges.size() > count) {
+      ranges.remove(ranges.size() - 1);
+    }
+    ranges.addAll(tailIndex < 0 ? count : tailIndex, tails);
+    indexValid = false;
+  }
+
+
+  /**
+   * Finds the ranges of a window for ascending offsets, see
+   * {@link ColoredRangeManager#sweep(long, long)}.
+   */
+  public static final class Sweep
+  {
+    /**
+     * The ranges that overlap the window, sorted by their start offsets.
+     */
+    private final ArrayList<ColoredRange> ranges = new ArrayList<ColoredRange>();
 
-        final long newStart = range.getStart();
-        final int newSize = (int) (offset - range.getStart());
+    /**
+     * Index of the first range that may still contain the next offsets.
+     */
+    private int first = 0;
 
-        addRange(new ColoredRange(newStart, newSize, range.getColor(), range.getBackgroundColor()));
-        removeRange(range.getStart() + range.getSize(),
-            size - (int) (range.getStart() + range.getSize() - offset));
+    private Sweep()
+    {
+    }
+
+    /**
+     * Returns the first range that contains the specified offset, or null if
+     * there is no such range. The offset must not be smaller than the offset
+     * of the previous call.
+     */
+    public ColoredRange findRangeWith(long offset)
+    {
+      // Skip the ranges that end before the offset
+      while (first < ranges.size() && !ranges.get(first).containsOffset(offset)
+          && ranges.get(first).getStart() <= offset) {
+        first++;
       }
+
+      for (int i = first; i < ranges.size(); i++) {
+        final ColoredRange range = ranges.get(i);
+        if (range.getStart() > offset) {
+          break;
+        }
+        if (range.containsOffset(offset)) {
+          return range;
+        }
+      }
+
+      return null;
     }
   }
 }
@@ -11,9 +11,85 @@ import java.util.EventObject;
  */
 public class DataChangedEvent extends EventObject
 {
+  /** Available kinds of data changes. */
+  public enum Kind {
+    /** Specified if the data may have changed completely. Offset and length are undefined. */
+    UNKNOWN,
+    /** Specified if existing bytes have been overwritten. The data length didn't change. */
+    OVERWRITE,
+    /** Specified if bytes have been inserted. Data behind the inserted bytes moved back. */
+    INSERT,
+    /** Specified if bytes have been removed. Data behind the removed bytes moved forward. */
+    DELETE
+  }
+
+  private final Kind kind;
+  private final long offset, length;
+
+  /**
+   * Constructs a DataChangedEvent for an unspecified change of the data.
+   * @param source The data provider.
+   */
   public DataChangedEvent(Object source)
   {
     super(source);
+    this.kind = Kind.UNKNOWN;
+    this.offset = -1;
+    this.length = -1;
+  }
+
+  /**
+   * Constructs a DataChangedEvent for a change of the specified data range.
+   * @param source The data provider.
+   * @param kind The kind of the change.
+   * @param offset The offset of the first changed, inserted or removed byte.
+   * @param length The number of changed, inserted or removed bytes.
+   */
+  public DataChangedEvent(Object source, Kind kind, long offset, long length)
+  {
+    super(source);
+    if (kind == null) {
+      throw new NullPointerException("Error: Kind can't be null");
+    }
+    this.kind = kind;
+    this.offset = (kind == Kind.UNKNOWN) ? -1 : offset;
+    this.length = (kind == Kind.UNKNOWN) ? -1 : length;
+  }
+
+  /**
+   * Returns the kind of the change.
+   * @return The kind of the change.
+   */
+  public Kind getKind()
+  {
+    return kind;
   }
 
+  /**
+   * Returns the number of changed, inserted or removed bytes.
+   * @return The number of affected bytes, or -1 if the kind is <code>UNKNOWN</code>.
+   */
+  public long getLength()
+  {
+    return length;
+  }
+
+  /**
+   * Returns the offset of the first changed, inserted or removed byte.
+   * @return The offset of the first affected byte, or -1 if the kind is <code>UNKNOWN</code>.
+   */
+  public long getOffset()
+  {
+    return offset;
+  }
+
+  /**
+   * Returns whether the data length changed, i.e. whether all data behind the offset
+   * has moved.
+   * @return True if bytes have been inserted or removed, or if the change is unknown.
+   */
+  public boolean isStructural()
+  {
+    return kind != Kind.OVERWRITE;
+  }
 }
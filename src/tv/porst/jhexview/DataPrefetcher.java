@@ -0,0 +1,420 @@
+package tv.porst.jhexview;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads data around the visible region of a hex view in the background, so
+ * that slow data providers already have the data when the user scrolls there.
+ *
+ * The prefetcher is registered as viewport listener of a {@link JHexView}. On
+ * every viewport change it requests the blocks ahead of the scroll direction,
+ * and a few blocks behind it, on a background executor. The read-ahead
+ * distance grows with the scroll speed. Pending requests for blocks that are
+ * no longer near the viewport are cancelled.
+ *
+ * Prefetching is only useful if the data provider keeps the data it has read,
+ * e.g. a {@link CachingDataProvider} wrapping a slow source. Blocks that the
+ * provider doesn't have yet are requested with
+ * {@link IDataProvider#requestData(long, int)} and read once the request has
+ * completed.
+ */
+public final class DataPrefetcher implements IViewportListener
+{
+  /**
+   * Default size of a single prefetched block in bytes.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+  /**
+   * Time in milliseconds the read-ahead should cover when scrolling fast.
+   */
+  private static final double LOOKAHEAD_MILLIS = 500.0;
+
+  /**
+   * The provider whose data is prefetched.
+   */
+  private final IDataProvider m_provider;
+
+  /**
+   * Executor that performs the reads.
+   */
+  private final ExecutorService m_executor;
+
+  /**
+   * Determines whether the executor has been created by the prefetcher.
+   */
+  private final boolean m_ownsExecutor;
+
+  /**
+   * Size of a single block in bytes.
+   */
+  private final int m_blockSize;
+
+  /**
+   * Minimum number of blocks that are prefetched ahead of the viewport.
+   */
+  private final int m_blocksAhead;
+
+  /**
+   * Number of blocks that are prefetched behind the viewport.
+   */
+  private final int m_blocksBehind;
+
+  /**
+   * Maximum number of blocks that are prefetched ahead of the viewport when
+   * scrolling fast.
+   */
+  private final int m_maxBlocksAhead;
+
+  /**
+   * Requests that have been submitted but not finished yet, by block index.
+   */
+  private final Map<Long, Fetch> m_pending = new HashMap<Long, Fetch>();
+
+  /**
+   * Blocks that have been prefetched recently. Used to avoid reading the same
+   * blocks again while scrolling within a small region.
+   */
+  private final LinkedHashMap<Long, Boolean> m_recent = new LinkedHashMap<Long, Boolean>(16, 0.75f, true);
+
+  /**
+   * Forgets the prefetched blocks that are affected by a data change.
+   */
+  private final IDataChangedListener m_dataListener = new IDataChangedListener() {
+    @Override
+    public void dataChanged(final DataChangedEvent event)
+    {
+      switch (event.getKind()) {
+        case OVERWRITE:
+          forget(event.getOffset() / m_blockSize,
+                 (event.getOffset() + Math.max(event.getLength(), 1) - 1) / m_blockSize);
+          break;
+        case INSERT:
+        case DELETE:
+          forget(event.getOffset() / m_blockSize, Long.MAX_VALUE);
+          break;
+        default:
+          forget(0, Long.MAX_VALUE);
+          break;
+      }
+    }
+  };
+
+  /**
+   * Buffer that receives the prefetched data. Only used if the executor has
+   * been created by the prefetcher, whose single thread is the only reader.
+   * Reads on an executor of the caller use a new buffer each time, so that no
+   * buffers are left behind on threads the prefetcher doesn't control.
+   */
+  private byte[] m_buffer;
+
+  /**
+   * Creates a prefetcher that uses a single background thread and default
+   * read-ahead settings.
+   *
+   * @param provider
+   *          The provider whose data is prefetched.
+   */
+  public DataPrefetcher(final IDataProvider provider)
+  {
+    this(provider, null, DEFAULT_BLOCK_SIZE, 4, 1, 64);
+  }
+
+  /**
+   * Creates a new prefetcher.
+   *
+   * @param provider
+   *          The provider whose data is prefetched.
+   * @param executor
+   *          Executor that performs the reads. If null, a single daemon thread
+   *          is created that is stopped by {@link #dispose()}.
+   * @param blockSize
+   *          Size of a single prefetched block in bytes.
+   * @param blocksAhead
+   *          Minimum number of blocks prefetched ahead of the viewport.
+   * @param blocksBehind
+   *          Number of blocks prefetched behind the viewport.
+   * @param maxBlocksAhead
+   *          Maximum number of blocks prefetched ahead of the viewport.
+   */
+  public DataPrefetcher(final IDataProvider provider, final ExecutorService executor,
+                        final int blockSize, final int blocksAhead, final int blocksBehind,
+                        final int maxBlocksAhead)
+  {
+    if (provider == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Error: Block size must be positive");
+    }
+
+    if (blocksAhead < 0 || blocksBehind < 0 || maxBlocksAhead < blocksAhead) {
+      throw new IllegalArgumentException("Error: Invalid number of prefetched blocks");
+    }
+
+    m_provider = provider;
+    m_blockSize = blockSize;
+    m_blocksAhead = blocksAhead;
+    m_blocksBehind = blocksBehind;
+    m_maxBlocksAhead = maxBlocksAhead;
+
+    if (executor != null) {
+      m_executor = executor;
+      m_ownsExecutor = false;
+    } else {
+      m_executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "JHexView prefetcher");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      m_ownsExecutor = true;
+    }
+
+    m_provider.addListener(m_dataListener);
+  }
+
+  /**
+   * Cancels all pending requests and stops the background thread if it has
+   * been created by the prefetcher.
+   */
+  public void dispose()
+  {
+    m_provider.removeListener(m_dataListener);
+
+    synchronized (this) {
+      for (final Fetch fetch : m_pending.values()) {
+        fetch.cancel();
+      }
+      m_pending.clear();
+      m_recent.clear();
+    }
+
+    if (m_ownsExecutor) {
+      m_executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the number of requests that are waiting or running.
+   */
+  public synchronized int getPendingCount()
+  {
+    return m_pending.size();
+  }
+
+  @Override
+  public void viewportChanged(final ViewportEvent event)
+  {
+    if (event.getLength() <= 0 || event.getOffset() < 0) {
+      return;
+    }
+
+    final long dataLength = LargeDataProviderAdapter.getDataLength(m_provider);
+    if (event.getOffset() >= dataLength) {
+      return;
+    }
+
+    final long lastBlock = (dataLength - 1) / m_blockSize;
+    final long first = event.getOffset() / m_blockSize;
+    final long last = Math.min((event.getOffset() + event.getLength() - 1) / m_blockSize, lastBlock);
+
+    // Read further ahead the faster the user scrolls
+    final long distance = (long) (event.getSpeed() * LOOKAHEAD_MILLIS / 1000.0);
+    final int ahead = (int) Math.min(m_maxBlocksAhead, m_blocksAhead + distance / m_blockSize);
+
+    long from, to;
+    if (event.getDirection() < 0) {
+      from = first - ahead;
+      to = last + m_blocksBehind;
+    } else {
+      from = first - m_blocksBehind;
+      to = last + ahead;
+    }
+    from = Math.max(from, 0);
+    to = Math.min(to, lastBlock);
+
+    // Blocks in the order they are needed: the visible ones first, then the
+    // ones in scroll direction, then the ones behind
+    final List<Long> blocks = new ArrayList<Long>();
+    for (long index = first; index <= last; index++) {
+      blocks.add(index);
+    }
+    if (event.getDirection() < 0) {
+      for (long index = first - 1; index >= from; index--) {
+        blocks.add(index);
+      }
+      for (long index = last + 1; index <= to; index++) {
+        blocks.add(index);
+      }
+    } else {
+      for (long index = last + 1; index <= to; index++) {
+        blocks.add(index);
+      }
+      for (long index = first - 1; index >= from; index--) {
+        blocks.add(index);
+      }
+    }
+
+    synchronized (this) {
+      // Cancel requests that are not needed anymore
+      for (final Iterator<Map.Entry<Long, Fetch>> iter = m_pending.entrySet().iterator(); iter.hasNext();) {
+        final Map.Entry<Long, Fetch> entry = iter.next();
+        if (entry.getKey() < from || entry.getKey() > to) {
+          entry.getValue().cancel();
+          iter.remove();
+        }
+      }
+
+      for (final Long index : blocks) {
+        if (!m_pending.containsKey(index) && m_recent.get(index) == null) {
+          final Fetch fetch = new Fetch(index);
+          m_pending.put(index, fetch);
+          fetch.m_future = m_executor.submit(fetch);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the specified blocks from the recently prefetched blocks.
+   */
+  private synchronized void forget(final long first, final long last)
+  {
+    for (final Iterator<Long> iter = m_recent.keySet().iterator(); iter.hasNext();) {
+      final long index = iter.next();
+      if (index >= first && index <= last) {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Prefetches a single block. If the provider doesn't have the block yet, it
+   * is requested first and read once the request has completed.
+   */
+  private final class Fetch implements Runnable
+  {
+    private final long m_index;
+
+    /**
+     * The submitted task. Only accessed while holding the prefetcher's lock.
+     */
+    private Future<?> m_future;
+
+    private volatile boolean m_cancelled;
+
+    private Fetch(final long index)
+    {
+      m_index = index;
+    }
+
+    @Override
+    public void run()
+    {
+      if (m_cancelled) {
+        return;
+      }
+
+      final long offset = m_index * m_blockSize;
+      final int length = getLength();
+      if (length <= 0) {
+        finish();
+        return;
+      }
+
+      if (!m_provider.hasData(offset, length)) {
+        final CompletableFuture<Void> request = m_provider.requestData(offset, length);
+        if (request != null && !request.isDone()) {
+          request.whenCompleteAsync(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(final Void result, final Throwable error)
+            {
+              if (!m_cancelled) {
+                read();
+              }
+            }
+          }, m_executor);
+          return;
+        }
+      }
+
+      read();
+    }
+
+    private void cancel()
+    {
+      m_cancelled = true;
+      if (m_future != null) {
+        m_future.cancel(false);
+      }
+    }
+
+    /**
+     * Returns the length of the block, which is shorter than the block size
+     * at the end of the data.
+     */
+    private int getLength()
+    {
+      final long remaining = LargeDataProviderAdapter.getDataLength(m_provider) - m_index * m_blockSize;
+      return (int) Math.max(0, Math.min(m_blockSize, remaining));
+    }
+
+    /**
+     * Reads the block from the data provider.
+     */
+    private void read()
+    {
+      try {
+        final int length = getLength();
+        if (length > 0) {
+          byte[] buffer;
+          if (m_ownsExecutor) {
+            if (m_buffer == null) {
+              m_buffer = new byte[m_blockSize];
+            }
+            buffer = m_buffer;
+          } else {
+            buffer = new byte[length];
+          }
+
+          m_provider.read(m_index * m_blockSize, buffer, 0, length);
+        }
+      } finally {
+        finish();
+      }
+    }
+
+    /**
+     * Removes the request from the pending requests.
+     */
+    private void finish()
+    {
+      synchronized (DataPrefetcher.this) {
+        // A newer request for the same block may have replaced this one
+        m_pending.remove(m_index, this);
+        m_recent.put(m_index, Boolean.TRUE);
+        if (m_recent.size() > 4 * (m_maxBlocksAhead + m_blocksBehind + 1)) {
+          final Iterator<Long> iter = m_recent.keySet().iterator();
+          iter.next();
+          iter.remove();
+        }
+      }
+    }
+  }
+}
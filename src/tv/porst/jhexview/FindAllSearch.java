@@ -0,0 +1,377 @@
+package tv.porst.jhexview;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.EventListenerList;
+
+/**
+ * Searches all matches of a byte pattern in the background.
+ *
+ * The search runs on a daemon thread or on a given executor. Matches are
+ * collected in an {@link OffsetList} and delivered to the registered
+ * listeners on the event dispatch thread in batches. While the event
+ * dispatch thread is busy, further matches and progress updates are
+ * coalesced into the next batch, so the user interface is never flooded,
+ * no matter how many matches are found.
+ *
+ * The data provider must support reads from the search thread.
+ */
+public final class FindAllSearch
+{
+  private final IDataProvider m_data;
+
+  private final ByteSearcher m_searcher;
+
+  /**
+   * The searched window.
+   */
+  private final long m_from;
+  private final long m_to;
+
+  /**
+   * All matches found so far. Guarded by itself.
+   */
+  private final OffsetList m_matches = new OffsetList();
+
+  private final EventListenerList m_listeners = new EventListenerList();
+
+  /**
+   * Set if an update of the listeners is pending on the event dispatch thread.
+   */
+  private final AtomicBoolean m_updatePending = new AtomicBoolean();
+
+  private final Runnable m_update = new Runnable() {
+    @Override
+    public void run()
+    {
+      update();
+    }
+  };
+
+  private volatile boolean m_started = false;
+  private volatile boolean m_cancelled = false;
+  private volatile boolean m_finished = false;
+
+  /**
+   * The exception that stopped the search, or null.
+   */
+  private volatile Throwable m_error = null;
+
+  /**
+   * Number of bytes searched so far.
+   */
+  private volatile long m_scanned = 0;
+
+  /**
+   * Number of matches and completion already delivered to the listeners.
+   * Only accessed on the event dispatch thread.
+   */
+  private int m_delivered = 0;
+  private boolean m_finishDelivered = false;
+
+  /**
+   * Creates a new search. The search is started with {@link #start()}.
+   *
+   * @param data
+   *          The data to search.
+   * @param pattern
+   *          The pattern to search.
+   * @param caseSensitive
+   *          False, to ignore the case of printable characters.
+   * @param from
+   *          The first offset of the searched window.
+   * @param to
+   *          The offset behind the searched window. It is limited to the
+   *          length of the data.
+   */
+  public FindAllSearch(final IDataProvider data, final byte[] pattern, final boolean caseSensitive,
+                       final long from, final long to)
+  {
+    if (data == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    m_data = data;
+    m_searcher = new ByteSearcher(pattern, caseSensitive);
+    m_from = Math.max(from, 0);
+    m_to = Math.max(m_from, Math.min(to, LargeDataProviderAdapter.getDataLength(data)));
+  }
+
+  public void addListener(final IFindAllListener listener)
+  {
+    if (listener == null) {
+      throw new NullPointerException("Error: Listener can't be null");
+    }
+
+    m_listeners.add(IFindAllListener.class, listener);
+  }
+
+  /**
+   * Cancels the search. The listeners still receive the matches found so far
+   * and the notification that the search has finished.
+   */
+  public void cancel()
+  {
+    m_cancelled = true;
+  }
+
+  /**
+   * Returns the exception that stopped the search, e.g. a failed read of the
+   * data provider, or an {@link IllegalStateException} if the search found
+   * more than {@link OffsetList#MAX_SIZE} matches.
+   *
+   * @return The exception, or null if the search hasn't failed.
+   */
+  public Throwable getError()
+  {
+    return m_error;
+  }
+
+  /**
+   * Returns the offset of a match.
+   *
+   * @param index
+   *          The index of the match. Matches are sorted by offset.
+   */
+  public long getMatch(final int index)
+  {
+    synchronized (m_matches) {
+      return m_matches.get(index);
+    }
+  }
+
+  /**
+   * Returns the offsets of a range of matches.
+   *
+   * @param first
+   *          The index of the first match.
+   * @param count
+   *          The number of matches.
+   */
+  public long[] getMatches(final int first, final int count)
+  {
+    final long[] offsets = new long[count];
+    synchronized (m_matches) {
+      m_matches.get(first, offsets, 0, count);
+    }
+    return offsets;
+  }
+
+  /**
+   * Returns the number of matches found so far.
+   */
+  public int getMatchCount()
+  {
+    synchronized (m_matches) {
+      return m_matches.size();
+    }
+  }
+
+  /**
+   * Returns the offsets of all matches found so far in ascending order.
+   */
+  public long[] getMatches()
+  {
+    synchronized (m_matches) {
+      return m_matches.toArray();
+    }
+  }
+
+  /**
+   * Returns the length of the searched pattern.
+   */
+  public int getPatternLength()
+  {
+    return m_searcher.getPatternLength();
+  }
+
+  /**
+   * Returns the number of bytes searched so far.
+   */
+  public long getScannedBytes()
+  {
+    return m_scanned;
+  }
+
+  /**
+   * Returns the number of bytes to search.
+   */
+  public long getTotalBytes()
+  {
+    return m_to - m_from;
+  }
+
+  /**
+   * Returns whether the search has been cancelled.
+   */
+  public boolean isCancelled()
+  {
+    return m_cancelled;
+  }
+
+  /**
+   * Returns whether the search has finished, has failed or has been cancelled
+   * and has stopped.
+   */
+  public boolean isDone()
+  {
+    return m_finished;
+  }
+
+  public void removeListener(final IFindAllListener listener)
+  {
+    if (listener == null) {
+      throw new NullPointerException("Error: Listener can't be null");
+    }
+
+    m_listeners.remove(IFindAllListener.class, listener);
+  }
+
+  /**
+   * Starts the search on a new daemon thread.
+   *
+   * @return This search.
+   */
+  public FindAllSearch start()
+  {
+    return start(new Executor() {
+      @Override
+      public void execute(final Runnable runnable)
+      {
+        final Thread thread = new Thread(runnable, "JHexView find all");
+        thread.setDaemon(true);
+        thread.start();
+      }
+    });
+  }
+
+  /**
+   * Starts the search on the specified executor.
+   *
+   * @param executor
+   *          The executor that runs the search.
+   *
+   * @return This search.
+   *
+   * @throws IllegalStateException
+   *           Thrown if the search has already been started.
+   */
+  public FindAllSearch start(final Executor executor)
+  {
+    if (executor == null) {
+      throw new NullPointerException("Error: Executor can't be null");
+    }
+
+    if (m_started) {
+      throw new IllegalStateException("Error: Search has already been started");
+    }
+
+    m_started = true;
+    executor.execute(new Runnable() {
+      @Override
+      public void run()
+      {
+        search();
+      }
+    });
+    return this;
+  }
+
+  /**
+   * Posts an update of the listeners unless one is already pending.
+   */
+  private void scheduleUpdate()
+  {
+    if (m_updatePending.compareAndSet(false, true)) {
+      SwingUtilities.invokeLater(m_update);
+    }
+  }
+
+  /**
+   * Performs the search on the background thread.
+   */
+  private void search()
+  {
+    try {
+      if (m_cancelled) {
+        return;
+      }
+
+      m_searcher.findAll(m_data, m_from, m_to, new ByteSearcher.IMatchHandler() {
+        @Override
+        public boolean blockSearched(final long[] matches, final int count, final long position)
+        {
+          boolean full = false;
+          synchronized (m_matches) {
+            for (int i = 0; i < count; i++) {
+              if (m_matches.size() == OffsetList.MAX_SIZE) {
+                full = true;
+                break;
+              }
+              m_matches.add(matches[i]);
+            }
+          }
+
+          if (full) {
+            m_error = new IllegalStateException("Error: Search stopped after " + OffsetList.MAX_SIZE
+                                                + " matches");
+            return false;
+          }
+
+          m_scanned = position - m_from;
+          scheduleUpdate();
+          return !m_cancelled;
+        }
+      });
+    }
+    catch (final Throwable error) {
+      m_error = error;
+      if (error instanceof Error) {
+        throw (Error) error;
+      }
+    }
+    finally {
+      m_finished = true;
+      scheduleUpdate();
+    }
+  }
+
+  /**
+   * Delivers new matches, progress and completion to the listeners. Runs on
+   * the event dispatch thread.
+   */
+  private void update()
+  {
+    m_updatePending.set(false);
+
+    // Read the state before the matches, so that no match found before
+    // completion is missed
+    final boolean finished = m_finished;
+    final long scanned = m_scanned;
+    final int size = getMatchCount();
+
+    final IFindAllListener[] listeners = m_listeners.getListeners(IFindAllListener.class);
+    if (size > m_delivered) {
+      final int first = m_delivered;
+      m_delivered = size;
+      for (final IFindAllListener listener : listeners) {
+        listener.matchesFound(this, first, size - first);
+      }
+    }
+
+    if (!m_finishDelivered) {
+      for (final IFindAllListener listener : listeners) {
+        listener.progressChanged(this, scanned, getTotalBytes());
+      }
+
+      if (finished) {
+        m_finishDelivered = true;
+        for (final IFindAllListener listener : listeners) {
+          listener.searchFinished(this, m_cancelled);
+        }
+      }
+    }
+  }
+}
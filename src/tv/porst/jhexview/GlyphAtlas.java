@@ -0,0 +1,432 @@
+package tv.porst.jhexview;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Image that holds the pre-rendered glyphs of all hex byte values and ASCII
+ * characters in a single font and color.
+ *
+ * Cells are not drawn one by one. Their glyph pixels are copied into a row
+ * buffer by {@link Cache}, and every row is drawn with a single image
+ * operation. This replaces thousands of text rendering calls per frame with
+ * plain array copies.
+ *
+ * The glyphs are rendered at the scale of the target device, so they stay
+ * sharp on high resolution screens.
+ */
+final class GlyphAtlas
+{
+  /**
+   * Number of glyphs per row of the atlas image.
+   */
+  private static final int COLUMNS = 16;
+
+  private final Color m_color;
+
+  /**
+   * Width of a hex cell in device pixels.
+   */
+  private final int m_hexWidth;
+
+  /**
+   * Width of an ASCII cell in device pixels.
+   */
+  private final int m_asciiWidth;
+
+  /**
+   * Height of a cell in device pixels.
+   */
+  private final int m_cellHeight;
+
+  /**
+   * Left edge of the ASCII glyphs in the atlas image.
+   */
+  private final int m_asciiLeft;
+
+  /**
+   * Premultiplied ARGB pixels of the atlas image.
+   */
+  private final int[] m_pixels;
+
+  /**
+   * Width of the atlas image.
+   */
+  private final int m_stride;
+
+  private GlyphAtlas(final Font font, final Color color, final double scaleX, final double scaleY,
+                     final Object antialiasing, final int charWidth, final int ascent,
+                     final int cellHeight, final String[] hexBytes, final char[] asciiChars)
+  {
+    m_color = color;
+    m_hexWidth = toDevice(2 * charWidth, scaleX);
+    m_asciiWidth = toDevice(charWidth, scaleX);
+    m_cellHeight = toDevice(cellHeight, scaleY);
+
+    m_asciiLeft = COLUMNS * m_hexWidth;
+    m_stride = m_asciiLeft + COLUMNS * m_asciiWidth;
+
+    final BufferedImage image = new BufferedImage(m_stride, 256 / COLUMNS * m_cellHeight,
+                                                  BufferedImage.TYPE_INT_ARGB_PRE);
+    final Graphics2D g = image.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, getImageAntialiasing(antialiasing));
+      g.setFont(font);
+      g.setColor(color);
+
+      for (int value = 0; value < 256; value++) {
+        final int top = value / COLUMNS * m_cellHeight;
+
+        // Glyphs are clipped to their cells, so overhanging glyphs don't bleed
+        // into their neighbors when copied
+        drawGlyph(g, hexBytes[value], value % COLUMNS * m_hexWidth, top, m_hexWidth,
+                  m_cellHeight, scaleX, scaleY, ascent);
+        drawGlyph(g, String.valueOf(asciiChars[value]), m_asciiLeft + value % COLUMNS * m_asciiWidth,
+                  top, m_asciiWidth, m_cellHeight, scaleX, scaleY, ascent);
+      }
+    } finally {
+      g.dispose();
+    }
+
+    m_pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+  }
+
+  /**
+   * Text antialiasing that can be used on a translucent image. Subpixel
+   * antialiasing requires an opaque background and is replaced by grayscale
+   * antialiasing.
+   */
+  private static Object getImageAntialiasing(final Object antialiasing)
+  {
+    if (antialiasing == null || antialiasing == RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT
+        || antialiasing == RenderingHints.VALUE_TEXT_ANTIALIAS_OFF) {
+      return RenderingHints.VALUE_TEXT_ANTIALIAS_OFF;
+    }
+    return RenderingHints.VALUE_TEXT_ANTIALIAS_ON;
+  }
+
+  /**
+   * Renders a glyph into the cell with the specified device coordinates.
+   */
+  private static void drawGlyph(final Graphics2D g, final String text, final int left, final int top,
+                                final int width, final int height, final double scaleX,
+                                final double scaleY, final int ascent)
+  {
+    final Graphics2D cell = (Graphics2D) g.create();
+    try {
+      cell.clipRect(left, top, width, height);
+      cell.translate(left, top);
+      cell.scale(scaleX, scaleY);
+      cell.drawString(text, 0, ascent);
+    } finally {
+      cell.dispose();
+    }
+  }
+
+  private static int toDevice(final int value, final double scale)
+  {
+    return (int) Math.round(value * scale);
+  }
+
+  /**
+   * Copies a glyph into a pixel buffer.
+   *
+   * @param left
+   *          Left edge of the glyph in the atlas image.
+   * @param top
+   *          Top edge of the glyph in the atlas image.
+   * @param width
+   *          Width of the glyph.
+   * @param dst
+   *          The pixel buffer. Its height must be the cell height.
+   * @param dstStride
+   *          Width of the pixel buffer.
+   * @param dstX
+   *          Left edge of the glyph in the pixel buffer.
+   */
+  private void copyGlyph(final int left, final int top, int width, final int[] dst,
+                         final int dstStride, int dstX)
+  {
+    int srcX = left;
+    if (dstX < 0) {
+      srcX -= dstX;
+      width += dstX;
+      dstX = 0;
+    }
+    width = Math.min(width, dstStride - dstX);
+    if (width <= 0) {
+      return;
+    }
+
+    int src = top * m_stride + srcX;
+    int dstIndex = dstX;
+    for (int row = 0; row < m_cellHeight; row++) {
+      System.arraycopy(m_pixels, src, dst, dstIndex, width);
+      src += m_stride;
+      dstIndex += dstStride;
+    }
+  }
+
+  /**
+   * Keeps the atlases of the most recently used fonts and colors and
+   * assembles rows of glyphs.
+   *
+   * A panel is drawn by calling {@link #prepare} once, and then for every row
+   * {@link #beginRow}, {@link #drawHex} or {@link #drawAscii} for each of its
+   * cells and {@link #endRow}.
+   */
+  static final class Cache
+  {
+    /**
+     * Maximum number of atlases kept by the cache.
+     */
+    private static final int MAX_ATLASES = 16;
+
+    /**
+     * Number of atlases that are checked before looking up an atlas by its key.
+     */
+    private static final int RECENT_ATLASES = 4;
+
+    private final LinkedHashMap<Object, GlyphAtlas> m_atlases =
+        new LinkedHashMap<Object, GlyphAtlas>(MAX_ATLASES, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(final Map.Entry<Object, GlyphAtlas> eldest)
+          {
+            return size() > MAX_ATLASES;
+          }
+        };
+
+    /**
+     * The atlases used last, most recent first. All of them match the current
+     * font, scale and metrics.
+     */
+    private final GlyphAtlas[] m_recent = new GlyphAtlas[RECENT_ATLASES];
+
+    private Font m_font;
+    private double m_scaleX;
+    private double m_scaleY;
+    private Object m_antialiasing;
+    private int m_charWidth;
+    private int m_ascent;
+    private int m_cellHeight;
+    private String[] m_hexBytes;
+    private char[] m_asciiChars;
+
+    /**
+     * Image that receives the glyphs of the current row.
+     */
+    private BufferedImage m_rowImage;
+    private int[] m_rowPixels;
+    private int m_rowStride;
+
+    /**
+     * Left edge of the current row in component coordinates.
+     */
+    private int m_rowX;
+
+    /**
+     * Range of the row buffer columns that contain glyphs.
+     */
+    private int m_dirtyLeft;
+    private int m_dirtyRight;
+
+    /**
+     * Starts a new row of cells.
+     *
+     * @param x
+     *          Left edge of the row.
+     * @param width
+     *          Width of the row.
+     */
+    public void beginRow(final int x, final int width)
+    {
+      m_rowX = x;
+
+      final int deviceWidth = Math.max(toDevice(width, m_scaleX) + 1, 1);
+      final int deviceHeight = Math.max(toDevice(m_cellHeight, m_scaleY), 1);
+      if (m_rowImage == null || m_rowImage.getWidth() < deviceWidth
+          || m_rowImage.getHeight() != deviceHeight) {
+        m_rowImage = new BufferedImage(deviceWidth, deviceHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        m_rowPixels = ((DataBufferInt) m_rowImage.getRaster().getDataBuffer()).getData();
+        m_rowStride = deviceWidth;
+      }
+
+      m_dirtyLeft = Integer.MAX_VALUE;
+      m_dirtyRight = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Removes all atlases.
+     */
+    public void clear()
+    {
+      m_atlases.clear();
+      Arrays.fill(m_recent, null);
+      m_rowImage = null;
+      m_rowPixels = null;
+    }
+
+    /**
+     * Adds the glyph of an ASCII character to the current row.
+     *
+     * @param color
+     *          The color of the glyph.
+     * @param value
+     *          The byte value (0-255) whose character is drawn.
+     * @param x
+     *          Left edge of the cell.
+     */
+    public void drawAscii(final Color color, final int value, final int x)
+    {
+      final GlyphAtlas atlas = get(color);
+      final int dstX = toDevice(x - m_rowX, m_scaleX);
+      atlas.copyGlyph(atlas.m_asciiLeft + value % COLUMNS * atlas.m_asciiWidth,
+                      value / COLUMNS * atlas.m_cellHeight, atlas.m_asciiWidth, m_rowPixels,
+                      m_rowStride, dstX);
+      markDirty(dstX, atlas.m_asciiWidth);
+    }
+
+    /**
+     * Adds the glyph of a hex byte value to the current row.
+     *
+     * @param color
+     *          The color of the glyph.
+     * @param value
+     *          The byte value (0-255).
+     * @param x
+     *          Left edge of the cell.
+     */
+    public void drawHex(final Color color, final int value, final int x)
+    {
+      final GlyphAtlas atlas = get(color);
+      final int dstX = toDevice(x - m_rowX, m_scaleX);
+      atlas.copyGlyph(value % COLUMNS * atlas.m_hexWidth, value / COLUMNS * atlas.m_cellHeight,
+                      atlas.m_hexWidth, m_rowPixels, m_rowStride, dstX);
+      markDirty(dstX, atlas.m_hexWidth);
+    }
+
+    /**
+     * Draws the glyphs of the current row and clears the row buffer.
+     *
+     * @param g
+     *          The graphics context to draw to.
+     * @param y
+     *          Baseline of the row.
+     */
+    public void endRow(final Graphics g, final int y)
+    {
+      final int left = Math.max(m_dirtyLeft, 0);
+      final int right = Math.min(m_dirtyRight, m_rowStride);
+      if (left >= right) {
+        return;
+      }
+
+      // Convert the used buffer columns to whole component pixels
+      final int componentLeft = (int) Math.floor(left / m_scaleX);
+      final int componentRight = (int) Math.ceil(right / m_scaleX);
+      final int deviceHeight = m_rowImage.getHeight();
+      final int top = y - m_ascent;
+
+      g.drawImage(m_rowImage, m_rowX + componentLeft, top, m_rowX + componentRight,
+                  top + m_cellHeight, toDevice(componentLeft, m_scaleX), 0,
+                  Math.min(toDevice(componentRight, m_scaleX), m_rowStride), deviceHeight, null);
+
+      for (int row = 0; row < deviceHeight; row++) {
+        Arrays.fill(m_rowPixels, row * m_rowStride + left, row * m_rowStride + right, 0);
+      }
+    }
+
+    /**
+     * Sets the font, scale and metrics of the following rows. The font of the
+     * graphics context is used for the glyphs.
+     *
+     * @param g
+     *          The graphics context the rows are drawn to.
+     * @param charWidth
+     *          Width of a single character.
+     * @param hexBytes
+     *          Text of the hex byte values.
+     * @param asciiChars
+     *          Characters of the byte values.
+     */
+    public void prepare(final Graphics g, final int charWidth, final String[] hexBytes,
+                        final char[] asciiChars)
+    {
+      final Graphics2D g2 = (Graphics2D) g;
+      final Font font = g2.getFont();
+      final FontMetrics metrics = g2.getFontMetrics(font);
+      final int ascent = metrics.getMaxAscent();
+      final int descent = metrics.getMaxDescent();
+      final AffineTransform transform = g2.getTransform();
+      final Object antialiasing = g2.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+
+      if (!font.equals(m_font) || transform.getScaleX() != m_scaleX
+          || transform.getScaleY() != m_scaleY || antialiasing != m_antialiasing
+          || charWidth != m_charWidth || ascent != m_ascent || ascent + descent != m_cellHeight) {
+        Arrays.fill(m_recent, null);
+      }
+
+      m_font = font;
+      m_scaleX = transform.getScaleX();
+      m_scaleY = transform.getScaleY();
+      m_antialiasing = antialiasing;
+      m_charWidth = charWidth;
+      m_ascent = ascent;
+      m_cellHeight = ascent + descent;
+      m_hexBytes = hexBytes;
+      m_asciiChars = asciiChars;
+    }
+
+    /**
+     * Returns the atlas for the specified color and the font and scale set by
+     * the last call of {@link #prepare}, creating it if necessary.
+     */
+    private GlyphAtlas get(final Color color)
+    {
+      for (int i = 0; i < RECENT_ATLASES; i++) {
+        final GlyphAtlas atlas = m_recent[i];
+        if (atlas == null) {
+          break;
+        }
+        if (atlas.m_color == color || atlas.m_color.equals(color)) {
+          if (i > 0) {
+            System.arraycopy(m_recent, 0, m_recent, 1, i);
+            m_recent[0] = atlas;
+          }
+          return atlas;
+        }
+      }
+
+      final Object key = Arrays.asList(m_font, color, m_scaleX, m_scaleY, m_antialiasing,
+                                       m_charWidth, m_ascent, m_cellHeight);
+      GlyphAtlas atlas = m_atlases.get(key);
+      if (atlas == null) {
+        atlas = new GlyphAtlas(m_font, color, m_scaleX, m_scaleY, m_antialiasing, m_charWidth,
+                               m_ascent, m_cellHeight, m_hexBytes, m_asciiChars);
+        m_atlases.put(key, atlas);
+      }
+
+      System.arraycopy(m_recent, 0, m_recent, 1, RECENT_ATLASES - 1);
+      m_recent[0] = atlas;
+      return atlas;
+    }
+
+    private void markDirty(final int x, final int width)
+    {
+      m_dirtyLeft = Math.min(m_dirtyLeft, x);
+      m_dirtyRight = Math.max(m_dirtyRight, x + width);
+    }
+  }
+}
@@ -0,0 +1,663 @@
+package tv.porst.jhexview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled hex search pattern with wildcards, nibble masks, alternatives and
+ * gaps.
+ *
+ * The pattern language consists of the following elements, separated by
+ * optional whitespace:
+ *
+ * <ul>
+ * <li><code>4D</code> - the byte 0x4D.</li>
+ * <li><code>??</code> - any byte.</li>
+ * <li><code>4?</code>, <code>?D</code> - any byte with the given high or low
+ * nibble.</li>
+ * <li><code>(4D|5A|6?)</code> - any of the listed bytes, which may use nibble
+ * masks as well.</li>
+ * <li><code>[4]</code> - exactly 4 arbitrary bytes.</li>
+ * <li><code>[2-8]</code> - between 2 and 8 arbitrary bytes. A pattern can't
+ * start or end with such a gap.</li>
+ * </ul>
+ *
+ * Every byte position of the pattern is compiled into a table with 256
+ * entries. The search slides a window of the pattern over the data and skips
+ * ahead with a Horspool shift table of the window. The window is chosen among
+ * the positions of all segments between variable gaps so that it gives the
+ * largest average shift, which usually makes it cover the longest run of
+ * fixed bytes. Only where the window matches, the starts of the pattern that
+ * the gaps in front of the window allow are compared with the whole pattern.
+ *
+ * Patterns are immutable and can be used by several threads at the same time.
+ */
+public final class HexPattern
+{
+  /**
+   * Maximum length of a match.
+   */
+  private static final int MAX_LENGTH = 64 * 1024;
+
+  /**
+   * Maximum length of the skip window.
+   */
+  private static final int MAX_WINDOW = 64;
+
+  /**
+   * Byte class that contains every byte. Shared by all wildcard positions of
+   * fixed gaps.
+   */
+  private static final boolean[] ANY_BYTE = new boolean[256];
+
+  static {
+    Arrays.fill(ANY_BYTE, true);
+  }
+
+  /**
+   * The source of the pattern.
+   */
+  private final String m_source;
+
+  /**
+   * The byte classes of the fixed positions of all segments. A segment is a
+   * part of the pattern between two variable gaps.
+   */
+  private final boolean[][] m_classes;
+
+  /**
+   * Index of the first class of every segment, followed by the number of
+   * classes.
+   */
+  private final int[] m_segmentStarts;
+
+  /**
+   * Minimum and maximum length of the gap in front of every segment. Zero for
+   * the first segment.
+   */
+  private final int[] m_gapMin;
+  private final int[] m_gapMax;
+
+  /**
+   * Minimum length of the rest of the pattern from every segment on, without
+   * the gap in front of the segment.
+   */
+  private final int[] m_remainingMin;
+
+  private final int m_minLength;
+  private final int m_maxLength;
+
+  /**
+   * The skip window [m_windowStart, m_windowEnd) of classes within a segment
+   * and its shift table.
+   */
+  private final int m_windowStart;
+  private final int m_windowEnd;
+  private final int[] m_shift;
+
+  /**
+   * Minimum and maximum distance from the start of a match to the start of
+   * the skip window.
+   */
+  private final int m_windowMin;
+  private final int m_windowMax;
+
+  private HexPattern(final String source, final List<List<boolean[]>> segments,
+                     final List<int[]> gaps)
+  {
+    m_source = source;
+
+    final int segmentCount = segments.size();
+    m_segmentStarts = new int[segmentCount + 1];
+    m_gapMin = new int[segmentCount];
+    m_gapMax = new int[segmentCount];
+
+    final List<boolean[]> classes = new ArrayList<boolean[]>();
+    for (int i = 0; i < segmentCount; i++) {
+      m_segmentStarts[i] = classes.size();
+      classes.addAll(segments.get(i));
+      m_gapMin[i] = gaps.get(i)[0];
+      m_gapMax[i] = gaps.get(i)[1];
+    }
+    m_segmentStarts[segmentCount] = classes.size();
+    m_classes = classes.toArray(new boolean[classes.size()][]);
+
+    m_remainingMin = new int[segmentCount + 1];
+    long maxLength = 0;
+    for (int i = segmentCount - 1; i >= 0; i--) {
+      final int length = m_segmentStarts[i + 1] - m_segmentStarts[i];
+      m_remainingMin[i] = m_remainingMin[i + 1] + length + (i + 1 < segmentCount ? m_gapMin[i + 1] : 0);
+      maxLength += length + m_gapMax[i];
+    }
+    if (maxLength > MAX_LENGTH) {
+      throw new IllegalArgumentException("Error: Hex pattern can match at most " + MAX_LENGTH + " bytes");
+    }
+    m_minLength = m_remainingMin[0];
+    m_maxLength = (int) maxLength;
+
+    // Choose the window with the largest sum of shifts among all segments
+    final boolean[] seen = new boolean[256];
+    long bestSum = -1;
+    int bestSegment = 0;
+    int bestStart = 0;
+    int bestEnd = 1;
+    for (int segment = 0; segment < segmentCount; segment++) {
+      final int first = m_segmentStarts[segment];
+      for (int end = first + 1; end <= m_segmentStarts[segment + 1]; end++) {
+        Arrays.fill(seen, false);
+        int seenCount = 0;
+        long seenSum = 0;
+        for (int start = end - 1; start >= first && end - start <= MAX_WINDOW; start--) {
+          // Bytes of the class at start shift the window to it, unless a later
+          // position of the window has already been found for them
+          if (start < end - 1) {
+            final boolean[] cls = m_classes[start];
+            for (int b = 0; b < 256; b++) {
+              if (cls[b] && !seen[b]) {
+                seen[b] = true;
+                seenCount++;
+                seenSum += end - 1 - start;
+              }
+            }
+          }
+
+          final long sum = seenSum + (long) (256 - seenCount) * (end - start);
+          if (sum > bestSum || sum == bestSum && end - start > bestEnd - bestStart) {
+            bestSum = sum;
+            bestSegment = segment;
+            bestStart = start;
+            bestEnd = end;
+          }
+
+          if (seenCount == 256) {
+            // Longer windows can't shift further
+            break;
+          }
+        }
+      }
+    }
+
+    // Distance of the window from the start of a match
+    int windowMin = bestStart - m_segmentStarts[bestSegment];
+    int windowMax = windowMin;
+    for (int i = 0; i < bestSegment; i++) {
+      windowMin += m_gapMin[i] + m_segmentStarts[i + 1] - m_segmentStarts[i];
+      windowMax += m_gapMax[i] + m_segmentStarts[i + 1] - m_segmentStarts[i];
+    }
+    m_windowMin = windowMin + m_gapMin[bestSegment];
+    m_windowMax = windowMax + m_gapMax[bestSegment];
+
+    m_windowStart = bestStart;
+    m_windowEnd = bestEnd;
+    m_shift = new int[256];
+    Arrays.fill(m_shift, bestEnd - bestStart);
+    for (int i = bestStart; i < bestEnd - 1; i++) {
+      for (int b = 0; b < 256; b++) {
+        if (m_classes[i][b]) {
+          m_shift[b] = bestEnd - 1 - i;
+        }
+      }
+    }
+  }
+
+  /**
+   * Compiles a hex pattern.
+   *
+   * @param pattern
+   *          The pattern, e.g. <code>"4D 5A ?? 00 [2-8] (50|4?) 45"</code>.
+   *
+   * @return The compiled pattern.
+   *
+   * @throws IllegalArgumentException
+   *           Thrown if the pattern is invalid or empty.
+   */
+  public static HexPattern compile(final String pattern)
+  {
+    if (pattern == null) {
+      throw new NullPointerException("Error: Pattern can't be null");
+    }
+
+    final List<List<boolean[]>> segments = new ArrayList<List<boolean[]>>();
+    final List<int[]> gaps = new ArrayList<int[]>();
+    List<boolean[]> segment = null;
+
+    // Gaps are collected until the next byte
+    long gapMin = 0;
+    long gapMax = 0;
+
+    int i = 0;
+    while (i < pattern.length()) {
+      final char ch = pattern.charAt(i);
+      if (Character.isWhitespace(ch)) {
+        i++;
+        continue;
+      }
+
+      if (ch == '[') {
+        final int close = pattern.indexOf(']', i);
+        if (close < 0) {
+          throw invalid(pattern, i);
+        }
+
+        final String range = pattern.substring(i + 1, close).trim();
+        final int dash = range.indexOf('-');
+        try {
+          final int min = Integer.parseInt(dash < 0 ? range : range.substring(0, dash).trim());
+          final int max = dash < 0 ? min : Integer.parseInt(range.substring(dash + 1).trim());
+          if (min < 0 || max < min) {
+            throw invalid(pattern, i);
+          }
+          gapMin += min;
+          gapMax += max;
+        }
+        catch (final NumberFormatException exception) {
+          throw invalid(pattern, i);
+        }
+
+        if (gapMax > MAX_LENGTH) {
+          throw new IllegalArgumentException("Error: Hex pattern can match at most " + MAX_LENGTH + " bytes");
+        }
+
+        i = close + 1;
+        continue;
+      }
+
+      final boolean[] cls = new boolean[256];
+      if (ch == '(') {
+        i++;
+        while (true) {
+          i = skipWhitespace(pattern, i);
+          i = parseByte(pattern, i, cls);
+          i = skipWhitespace(pattern, i);
+          if (i < pattern.length() && pattern.charAt(i) == '|') {
+            i++;
+          }
+          else if (i < pattern.length() && pattern.charAt(i) == ')') {
+            i++;
+            break;
+          }
+          else {
+            throw invalid(pattern, i);
+          }
+        }
+      }
+      else {
+        i = parseByte(pattern, i, cls);
+      }
+
+      if (gapMin != gapMax) {
+        // A variable gap starts a new segment
+        if (segment == null) {
+          throw new IllegalArgumentException("Error: Hex pattern can't start with a variable gap");
+        }
+        segment = null;
+      }
+
+      if (segment == null) {
+        segment = new ArrayList<boolean[]>();
+        segments.add(segment);
+        gaps.add(segments.size() == 1 ? new int[] { 0, 0 } : new int[] { (int) gapMin, (int) gapMax });
+        if (segments.size() > 1) {
+          gapMin = 0;
+          gapMax = 0;
+        }
+      }
+
+      addWildcards(segment, gapMin);
+      gapMin = 0;
+      gapMax = 0;
+      segment.add(cls);
+    }
+
+    if (gapMin != gapMax) {
+      throw new IllegalArgumentException("Error: Hex pattern can't end with a variable gap");
+    }
+
+    if (segment == null) {
+      if (gapMin == 0) {
+        throw new IllegalArgumentException("Error: Hex pattern can't be empty");
+      }
+      segment = new ArrayList<boolean[]>();
+      segments.add(segment);
+      gaps.add(new int[] { 0, 0 });
+    }
+    addWildcards(segment, gapMin);
+
+    return new HexPattern(pattern, segments, gaps);
+  }
+
+  /**
+   * Returns the maximum length of a match.
+   */
+  public int getMaximumLength()
+  {
+    return m_maxLength;
+  }
+
+  /**
+   * Returns the minimum length of a match.
+   */
+  public int getMinimumLength()
+  {
+    return m_minLength;
+  }
+
+  /**
+   * Returns the offset of the first match that starts within the specified
+   * window. Matches may extend behind the window up to the end of the data.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window.
+   *
+   * @return The offset of the first match, or -1 if there is no match.
+   */
+  public long indexOf(final IDataProvider data, long from, long to)
+  {
+    final long dataLength = LargeDataProviderAdapter.getDataLength(data);
+    from = Math.max(from, 0);
+    to = Math.min(to, dataLength - m_minLength + 1);
+
+    final byte[] buffer = new byte[ByteSearcher.DEFAULT_BLOCK_SIZE + m_maxLength];
+    final boolean[][] reach = createReach();
+    for (long start = from; start < to; start += ByteSearcher.DEFAULT_BLOCK_SIZE) {
+      final long end = Math.min(to, start + ByteSearcher.DEFAULT_BLOCK_SIZE);
+      final int count = read(data, dataLength, start, end, buffer);
+      final int index = searchForward(buffer, (int) (end - start), count, reach);
+      if (index >= 0) {
+        return start + index;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the offset of the last match that starts within the specified
+   * window. Matches may extend behind the window up to the end of the data.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window.
+   *
+   * @return The offset of the last match, or -1 if there is no match.
+   */
+  public long lastIndexOf(final IDataProvider data, long from, long to)
+  {
+    final long dataLength = LargeDataProviderAdapter.getDataLength(data);
+    from = Math.max(from, 0);
+    to = Math.min(to, dataLength - m_minLength + 1);
+
+    final byte[] buffer = new byte[ByteSearcher.DEFAULT_BLOCK_SIZE + m_maxLength];
+    final boolean[][] reach = createReach();
+    for (long end = to; end > from; end -= ByteSearcher.DEFAULT_BLOCK_SIZE) {
+      final long start = Math.max(from, end - ByteSearcher.DEFAULT_BLOCK_SIZE);
+      final int count = read(data, dataLength, start, end, buffer);
+
+      // The last match of the block is the last of all its matches
+      int last = -1;
+      for (int index = searchForward(buffer, (int) (end - start), count, reach); index >= 0;
+           index = searchForward(buffer, index + 1, (int) (end - start), count, reach)) {
+        last = index;
+      }
+      if (last >= 0) {
+        return start + last;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the length of the match at the specified position. If gaps allow
+   * several matches, the shortest one is used.
+   *
+   * @param data
+   *          The data.
+   * @param offset
+   *          The position of the match within the data.
+   * @param length
+   *          The number of bytes of the data behind the position that can be
+   *          used by the match.
+   *
+   * @return The length of the match, or -1 if the pattern does not match.
+   */
+  public int match(final byte[] data, final int offset, final int length)
+  {
+    if (data == null) {
+      throw new NullPointerException("Error: Data can't be null");
+    }
+
+    if (offset < 0 || length < 0 || offset > data.length - length) {
+      throw new IllegalArgumentException("Error: Invalid range of data");
+    }
+
+    final int end = match(data, offset, offset + length, createReach());
+    return end < 0 ? -1 : end - offset;
+  }
+
+  @Override
+  public String toString()
+  {
+    return m_source;
+  }
+
+  private static void addWildcards(final List<boolean[]> segment, final long count)
+  {
+    for (long i = 0; i < count; i++) {
+      segment.add(ANY_BYTE);
+    }
+  }
+
+  private static IllegalArgumentException invalid(final String pattern, final int position)
+  {
+    return new IllegalArgumentException("Error: Invalid hex pattern '" + pattern + "' at position " + position);
+  }
+
+  /**
+   * Parses a byte with optional nibble wildcards and adds its values to the
+   * byte class.
+   *
+   * @return The position behind the byte.
+   */
+  private static int parseByte(final String pattern, final int position, final boolean[] cls)
+  {
+    if (position + 2 > pattern.length()) {
+      throw invalid(pattern, position);
+    }
+
+    final int high = parseNibble(pattern, position);
+    final int low = parseNibble(pattern, position + 1);
+    for (int value = 0; value < 256; value++) {
+      if ((high < 0 || value >> 4 == high) && (low < 0 || (value & 15) == low)) {
+        cls[value] = true;
+      }
+    }
+    return position + 2;
+  }
+
+  /**
+   * Returns the value of a hex digit, or -1 for a wildcard.
+   */
+  private static int parseNibble(final String pattern, final int position)
+  {
+    final char ch = pattern.charAt(position);
+    if (ch == '?') {
+      return -1;
+    }
+
+    final int value = Character.digit(ch, 16);
+    if (value < 0) {
+      throw invalid(pattern, position);
+    }
+    return value;
+  }
+
+  private static int skipWhitespace(final String pattern, int position)
+  {
+    while (position < pattern.length() && Character.isWhitespace(pattern.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  /**
+   * Creates the two sets of reachable positions used by
+   * {@link #match(byte[], int, int, boolean[][])}.
+   */
+  private boolean[][] createReach()
+  {
+    return new boolean[2][m_maxLength + 1];
+  }
+
+  /**
+   * Matches the pattern at the specified position.
+   *
+   * The positions behind every segment that some choice of gaps reaches are
+   * determined one segment after the other, so every segment is compared at
+   * most once per position, no matter how many gap combinations lead there.
+   *
+   * @param reach
+   *          Two sets of reachable positions relative to the start of the
+   *          match, see {@link #createReach()}. They are empty before and after
+   *          the call.
+   *
+   * @return The position behind the shortest match, or -1 if the pattern does
+   *         not match.
+   */
+  private int match(final byte[] buffer, final int position, final int count, final boolean[][] reach)
+  {
+    boolean[] current = reach[0];
+    boolean[] next = reach[1];
+
+    // The reachable positions in front of the gap of the current segment lie
+    // within [low, high)
+    current[0] = true;
+    int low = 0;
+    int high = 1;
+    for (int segment = 0; segment < m_segmentStarts.length - 1; segment++) {
+      final int first = m_segmentStarts[segment];
+      final int length = m_segmentStarts[segment + 1] - first;
+      final int gapMin = m_gapMin[segment];
+      final int gapMax = m_gapMax[segment];
+      final int limit = Math.min(high - 1 + gapMax, count - position - m_remainingMin[segment]);
+
+      // Number of reachable positions the gap allows in front of start
+      int reachable = 0;
+      int nextLow = -1;
+      int nextHigh = -1;
+      for (int start = low + gapMin; start <= limit; start++) {
+        if (start - gapMin < high && current[start - gapMin]) {
+          reachable++;
+        }
+        if (start - gapMax - 1 >= low && current[start - gapMax - 1]) {
+          reachable--;
+        }
+        if (reachable == 0) {
+          continue;
+        }
+
+        int i = 0;
+        while (i < length && m_classes[first + i][buffer[position + start + i] & 255]) {
+          i++;
+        }
+        if (i == length) {
+          next[start + length] = true;
+          if (nextLow < 0) {
+            nextLow = start + length;
+          }
+          nextHigh = start + length + 1;
+        }
+      }
+
+      Arrays.fill(current, low, high, false);
+      if (nextLow < 0) {
+        return -1;
+      }
+
+      final boolean[] swap = current;
+      current = next;
+      next = swap;
+      low = nextLow;
+      high = nextHigh;
+    }
+
+    Arrays.fill(current, low, high, false);
+    return position + low;
+  }
+
+  /**
+   * Reads the bytes needed by matches that start within [start, end).
+   *
+   * @return The number of bytes read.
+   */
+  private int read(final IDataProvider data, final long dataLength, final long start,
+                   final long end, final byte[] buffer)
+  {
+    final int length = (int) (Math.min(end - 1 + m_maxLength, dataLength) - start);
+    return Math.max(0, data.read(start, buffer, 0, length));
+  }
+
+  /**
+   * Returns the index of the first match that starts within the first starts
+   * bytes of the buffer, or -1 if there is no match.
+   */
+  private int searchForward(final byte[] buffer, final int starts, final int count, final boolean[][] reach)
+  {
+    return searchForward(buffer, 0, starts, count, reach);
+  }
+
+  /**
+   * Returns the index of the first match that starts within [from, starts) of
+   * the buffer, or -1 if there is no match. Only the first count bytes of the
+   * buffer are valid.
+   */
+  private int searchForward(final byte[] buffer, final int from, final int starts, final int count,
+                            final boolean[][] reach)
+  {
+    final boolean[][] classes = m_classes;
+    final int[] shift = m_shift;
+    final int windowStart = m_windowStart;
+    final int windowLength = m_windowEnd - m_windowStart;
+    final int last = windowLength - 1;
+    final int limit = Math.min(starts, count - m_minLength + 1);
+    if (from >= limit) {
+      return -1;
+    }
+
+    // The window is slid over the positions where it can lie in a match that
+    // starts within [from, limit). The starts that the gaps allow for a
+    // window position grow with the position, so every start is tested once
+    // and in ascending order.
+    final int windowLimit = Math.min(limit - 1 + m_windowMax, count - windowLength);
+    int untested = from;
+    for (int position = from + m_windowMin; position <= windowLimit;) {
+      final byte b = buffer[position + last];
+      if (classes[windowStart + last][b & 255]) {
+        int j = last - 1;
+        while (j >= 0 && classes[windowStart + j][buffer[position + j] & 255]) {
+          j--;
+        }
+        if (j < 0) {
+          final int end = Math.min(limit - 1, position - m_windowMin);
+          for (int start = Math.max(untested, position - m_windowMax); start <= end; start++) {
+            if (match(buffer, start, count, reach) >= 0) {
+              return start;
+            }
+          }
+          untested = Math.max(untested, end + 1);
+        }
+      }
+      position += shift[b & 255];
+    }
+
+    return -1;
+  }
+}
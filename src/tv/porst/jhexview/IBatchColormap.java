@@ -0,0 +1,46 @@
+package tv.porst.jhexview;
+
+import java.awt.Color;
+
+/**
+ * Color map that determines the colors of many bytes with a single call.
+ *
+ * JHexView colors all visible bytes at once with
+ * {@link #colorizeAll(byte[], int, long, int, int[], int[])} before a frame
+ * is drawn, instead of calling the per-byte methods of {@link IColormap} up to
+ * three times for every byte in both views. The colors are returned as indices
+ * into the palette returned by {@link #getPalette()}.
+ */
+public interface IBatchColormap extends IColormap
+{
+  /**
+   * Determines the colors of consecutive bytes.
+   *
+   * @param data
+   *          Array that holds the bytes.
+   * @param dataOffset
+   *          Index of the first byte in the array.
+   * @param currentOffset
+   *          The absolute offset of the first byte.
+   * @param length
+   *          The number of bytes.
+   * @param foreground
+   *          Receives the palette index of the foreground color of every byte,
+   *          starting at index 0. -1 if the default foreground color should be
+   *          used.
+   * @param background
+   *          Receives the palette index of the background color of every byte,
+   *          starting at index 0. -1 if the default background color should be
+   *          used.
+   */
+  void colorizeAll(byte[] data, int dataOffset, long currentOffset, int length, int[] foreground,
+                   int[] background);
+
+  /**
+   * Returns the colors that are referenced by the palette indices of
+   * {@link #colorizeAll(byte[], int, long, int, int[], int[])}.
+   *
+   * @return The palette. It must not be modified by the caller.
+   */
+  Color[] getPalette();
+}
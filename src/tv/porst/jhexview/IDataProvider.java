@@ -5,6 +5,9 @@
  */
 package tv.porst.jhexview;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
 public interface IDataProvider
 {
   /**
@@ -46,12 +49,75 @@ public interface IDataProvider
    */
   boolean keepTrying();
 
+  /**
+   * Copies a data segment into the specified array. The default implementation fetches the
+   * data by {@link #getData(long, int)}. Providers should override it to avoid allocating a
+   * temporary array on every call.
+   * @param offset The start offset of the data.
+   * @param dst The array that receives the data.
+   * @param dstOffset The first index in <code>dst</code> to write to.
+   * @param length The maximum number of bytes to copy.
+   * @return The number of bytes copied. Can be less than <code>length</code> if the end of
+   *         the data has been reached.
+   */
+  default int read(long offset, byte[] dst, int dstOffset, int length)
+  {
+    final byte[] data = getData(offset, length);
+    final int count = (data != null) ? Math.min(data.length, length) : 0;
+    if (count > 0) {
+      System.arraycopy(data, 0, dst, dstOffset, count);
+    }
+    return count;
+  }
+
+  /**
+   * Copies a data segment into the remaining space of the specified buffer. The buffer position
+   * is advanced by the number of bytes copied.
+   * @param offset The start offset of the data.
+   * @param dst The buffer that receives the data.
+   * @return The number of bytes copied.
+   */
+  default int read(long offset, ByteBuffer dst)
+  {
+    final int count;
+    if (dst.hasArray()) {
+      count = read(offset, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+      dst.position(dst.position() + count);
+    } else {
+      final byte[] data = getData(offset, dst.remaining());
+      count = (data != null) ? Math.min(data.length, dst.remaining()) : 0;
+      if (count > 0) {
+        dst.put(data, 0, count);
+      }
+    }
+    return count;
+  }
+
   /**
    * Removes a listener from the DataProvider.
    * @param listener The listener to remove.
    */
   void removeListener(IDataChangedListener listener);
 
+  /**
+   * Requests a data segment that is not available yet, see {@link #hasData(long, int)}.
+   * The returned future completes as soon as the data segment can be fetched by
+   * {@link #getData(long, int)}, or completes exceptionally if the data can't be loaded.
+   * The future may complete on any thread.
+   *
+   * The default implementation returns <code>null</code>, which means that the provider
+   * can't notify about available data and has to be polled by {@link #hasData(long, int)}
+   * and {@link #keepTrying()} instead.
+   * @param offset The start offset of the requested data.
+   * @param length The length of the requested data in bytes.
+   * @return A future that completes when the data is available, or <code>null</code> if
+   *         the provider doesn't support notifications.
+   */
+  default CompletableFuture<Void> requestData(long offset, int length)
+  {
+    return null;
+  }
+
   /**
    * Writes the specified data at the given offset. Note: Only works if {@link #isEditable()}
    * returns <code>true</code>.
@@ -0,0 +1,46 @@
+package tv.porst.jhexview;
+
+import java.util.EventListener;
+
+/**
+ * Listener that receives the results of a {@link FindAllSearch}. All methods
+ * are called on the event dispatch thread.
+ */
+public interface IFindAllListener extends EventListener
+{
+  /**
+   * Called when new matches have been found.
+   *
+   * @param search
+   *          The search.
+   * @param first
+   *          Index of the first new match, see {@link FindAllSearch#getMatch(int)}.
+   * @param count
+   *          Number of new matches.
+   */
+  void matchesFound(FindAllSearch search, int first, int count);
+
+  /**
+   * Called when more data has been searched.
+   *
+   * @param search
+   *          The search.
+   * @param scanned
+   *          Number of bytes that have been searched.
+   * @param total
+   *          Total number of bytes to search.
+   */
+  void progressChanged(FindAllSearch search, long scanned, long total);
+
+  /**
+   * Called once when the search has finished, has failed or has been
+   * cancelled. All matches have been reported before. A failed search has an
+   * error, see {@link FindAllSearch#getError()}.
+   *
+   * @param search
+   *          The search.
+   * @param cancelled
+   *          True, if the search has been cancelled.
+   */
+  void searchFinished(FindAllSearch search, boolean cancelled);
+}
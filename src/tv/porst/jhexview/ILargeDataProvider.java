@@ -0,0 +1,27 @@
+package tv.porst.jhexview;
+
+/**
+ * Extension of the {@link IDataProvider} interface for data sources that can
+ * be larger than 2 GB. Offsets are already passed as <code>long</code> by the
+ * base interface, so only the data length needs a 64-bit counterpart.
+ */
+public interface ILargeDataProvider extends IDataProvider
+{
+  /**
+   * Returns the data length in number of bytes, clamped to
+   * {@link Integer#MAX_VALUE} for callers that only know the
+   * {@link IDataProvider} interface.
+   * @return The data length in number of bytes, at most {@link Integer#MAX_VALUE}.
+   */
+  @Override
+  default int getDataLength()
+  {
+    return (int) Math.min(getLargeDataLength(), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the full data length in number of bytes.
+   * @return The data length in number of bytes.
+   */
+  long getLargeDataLength();
+}
@@ -0,0 +1,24 @@
+package tv.porst.jhexview;
+
+/**
+ * Extension of the {@link ILargeDataProvider} interface for data sources that
+ * support inserting and removing bytes.
+ */
+public interface IResizableDataProvider extends ILargeDataProvider
+{
+  /**
+   * Inserts the specified data at the given offset. Data at and after the offset
+   * is moved back by the length of the inserted data.
+   * @param offset The offset at which to insert the data. May be equal to the data length
+   *               to append data.
+   * @param data The data to insert.
+   */
+  void insertData(long offset, byte[] data);
+
+  /**
+   * Removes a data segment. Data after the removed segment is moved forward.
+   * @param offset The start offset of the data to remove.
+   * @param length The number of bytes to remove.
+   */
+  void removeData(long offset, long length);
+}
@@ -0,0 +1,12 @@
+package tv.porst.jhexview;
+
+import java.util.EventListener;
+
+/**
+ * Listener that is notified when the visible region of a hex view moves or
+ * changes its size.
+ */
+public interface IViewportListener extends EventListener
+{
+  void viewportChanged(ViewportEvent event);
+}
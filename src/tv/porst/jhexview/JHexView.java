@@ -16,6 +16,7 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Event;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.KeyboardFocusManager;
@@ -42,9 +43,15 @@ import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.TreeMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
@@ -53,8 +60,10 @@ import javax.swing.JComponent;
 import javax.swing.JPopupMenu;
 import javax.swing.JScrollBar;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.TransferHandler;
+import javax.swing.UIManager;
 import javax.swing.event.EventListenerList;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
@@ -107,10 +116,34 @@ public final class JHexView extends JComponent
     "E0", "E1", "E2", "E3", "E4", "E5", "E6", "E7", "E8", "E9", "EA", "EB", "EC", "ED", "EE", "EF",
     "F0", "F1", "F2", "F3", "F4", "F5", "F6", "F7", "F8", "F9", "FA", "FB", "FC", "FD", "FE", "FF" };
 
+  /**
+   * Lookup table to convert byte values into the characters shown in the ASCII view.
+   */
+  private static final char[] ASCII_CHARS = new char[256];
+
+  /**
+   * Lookup table with the two characters of every hex byte value.
+   */
+  private static final char[] HEX_CHARS = new char[256 * CHARACTERS_PER_BYTE];
+
+  static {
+    for (int i = 0; i < ASCII_CHARS.length; i++) {
+      final char c = ConvertHelpers.toChar((byte) i);
+      ASCII_CHARS[i] = ConvertHelpers.isPrintableCharacter(c) ? c : '.';
+      HEX_BYTES[i].getChars(0, CHARACTERS_PER_BYTE, HEX_CHARS, i * CHARACTERS_PER_BYTE);
+    }
+  }
+
   private static final int PADDING_OFFSETVIEW = 20;
 
   private static final int NIBBLES_PER_BYTE = 2;
 
+  /**
+   * Maximum number of bytes that can be deleted at once. The deleted bytes are
+   * kept in memory for undo, so larger selections are rejected.
+   */
+  private static final int MAX_DELETE_LENGTH = 64 * 1024 * 1024;
+
   /**
    * A stroke definition used for showing a hint box in the view that doesn't currently has
    * the input focus.
@@ -126,10 +159,10 @@ public final class JHexView extends JComponent
 
   /**
    * Stores offset values that have been modified by the user.
-   * The value indicates how often the data at the position has been modified. (Important when
+   * It also counts how often the data at every position has been modified. (Important when
    * undoing actions).
    */
-  private final TreeMap<Long, Integer> m_modifiedOffsets = new TreeMap<Long, Integer>();
+  private final ModifiedOffsetTracker m_modifiedOffsets = new ModifiedOffsetTracker();
 
   /**
    * Manages the undo/redo functionality
@@ -141,6 +174,34 @@ public final class JHexView extends JComponent
    */
   private IDataProvider m_dataProvider;
 
+  /**
+   * Buffer that holds the data of the visible area. It is reused across repaints.
+   */
+  private byte[] m_frameData = new byte[0];
+
+  /**
+   * Number of valid bytes in the frame buffer.
+   */
+  private int m_frameLength = 0;
+
+  /**
+   * Palette indices of the colors of the frame data, determined by a batch
+   * color map.
+   */
+  private int[] m_frameForeground = new int[0];
+  private int[] m_frameBackground = new int[0];
+  private Color[] m_framePalette = new Color[0];
+
+  /**
+   * The batch color map that has colored the frame data, or null.
+   */
+  private IBatchColormap m_frameColormap;
+
+  /**
+   * Number of bytes colored by the batch color map.
+   */
+  private int m_frameColormapLength = 0;
+
   /**
    * Number of bytes shown per row.
    */
@@ -255,10 +316,32 @@ public final class JHexView extends JComponent
    */
   private final JScrollBar m_horizontalScrollbar = new JScrollBar(JScrollBar.HORIZONTAL, 0, 1, 0, 1);
 
+  /**
+   * Maps the value range of the vertical scroll bar onto the row space.
+   */
+  private final ScrollVirtualizer m_scrollVirtualizer = new ScrollVirtualizer();
+
+  /**
+   * Set while the vertical scroll bar is updated to match the first visible row.
+   */
+  private boolean m_scrollbarAdjusting = false;
+
+  /**
+   * Last value of the vertical scroll bar. Used to recognize line and page steps.
+   */
+  private int m_lastScrollValue = 0;
+
   /**
    * The first visible row.
    */
-  private int m_firstRow = 0;
+  private long m_firstRow = 0;
+
+  /**
+   * Viewport that has been reported to the viewport listeners last.
+   */
+  private long m_lastViewportOffset = -1;
+  private int m_lastViewportLength = 0;
+  private long m_lastViewportTime = 0;
 
   /**
    * The first visible column.
@@ -359,10 +442,20 @@ public final class JHexView extends JComponent
 
   /**
    * Timer that is used to refresh the component if no data for the selected
-   * range is available.
+   * range is available and the data provider can't notify about available data.
    */
   private Timer m_updateTimer;
 
+  /**
+   * Action of the update timer.
+   */
+  private final ActionWaitingForData m_waitingAction = new ActionWaitingForData();
+
+  /**
+   * Data request the component is waiting for.
+   */
+  private CompletableFuture<Void> m_dataRequest;
+
   /**
    * Flag that indicates whether the component is being drawn for the first
    * time.
@@ -439,6 +532,21 @@ public final class JHexView extends JComponent
    */
   private final ActionTab m_tabAction = new ActionTab();
 
+  /**
+   * Action that's executed when the user presses the insert key.
+   */
+  private final ActionInsert m_insertAction = new ActionInsert();
+
+  /**
+   * Action that's executed when the user presses the delete key.
+   */
+  private final ActionDelete m_deleteAction = new ActionDelete(false);
+
+  /**
+   * Action that's executed when the user presses the backspace key.
+   */
+  private final ActionDelete m_backspaceAction = new ActionDelete(true);
+
   /**
    * Action that's executed when the user presses the shortcut ctrl+A.
    */
@@ -474,7 +582,66 @@ public final class JHexView extends JComponent
       new ActionShortcut(KeyStroke.getKeyStroke(KeyEvent.VK_Y,
                                                 Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
 
-  private int m_lastHighlightedNibble;
+  private long m_lastHighlightedNibble;
+
+  /**
+   * Determines whether hex and ASCII cells are drawn from pre-rendered glyph images.
+   */
+  private boolean m_glyphAtlasEnabled = true;
+
+  /**
+   * Pre-rendered glyph images of the recently used fonts and colors.
+   */
+  private final GlyphAtlas.Cache m_glyphAtlases = new GlyphAtlas.Cache();
+
+  /**
+   * Determines whether forward searches use all processor cores.
+   */
+  private boolean m_parallelSearchEnabled = false;
+
+  /**
+   * Trigram index of the data that speeds up searches, or null. Dropped when
+   * the data changes.
+   */
+  private NGramIndex m_searchIndex = null;
+
+  /**
+   * Positions, colors and byte values of the cells of the row that is drawn.
+   * A value of -1 denotes an undefined byte.
+   */
+  private int[] m_rowX = new int[0];
+  private Color[] m_rowForeground = new Color[0];
+  private Color[] m_rowBackground = new Color[0];
+  private int[] m_rowValues = new int[0];
+
+  /**
+   * Characters of the text runs of the row that is drawn.
+   */
+  private char[] m_rowChars = new char[0];
+
+  /**
+   * Sweeps over the colored ranges of the visible data, reused on every
+   * repaint.
+   */
+  private final ColoredRangeManager.Sweep[] m_rangeSweeps = new ColoredRangeManager.Sweep[m_coloredRanges.length];
+
+  /**
+   * Font and character width for which {@link #m_monospacedFont} has been determined.
+   */
+  private Font m_runFont;
+  private int m_runCharWidth;
+
+  /**
+   * Determines whether consecutive cells can be drawn as a single string.
+   */
+  private boolean m_monospacedFont;
+
+  /**
+   * Determines whether typed data is inserted instead of overwriting existing
+   * data. Only effective for data providers that implement
+   * {@link IResizableDataProvider}.
+   */
+  private boolean m_insertMode = false;
 
   /**
    * Determines whether to draw a title header.
@@ -554,6 +721,38 @@ public final class JHexView extends JComponent
     setEnabled(false);
   }
 
+  /**
+   * Copies the characters of a cell of the current row into the text buffer.
+   *
+   * @param cell
+   *          The index of the cell.
+   * @param length
+   *          The number of characters already in the buffer.
+   * @param hex
+   *          True, to copy the hex characters of the value, false to copy its
+   *          ASCII character.
+   *
+   * @return The number of characters in the buffer.
+   */
+  private int appendCellChars(final int cell, int length, final boolean hex)
+  {
+    final int value = m_rowValues[cell];
+    if (value < 0) {
+      m_rowChars[length++] = '?';
+      if (hex) {
+        m_rowChars[length++] = '?';
+      }
+    }
+    else if (hex) {
+      m_rowChars[length++] = HEX_CHARS[value * CHARACTERS_PER_BYTE];
+      m_rowChars[length++] = HEX_CHARS[value * CHARACTERS_PER_BYTE + 1];
+    }
+    else {
+      m_rowChars[length++] = ASCII_CHARS[value];
+    }
+    return length;
+  }
+
   /**
    * Calculates current character and row sizes.
    */
@@ -574,19 +773,18 @@ public final class JHexView extends JComponent
     }
   }
 
-  private void changeBy(final ActionEvent event, final int length)
+  private void changeBy(final ActionEvent event, final long length)
   {
     if ((event.getModifiers() & ActionEvent.SHIFT_MASK) == ActionEvent.SHIFT_MASK) {
       if (getSelectionStart() + getSelectionLength() + length < 0) {
         setSelectionLength(-getSelectionStart());
       }
       else {
-        if (getSelectionStart() + getSelectionLength() + length < 2 * m_dataProvider
-            .getDataLength()) {
+        if (getSelectionStart() + getSelectionLength() + length < 2 * getDataLength()) {
           setSelectionLength(getSelectionLength() + length);
         }
         else {
-          setSelectionLength(2 * m_dataProvider.getDataLength() - getSelectionStart());
+          setSelectionLength(2 * getDataLength() - getSelectionStart());
         }
       }
     }
@@ -594,12 +792,11 @@ public final class JHexView extends JComponent
       if (getSelectionStart() + getSelectionLength() + length < 0) {
         setSelectionStart(0);
       }
-      else if (getSelectionStart() + getSelectionLength() + length < 2 * m_dataProvider
-          .getDataLength()) {
+      else if (getSelectionStart() + getSelectionLength() + length < 2 * getDataLength()) {
         setSelectionStart(getSelectionStart() + getSelectionLength() + length);
       }
       else {
-        setSelectionStart(2 * m_dataProvider.getDataLength());
+        setSelectionStart(2 * getDataLength());
       }
 
       setSelectionLength(0);
@@ -632,19 +829,7 @@ public final class JHexView extends JComponent
    */
   private boolean clearModified(long offset, boolean forceRemove)
   {
-    Long key = Long.valueOf(offset);
-    Integer value = m_modifiedOffsets.get(key);
-    if (value != null) {
-      if (value.intValue() > 1 && forceRemove == false) {
-        value = Integer.valueOf(value.intValue() - 1);
-        m_modifiedOffsets.put(key, value);
-      } else {
-        m_modifiedOffsets.remove(key);
-      }
-      return true;
-    } else {
-      return false;
-    }
+    return m_modifiedOffsets.decrement(offset, forceRemove);
   }
 
   /**
@@ -680,14 +865,11 @@ public final class JHexView extends JComponent
       g.setColor(m_disabledColor != m_bgColorAscii ? m_disabledColor : Color.WHITE);
     }
 
-    byte[] data = null;
-    char[] chars = null;
+    final byte[] data = m_frameData;
     int bytesToDraw;
 
     if (m_status == DefinitionStatus.DEFINED) {
-      bytesToDraw = getBytesToDraw();
-      data = m_dataProvider.getData(getFirstVisibleOffset(), bytesToDraw);
-      chars = ConvertHelpers.toChar(data);
+      bytesToDraw = m_frameLength;
     }
     else {
       bytesToDraw = getMaximumVisibleBytes();
@@ -695,26 +877,33 @@ public final class JHexView extends JComponent
 
     long currentOffset = getFirstVisibleOffset();
 
-    for (int i = 0; i < bytesToDraw; i++, currentOffset++) {
-      ColoredRange range = findColoredRange(currentOffset);
+    if (m_glyphAtlasEnabled) {
+      m_glyphAtlases.prepare(g, m_charWidth, HEX_BYTES, ASCII_CHARS);
+    }
 
-      if (range != null && currentOffset + bytesToDraw < range.getStart()) {
-        range = null;
-      }
+    final ColoredRangeManager.Sweep[] rangeSweeps = getColoredRangeSweeps(currentOffset, bytesToDraw);
+    final Color defaultColor = g.getColor();
+    ensureRowCapacity(m_bytesPerRow);
+    int column = 0;
+
+    for (int i = 0; i < bytesToDraw; i++, currentOffset++) {
+      final ColoredRange range = findColoredRange(rangeSweeps, currentOffset);
 
       if (i != 0 && i % m_bytesPerRow == 0) {
-        // If the end of a row is reached, reset the
+        // If the end of a row is reached, draw the row, reset the
         // x-coordinate and increase the y-coordinate.
+        drawRow(g, column, y, characterWidth, 0, false);
+        column = 0;
+
         x = initx;
         y += m_rowHeight;
       }
 
-      if (m_status == DefinitionStatus.DEFINED) {
-        char c = chars[i];
-        c = ConvertHelpers.isPrintableCharacter(c) ? c : '.';
-
-        final String dataString = String.valueOf(c);
+      Color foregroundColor = defaultColor;
+      Color backgroundColor = null;
+      int value = -1;
 
+      if (m_status == DefinitionStatus.DEFINED) {
         if (isEnabled()) {
           // Fixed: Highlighting in debugger memory window is wrong in regards
           // to the endianess selected
@@ -722,77 +911,58 @@ public final class JHexView extends JComponent
               + m_bytesPerColumn - (currentOffset % m_bytesPerColumn) - 1 : currentOffset;
 
           if (isSelectedOffset(normalizedOffset)) {
-
-            g.setColor(m_selectionColor);
-            g.fillRect(x, y - m_charMaxAscent, m_charWidth, m_charMaxAscent + m_charMaxDescent);
+            backgroundColor = m_selectionColor;
 
             // Choose the right color for the ASCII view
             if (isShowModified() && isModified(currentOffset)) {
-              g.setColor(m_fontColorModified);
+              foregroundColor = m_fontColorModified;
             } else {
-              g.setColor(m_fontColorAscii);
+              foregroundColor = m_fontColorAscii;
             }
           }
           else if (range != null && range.containsOffset(currentOffset)) {
-            final Color bgColor = range.getBackgroundColor();
-
-            if (bgColor != null) {
-              g.setColor(bgColor);
-            }
-
-            g.fillRect(x, y - m_charMaxAscent, m_charWidth, m_charMaxAscent + m_charMaxDescent);
-            g.setColor(range.getColor());
+            backgroundColor = range.getBackgroundColor();
+            foregroundColor = range.getColor();
           }
-          else if (m_colorMapEnabled && m_colormap != null && m_colormap.colorize(data[i], currentOffset)) {
-            final Color backgroundColor = m_colormap.getBackgroundColor(data[i], currentOffset);
-            final Color foregroundColor;
+          else if (m_colorMapEnabled && m_colormap != null && isColormapped(data, i, currentOffset)) {
+            backgroundColor = getColormapBackground(data, i, currentOffset);
             if (isShowModified() && isModified(currentOffset)) {
               foregroundColor = m_fontColorModified;
             } else {
-              foregroundColor = m_colormap.getForegroundColor(data[i], currentOffset);
-            }
-
-            if (backgroundColor != null) {
-              g.setColor(backgroundColor);
-              g.fillRect(x, y - m_charMaxAscent, m_charWidth, m_charMaxAscent + m_charMaxDescent);
+              foregroundColor = getColormapForeground(data, i, currentOffset);
             }
 
-            if (foregroundColor != null) {
-              g.setColor(foregroundColor);
-            } else {
-              g.setColor(m_fontColorAscii);
+            if (foregroundColor == null) {
+              foregroundColor = m_fontColorAscii;
             }
           }
           else {
             // Choose the right color for the ASCII view
             if (isShowModified() && isModified(currentOffset)) {
-              g.setColor(m_fontColorModified);
+              foregroundColor = m_fontColorModified;
             } else {
-              g.setColor(m_fontColorAscii);
+              foregroundColor = m_fontColorAscii;
             }
           }
 
         }
         else {
-          g.setColor(m_disabledColor != m_bgColorAscii ? m_disabledColor : Color.WHITE);
+          foregroundColor = m_disabledColor != m_bgColorAscii ? m_disabledColor : Color.WHITE;
         }
 
-        g.drawString(dataString, x, y);
-      }
-      else {
-        g.drawString("?", x, y);
+        value = data[i] & 0xFF;
       }
 
-      x += characterWidth;
-
-      if (range != null && range.getStart() + range.getSize() <= currentOffset) {
-        range = findColoredRange(currentOffset);
+      m_rowX[column] = x;
+      m_rowForeground[column] = foregroundColor != null ? foregroundColor : defaultColor;
+      m_rowBackground[column] = backgroundColor;
+      m_rowValues[column] = value;
+      column++;
 
-        if (range != null && currentOffset + bytesToDraw < range.getStart()) {
-          range = null;
-        }
-      }
+      x += characterWidth;
     }
+
+    drawRow(g, column, y, characterWidth, 0, false);
   }
 
   /**
@@ -864,8 +1034,7 @@ public final class JHexView extends JComponent
       return;
     }
 
-    if (getCurrentOffset() < getFirstVisibleByte()
-        || getCurrentColumn() > getFirstVisibleByte() + getMaximumVisibleBytes()) {
+    if (!isPositionVisible(getCurrentNibble())) {
       return;
     }
 
@@ -897,7 +1066,7 @@ public final class JHexView extends JComponent
   private void drawCaretAsciiWindow(final Graphics g, final int characterWidth,
                                     final int characterHeight, boolean showHint)
   {
-    final int currentRow = getCurrentRow() - m_firstRow;
+    final int currentRow = (int) (getCurrentRow() - m_firstRow);
     final int currentColumn = getCurrentColumn();
     final int currentCharacter = currentColumn / 2;
 
@@ -938,7 +1107,7 @@ public final class JHexView extends JComponent
   private void drawCaretHexWindow(final Graphics g, final int characterWidth,
                                   final int characterHeight, boolean showHint)
   {
-    final int currentRow = getCurrentRow() - m_firstRow;
+    final int currentRow = (int) (getCurrentRow() - m_firstRow);
     final int currentColumn = getCurrentColumn();
 
     // Calculate the position of the first character in the row.
@@ -1002,12 +1171,11 @@ public final class JHexView extends JComponent
 
     boolean evenColumn = true;
 
-    byte[] data = null;
+    final byte[] data = m_frameData;
     int bytesToDraw;
 
     if (m_status == DefinitionStatus.DEFINED) {
-      bytesToDraw = getBytesToDraw();
-      data = m_dataProvider.getData(getFirstVisibleOffset(), bytesToDraw);
+      bytesToDraw = m_frameLength;
     }
     else {
       bytesToDraw = getMaximumVisibleBytes();
@@ -1015,15 +1183,26 @@ public final class JHexView extends JComponent
 
     long currentOffset = getFirstVisibleOffset();
 
+    if (m_glyphAtlasEnabled) {
+      m_glyphAtlases.prepare(g, m_charWidth, HEX_BYTES, ASCII_CHARS);
+    }
+
+    final ColoredRangeManager.Sweep[] rangeSweeps = getColoredRangeSweeps(currentOffset, bytesToDraw);
+    final Color defaultColor = g.getColor();
+    ensureRowCapacity(m_bytesPerRow);
+    int column = 0;
+
     // Iterate over all bytes in the data set and
-    // print their hex value to the hex view.
+    // collect their hex values and colors row by row.
     for (int i = 0; i < bytesToDraw; i++, currentOffset++) {
-      final ColoredRange range = findColoredRange(currentOffset);
+      final ColoredRange range = findColoredRange(rangeSweeps, currentOffset);
 
       if (i != 0) {
         if (i % m_bytesPerRow == 0) {
-          // If the end of a row was reached, reset the x-coordinate
+          // If the end of a row was reached, draw the row, reset the x-coordinate
           // and set the y-coordinate to the next row.
+          drawRow(g, column, y, standardSize, m_columnSpacing, true);
+          column = 0;
 
           x = firstX;
           y += m_rowHeight;
@@ -1038,88 +1217,155 @@ public final class JHexView extends JComponent
         }
       }
 
-      if (isEnabled()) {
-        // determine whether to colorize additional horizontal space before or after the value
-        int preSpaceX = 0, postSpaceX = 0;
-        if (i % m_bytesPerColumn == 0) {
-          preSpaceX = m_columnSpacing / 2;
-        }
-        if (i % m_bytesPerColumn == m_bytesPerColumn - 1) {
-          postSpaceX = m_columnSpacing / 2;
-        }
+      Color foregroundColor = defaultColor;
+      Color backgroundColor = null;
 
+      if (isEnabled()) {
         if (isSelectedOffset(currentOffset)) {
-          g.setColor(m_selectionColor);
-          g.fillRect(x - preSpaceX, y - m_charMaxAscent,
-                     2 * m_charWidth + preSpaceX + postSpaceX, m_charMaxAscent + m_charMaxDescent);
+          backgroundColor = m_selectionColor;
 
           // Choose the right color for the hex view
-          g.setColor(evenColumn ? m_fontColorHex1 : m_fontColorHex2);
+          foregroundColor = evenColumn ? m_fontColorHex1 : m_fontColorHex2;
         }
         else if (range != null && range.containsOffset(currentOffset)) {
-          final Color bgColor = range.getBackgroundColor();
-
-          if (bgColor != null) {
-            g.setColor(bgColor);
-          }
-
-          g.fillRect(x - preSpaceX, y - m_charMaxAscent,
-                     2 * m_charWidth + preSpaceX + postSpaceX, m_charMaxAscent + m_charMaxDescent);
-          g.setColor(range.getColor());
+          backgroundColor = range.getBackgroundColor();
+          foregroundColor = range.getColor();
         }
         else {
-          if (m_colorMapEnabled && m_colormap != null && m_colormap.colorize(data[i], currentOffset)) {
-            final Color backgroundColor = m_colormap.getBackgroundColor(data[i], currentOffset);
-            final Color foregroundColor;
+          if (m_colorMapEnabled && m_colormap != null && isColormapped(data, i, currentOffset)) {
+            backgroundColor = getColormapBackground(data, i, currentOffset);
             if (isShowModified() && isModified(currentOffset)) {
               foregroundColor = m_fontColorModified;
             } else {
-              foregroundColor = m_colormap.getForegroundColor(data[i], currentOffset);
-            }
-
-            if (backgroundColor != null) {
-              g.setColor(backgroundColor);
-              g.fillRect(x - preSpaceX, y - m_charMaxAscent,
-                         2 * m_charWidth + preSpaceX + postSpaceX, m_charMaxAscent + m_charMaxDescent);
+              foregroundColor = getColormapForeground(data, i, currentOffset);
             }
 
-            if (foregroundColor != null) {
-              g.setColor(foregroundColor);
-            } else {
-              g.setColor(evenColumn ? m_fontColorHex1 : m_fontColorHex2);
+            if (foregroundColor == null) {
+              foregroundColor = evenColumn ? m_fontColorHex1 : m_fontColorHex2;
             }
           }
           else {
             // Choose the right color for the hex view
             if (isShowModified() && isModified(currentOffset)) {
-              g.setColor(m_fontColorModified);
+              foregroundColor = m_fontColorModified;
             } else {
-              g.setColor(evenColumn ? m_fontColorHex1 : m_fontColorHex2);
+              foregroundColor = evenColumn ? m_fontColorHex1 : m_fontColorHex2;
             }
           }
         }
       }
       else {
-        g.setColor(m_disabledColor != m_bgColorHex ? m_disabledColor : Color.WHITE);
+        foregroundColor = m_disabledColor != m_bgColorHex ? m_disabledColor : Color.WHITE;
       }
 
+      int value = -1;
       if (m_status == DefinitionStatus.DEFINED) {
         // Number of bytes shown in the current column
-        final int columnBytes = Math.min(m_dataProvider.getDataLength() - i, m_bytesPerColumn);
+        final int columnBytes = Math.min(bytesToDraw - (i - i % m_bytesPerColumn), m_bytesPerColumn);
 
         final int dataPosition = m_flipBytes ? (i / m_bytesPerColumn) * m_bytesPerColumn
             + (columnBytes - (i % columnBytes) - 1) : i;
 
-        // Print the data
-        g.drawString(HEX_BYTES[data[dataPosition] & 0xFF], x, y);
-      }
-      else {
-        g.drawString("??", x, y);
+        value = data[dataPosition] & 0xFF;
       }
 
+      m_rowX[column] = x;
+      m_rowForeground[column] = foregroundColor != null ? foregroundColor : defaultColor;
+      m_rowBackground[column] = backgroundColor;
+      m_rowValues[column] = value;
+      column++;
+
       // Update the position of the x-coordinate
       x += standardSize;
     }
+
+    drawRow(g, column, y, standardSize, m_columnSpacing, true);
+  }
+
+  /**
+   * Draws a row of cells that has been collected by the paint loops. Adjacent
+   * cells with the same background are filled with a single rectangle, and
+   * adjacent cells with the same foreground are drawn with a single text call.
+   *
+   * @param g
+   *          The graphics context of the hex panel.
+   * @param count
+   *          The number of cells in the row.
+   * @param y
+   *          The baseline of the row.
+   * @param cellWidth
+   *          The width of a single cell.
+   * @param spacing
+   *          The space between two columns. Half of it is filled with the
+   *          background of the cell on each side.
+   * @param hex
+   *          True, if the cells show hex values. False, if they show ASCII
+   *          characters.
+   */
+  private void drawRow(final Graphics g, final int count, final int y, final int cellWidth,
+                       final int spacing, final boolean hex)
+  {
+    if (count == 0) {
+      return;
+    }
+
+    final int top = y - m_charMaxAscent;
+    final int height = m_charMaxAscent + m_charMaxDescent;
+
+    // Fill the backgrounds
+    for (int start = 0, end; start < count; start = end) {
+      final Color background = m_rowBackground[start];
+      for (end = start + 1; end < count && Objects.equals(m_rowBackground[end], background); end++) {
+      }
+
+      if (background != null) {
+        final int left = m_rowX[start] - (start % m_bytesPerColumn == 0 ? spacing / 2 : 0);
+        final int right = m_rowX[end - 1] + cellWidth
+            + ((end - 1) % m_bytesPerColumn == m_bytesPerColumn - 1 ? spacing / 2 : 0);
+        g.setColor(background);
+        g.fillRect(left, top, right - left, height);
+      }
+    }
+
+    // Draw the text. The values are either defined for all cells or for none.
+    if (m_glyphAtlasEnabled && m_rowValues[0] >= 0) {
+      m_glyphAtlases.beginRow(m_rowX[0], m_rowX[count - 1] + cellWidth - m_rowX[0]);
+      for (int i = 0; i < count; i++) {
+        if (hex) {
+          m_glyphAtlases.drawHex(m_rowForeground[i], m_rowValues[i], m_rowX[i]);
+        }
+        else {
+          m_glyphAtlases.drawAscii(m_rowForeground[i], m_rowValues[i], m_rowX[i]);
+        }
+      }
+      m_glyphAtlases.endRow(g, y);
+      return;
+    }
+
+    final int charWidth = hex ? cellWidth / CHARACTERS_PER_BYTE : cellWidth;
+    final boolean monospaced = isMonospacedFont(g, charWidth);
+
+    for (int start = 0, end; start < count; start = end) {
+      final Color foreground = m_rowForeground[start];
+      int length = appendCellChars(start, 0, hex);
+
+      for (end = start + 1; monospaced && end < count
+          && Objects.equals(m_rowForeground[end], foreground); end++) {
+        // The space between columns is filled with blanks if possible
+        final int gap = m_rowX[end] - m_rowX[end - 1] - cellWidth;
+        if (gap < 0 || gap % charWidth != 0) {
+          break;
+        }
+
+        for (int blanks = gap / charWidth; blanks > 0; blanks--) {
+          m_rowChars[length++] = ' ';
+        }
+        length = appendCellChars(end, length, hex);
+      }
+
+      g.setColor(foreground);
+      g.drawChars(m_rowChars, 0, length, m_rowX[start], y);
+    }
   }
 
   /**
@@ -1152,7 +1398,7 @@ public final class JHexView extends JComponent
         // If the mouse is in the ASCII view it is necessary
         // to highlight two nibbles.
 
-        final int first = 2 * m_lastHighlightedNibble / 2; // Don't change.
+        final long first = 2 * m_lastHighlightedNibble / 2; // Don't change.
 
         Rectangle r = getNibbleBoundsHex(first);
         g.fillRect((int) r.getX(), (int) r.getY(), (int) r.getWidth(), (int) r.getHeight());
@@ -1167,6 +1413,26 @@ public final class JHexView extends JComponent
     }
   }
 
+  /**
+   * Makes sure that the row buffers can hold the specified number of cells.
+   */
+  private void ensureRowCapacity(final int cells)
+  {
+    if (m_rowX.length < cells) {
+      m_rowX = new int[cells];
+      m_rowForeground = new Color[cells];
+      m_rowBackground = new Color[cells];
+      m_rowValues = new int[cells];
+    }
+
+    // Two characters per cell plus the blanks between the columns
+    final int chars = cells * CHARACTERS_PER_BYTE + (cells / m_bytesPerColumn + 1)
+        * (m_columnSpacing / Math.max(m_charWidth, 1) + 1);
+    if (m_rowChars.length < chars) {
+      m_rowChars = new char[chars];
+    }
+  }
+
   /**
    * Draws the offsets in the offset view.
    *
@@ -1196,7 +1462,7 @@ public final class JHexView extends JComponent
     }
 
     final int bytesToDraw;
-    if (m_status == DefinitionStatus.DEFINED && m_dataProvider.getDataLength() > 0) {
+    if (m_status == DefinitionStatus.DEFINED && getDataLength() > 0) {
       bytesToDraw = getBytesToDraw();
     }
     else {
@@ -1217,9 +1483,21 @@ public final class JHexView extends JComponent
     }
   }
 
-  private ColoredRange findColoredRange(final long currentOffset)
+  /**
+   * Returns the colored range of the highest priority that contains the
+   * specified offset.
+   *
+   * @param sweeps
+   *          The sweeps over the visible ranges of all levels, see
+   *          {@link #getColoredRangeSweeps(long, int)}.
+   * @param currentOffset
+   *          The offset. It must not be smaller than the offset of the previous
+   *          call with the same sweeps.
+   */
+  private ColoredRange findColoredRange(final ColoredRangeManager.Sweep[] sweeps,
+                                        final long currentOffset)
   {
-    for (final ColoredRangeManager element : m_coloredRanges) {
+    for (final ColoredRangeManager.Sweep element : sweeps) {
 
       final ColoredRange range = element.findRangeWith(currentOffset);
 
@@ -1232,138 +1510,91 @@ public final class JHexView extends JComponent
   }
 
   /**
-   * Based on reference implementation from
-   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
+   * Reads the data of the visible area into the reusable frame buffer.
    *
-   * Returns the start index of the first occurrence of the specified pattern.
-   * If the pattern is not found, then -1 is returned.
-   * @param startPos The position within the data to start searching.
-   * @param length The length of the data section to search.
-   * @param pattern The pattern to search.
-   * @param caseSensitive Indicates whether to compare case-sensitive or not.
-   * @return The start index of the first match, or -1 otherwise.
+   * @param bytesToDraw
+   *          The number of bytes to read.
    */
-  private int findIndexOf(int startPos, int length, byte[] pattern, boolean caseSensitive)
+  private void fetchFrameData(final int bytesToDraw)
   {
-    if (pattern.length == 0) {
-      return startPos;
+    if (m_frameData.length < bytesToDraw) {
+      m_frameData = new byte[bytesToDraw];
     }
 
-    IDataProvider data = getData();
-
-    int dataLength = data.getDataLength();
-    if (startPos < 0) startPos = 0;
-    if (length < 0) length = 0;
-    if (startPos+length > dataLength) length = dataLength - startPos;
-    if (length <= 0) {
-      return -1;
+    if (bytesToDraw > 0) {
+      m_frameLength = Math.max(0, m_dataProvider.read(getFirstVisibleOffset(), m_frameData, 0,
+                                                      bytesToDraw));
     }
-
-    // normalizing search string
-    for (int i = 0; i < pattern.length; i++) {
-      pattern[i] = normalizeByte(pattern[i], caseSensitive);
+    else {
+      m_frameLength = 0;
     }
 
-    int[] byteTable = findMakeByteTable(pattern);
-    int[] offsetTable = findMakeOffsetTable(pattern);
-    for (int i = startPos + pattern.length - 1, j; i < startPos+length;) {
-      byte b;
-      for (j = pattern.length - 1;
-           pattern[j] == (b = normalizeByte(data.getData(i, 1)[0], caseSensitive));
-           i--, j--) {
-        if (j == 0) {
-          return i;
-        }
+    // Batch color maps color the whole frame with a single call
+    m_frameColormap = null;
+    m_frameColormapLength = 0;
+    if (m_colorMapEnabled && m_colormap instanceof IBatchColormap && m_frameLength > 0) {
+      if (m_frameForeground.length < m_frameLength) {
+        m_frameForeground = new int[m_frameData.length];
+        m_frameBackground = new int[m_frameData.length];
       }
-      i += Math.max(offsetTable[pattern.length - 1 - j], byteTable[b & 255]);
-    }
-    return -1;
-  }
 
-  /**
-   * Converts the specified byte value into a lower-cased counterpart if caseSensitive is false.
-   */
-  private byte normalizeByte(byte value, boolean caseSensitive)
-  {
-    if (caseSensitive == false) {
-      char ch = ConvertHelpers.toChar(value);
-      if (ConvertHelpers.isPrintableCharacter(ch)) {
-        return ConvertHelpers.toByte(Character.toLowerCase(ch));
-      }
+      final IBatchColormap colormap = (IBatchColormap) m_colormap;
+      colormap.colorizeAll(m_frameData, 0, getFirstVisibleOffset(), m_frameLength, m_frameForeground,
+                           m_frameBackground);
+      m_framePalette = colormap.getPalette();
+      m_frameColormap = colormap;
+      m_frameColormapLength = m_frameLength;
     }
-    return value;
   }
 
   /**
-   * Based on reference implementation from
-   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
-   *
-   * Makes the jump table based on the mismatched byte information.
+   * Searches the pattern forward from the specified offset to the end of the data, or
+   * backward from the specified offset to the start of the data.
    */
-  private int[] findMakeByteTable(byte[] pattern)
+  private long find(long offset, byte[] pattern, boolean caseSensitive, boolean forward)
   {
-    int[] table = new int[256];
-    for (int i = 0; i < table.length; i++) {
-      table[i] = pattern.length;
-    }
-    for (int i = 0; i < pattern.length - 1; i++) {
-      table[pattern[i] & 255] = pattern.length - 1 - i;
+    if (forward || pattern.length == 0) {
+      return findIndexOf(offset, getDataLength() - offset, pattern, caseSensitive, true);
+    } else {
+      // Matches must start before the offset
+      return findIndexOf(0, offset + pattern.length - 1, pattern, caseSensitive, false);
     }
-    return table;
   }
 
   /**
-   * Based on reference implementation from
-   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
-   *
-   * Makes the jump table based on the scan offset which mismatch occurs.
+   * Returns the start index of the first or last occurrence of the specified
+   * pattern within a section of the data. If the pattern is not found, then -1
+   * is returned.
+   * @param startPos The position within the data to start searching.
+   * @param length The length of the data section to search.
+   * @param pattern The pattern to search.
+   * @param caseSensitive Indicates whether to compare case-sensitive or not.
+   * @param forward True to find the first match, false to find the last match.
+   * @return The start index of the match, or -1 otherwise.
    */
-  private int[] findMakeOffsetTable(byte[] pattern)
+  private long findIndexOf(long startPos, long length, byte[] pattern, boolean caseSensitive,
+                           boolean forward)
   {
-    int[] table = new int[pattern.length];
-    int lastPrefixPos = pattern.length;
-    for (int i = pattern.length - 1; i >= 0; i--) {
-      if (findIsPrefix(pattern, i + 1)) {
-        lastPrefixPos = i + 1;
-      }
-      table[pattern.length - 1 - i] = lastPrefixPos - i + pattern.length - 1;
-    }
-    for (int i = 0; i < pattern.length - 1; i++) {
-      int slen = findSuffixLength(pattern, i);
-      table[slen] = pattern.length - 1 - i + slen;
-    }
-    return table;
-  }
+    if (startPos < 0) startPos = 0;
+    if (length < 0) length = 0;
 
-  /**
-   * Based on reference implementation from
-   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
-   *
-   * Is pattern[p:end] a prefix of pattern?
-   */
-  private boolean findIsPrefix(byte[] pattern, int p)
-  {
-    for (int i = p, j = 0; i < pattern.length; i++, j++) {
-      if (pattern[i] != pattern[j]) {
-        return false;
+    final NGramIndex index = m_searchIndex;
+    if (index != null && pattern.length >= NGramIndex.GRAM_LENGTH) {
+      if (forward) {
+        return index.indexOf(getData(), pattern, caseSensitive, startPos, startPos + length);
+      } else {
+        return index.lastIndexOf(getData(), pattern, caseSensitive, startPos, startPos + length);
       }
     }
-    return true;
-  }
 
-  /**
-   * Based on reference implementation from
-   *   https://en.wikipedia.org/wiki/Boyer%E2%80%93Moore_string_search_algorithm
-   *
-   * Returns the maximum length of the subpattern ends at p and is a suffix.
-   */
-  private int findSuffixLength(byte[] pattern, int p)
-  {
-    int len = 0;
-    for (int i = p, j = pattern.length - 1; i >= 0 && pattern[i] == pattern[j]; i--, j--) {
-      len += 1;
+    final ByteSearcher searcher = new ByteSearcher(pattern, caseSensitive);
+    if (forward && m_parallelSearchEnabled) {
+      return searcher.indexOf(getData(), startPos, startPos + length, ForkJoinPool.commonPool());
+    } else if (forward) {
+      return searcher.indexOf(getData(), startPos, startPos + length);
+    } else {
+      return searcher.lastIndexOf(getData(), startPos, startPos + length);
     }
-    return len;
   }
 
   /**
@@ -1403,6 +1634,65 @@ public final class JHexView extends JComponent
     }
   }
 
+  /**
+   * Called on the event dispatch thread when a data request of the data provider completes.
+   *
+   * @param request
+   *          The completed request.
+   * @param error
+   *          The error that occurred while loading the data, or null.
+   */
+  private void dataRequestCompleted(final CompletableFuture<Void> request, final Throwable error)
+  {
+    if (request != m_dataRequest) {
+      // The component is not waiting for this request anymore
+      return;
+    }
+
+    m_dataRequest = null;
+
+    if (error == null) {
+      setEnabled(true);
+      setDefinitionStatus(DefinitionStatus.DEFINED);
+    }
+  }
+
+  /**
+   * Notifies all registered ViewportListeners if the visible region changed since the
+   * last notification.
+   */
+  private void fireViewportListener()
+  {
+    final long offset = getFirstVisibleOffset();
+    final int length = getMaximumVisibleBytes();
+    if (offset == m_lastViewportOffset && length == m_lastViewportLength) {
+      return;
+    }
+
+    final long now = System.nanoTime();
+    int direction = 0;
+    double speed = 0.0;
+    if (m_lastViewportOffset >= 0) {
+      direction = Long.signum(offset - m_lastViewportOffset);
+      speed = Math.abs(offset - m_lastViewportOffset) * 1.0e9 / Math.max(now - m_lastViewportTime, 1000000L);
+    }
+
+    m_lastViewportOffset = offset;
+    m_lastViewportLength = length;
+    m_lastViewportTime = now;
+
+    ViewportEvent event = null;
+    Object[] l = m_listeners.getListenerList();
+    for (int i = l.length - 2; i >= 0; i -= 2) {
+      if (l[i] == IViewportListener.class) {
+        if (event == null) {
+          event = new ViewportEvent(this, offset, length, direction, speed);
+        }
+        ((IViewportListener)l[i+1]).viewportChanged(event);
+      }
+    }
+  }
+
   /**
    * Notifies all registered UndoableEditListeners that an undoable event has been triggered.
    */
@@ -1467,7 +1757,7 @@ public final class JHexView extends JComponent
    *
    * @return The bounds of the byte in the ASCII view.
    */
-  private Rectangle getByteBoundsAscii(final int position)
+  private Rectangle getByteBoundsAscii(final long position)
   {
     if (position < 2 * getFirstVisibleByte()) {
       return new Rectangle(-1, -1, -1, -1);
@@ -1477,7 +1767,7 @@ public final class JHexView extends JComponent
       return new Rectangle(-1, -1, -1, -1);
     }
 
-    final int relativePosition = (position - 2 * getFirstVisibleByte()) / 2;
+    final int relativePosition = (int) ((position - 2 * getFirstVisibleByte()) / 2);
 
     final int row = relativePosition / m_bytesPerRow;
     final int character = relativePosition % m_bytesPerRow;
@@ -1495,13 +1785,13 @@ public final class JHexView extends JComponent
    */
   private int getBytesToDraw()
   {
-    final int firstVisibleByte = getFirstVisibleByte();
+    final long firstVisibleByte = getFirstVisibleByte();
 
     final int maxBytes = getMaximumVisibleBytes() + m_bytesPerRow;
 
-    final int restBytes = m_dataProvider.getDataLength() - firstVisibleByte;
+    final long restBytes = getDataLength() - firstVisibleByte;
 
-    return Math.min(maxBytes, restBytes);
+    return (int) Math.min(maxBytes, restBytes);
   }
 
   /**
@@ -1552,6 +1842,62 @@ public final class JHexView extends JComponent
     return g.getFontMetrics().getMaxDescent();
   }
 
+  /**
+   * Returns the background color of the color map for a byte of the frame.
+   *
+   * @param data
+   *          The frame data.
+   * @param index
+   *          The index of the byte in the frame data.
+   * @param currentOffset
+   *          The absolute offset of the byte.
+   */
+  private Color getColormapBackground(final byte[] data, final int index, final long currentOffset)
+  {
+    if (m_frameColormap == m_colormap && index < m_frameColormapLength) {
+      final int color = m_frameBackground[index];
+      return color < 0 ? null : m_framePalette[color];
+    }
+    return m_colormap.getBackgroundColor(data[index], currentOffset);
+  }
+
+  /**
+   * Returns the foreground color of the color map for a byte of the frame.
+   *
+   * @param data
+   *          The frame data.
+   * @param index
+   *          The index of the byte in the frame data.
+   * @param currentOffset
+   *          The absolute offset of the byte.
+   */
+  private Color getColormapForeground(final byte[] data, final int index, final long currentOffset)
+  {
+    if (m_frameColormap == m_colormap && index < m_frameColormapLength) {
+      final int color = m_frameForeground[index];
+      return color < 0 ? null : m_framePalette[color];
+    }
+    return m_colormap.getForegroundColor(data[index], currentOffset);
+  }
+
+  /**
+   * Returns sweeps over the colored ranges of all levels that overlap the
+   * specified window, so that painting only looks at the visible ranges. The
+   * sweeps are reused by the next call.
+   *
+   * @param offset
+   *          The first offset of the window.
+   * @param length
+   *          The length of the window.
+   */
+  private ColoredRangeManager.Sweep[] getColoredRangeSweeps(final long offset, final int length)
+  {
+    for (int i = 0; i < m_coloredRanges.length; i++) {
+      m_rangeSweeps[i] = m_coloredRanges[i].sweep(offset, offset + length, m_rangeSweeps[i]);
+    }
+    return m_rangeSweeps;
+  }
+
   /**
    * Returns the size of a hex view column in pixels (includes column spacing).
    *
@@ -1569,7 +1915,7 @@ public final class JHexView extends JComponent
    */
   private int getCurrentColumn()
   {
-    return (int) getCurrentNibble() % (NIBBLES_PER_BYTE * m_bytesPerRow);
+    return (int) (getCurrentNibble() % (NIBBLES_PER_BYTE * m_bytesPerRow));
   }
 
   /**
@@ -1587,9 +1933,19 @@ public final class JHexView extends JComponent
    *
    * @return The row of the byte at the current position.
    */
-  private int getCurrentRow()
+  private long getCurrentRow()
   {
-    return (int) getCurrentNibble() / (NIBBLES_PER_BYTE * m_bytesPerRow);
+    return getCurrentNibble() / (NIBBLES_PER_BYTE * m_bytesPerRow);
+  }
+
+  /**
+   * Returns the length of the current data set in bytes.
+   *
+   * @return The length of the current data set in bytes.
+   */
+  private long getDataLength()
+  {
+    return LargeDataProviderAdapter.getDataLength(m_dataProvider);
   }
 
   /**
@@ -1597,7 +1953,7 @@ public final class JHexView extends JComponent
    *
    * @return The number of bytes before the first visible byte.
    */
-  private int getEarlierBytes()
+  private long getEarlierBytes()
   {
     return m_firstRow * m_bytesPerRow;
   }
@@ -1607,7 +1963,7 @@ public final class JHexView extends JComponent
    *
    * @return The first visible byte.
    */
-  private int getFirstVisibleByte()
+  private long getFirstVisibleByte()
   {
     return m_firstRow * m_bytesPerRow;
   }
@@ -1704,7 +2060,7 @@ public final class JHexView extends JComponent
    * @return The nibble index at the coordinates or -1 if there is no nibble at
    *         the coordinates.
    */
-  private int getNibbleAtCoordinate(final int x, final int y)
+  private long getNibbleAtCoordinate(final int x, final int y)
   {
     if (m_dataProvider == null) {
       return -1;
@@ -1740,7 +2096,7 @@ public final class JHexView extends JComponent
    * @return The nibble index at the coordinates or -1 if there is no nibble at
    *         the coordinates.
    */
-  private int getNibbleAtCoordinatesAscii(final int x, final int y)
+  private long getNibbleAtCoordinatesAscii(final int x, final int y)
   {
     // Normalize the x coordinate to inside the ASCII view
     final int normalizedX = x - (getAsciiViewLeft() + m_paddingAsciiLeft);
@@ -1752,7 +2108,7 @@ public final class JHexView extends JComponent
     // Find the row at the coordinate
     final int row = (y - (m_paddingTop + getHeaderHeight() - m_charHeight)) / m_rowHeight;
 
-    final int earlierPositions = 2 * getEarlierBytes();
+    final long earlierPositions = 2 * getEarlierBytes();
 
     if (normalizedX / m_charWidth >= m_bytesPerRow) {
       return -1;
@@ -1760,9 +2116,9 @@ public final class JHexView extends JComponent
 
     final int character = 2 * (normalizedX / m_charWidth);
 
-    final int position = earlierPositions + 2 * row * m_bytesPerRow + character;
+    final long position = earlierPositions + 2 * row * m_bytesPerRow + character;
 
-    if (position >= 2 * m_dataProvider.getDataLength()) {
+    if (position >= 2 * getDataLength()) {
       return -1;
     }
     else {
@@ -1781,7 +2137,7 @@ public final class JHexView extends JComponent
    * @return The nibble index at the coordinates or -1 if there is no nibble at
    *         the coordinates.
    */
-  private int getNibbleAtCoordinatesHex(final int x, final int y)
+  private long getNibbleAtCoordinatesHex(final int x, final int y)
   {
     // Normalize the x coordinate to inside the hex view
     final int normalizedX = x - (getHexViewLeft() + m_paddingHexLeft);
@@ -1810,12 +2166,12 @@ public final class JHexView extends JComponent
     // Find the row at the coordinate
     final int row = (y - (m_paddingTop + getHeaderHeight() - m_charHeight)) / m_rowHeight;
 
-    final int earlierPositions = 2 * getEarlierBytes();
+    final long earlierPositions = 2 * getEarlierBytes();
 
-    final int position = earlierPositions + 2 * (row * m_bytesPerRow + column * m_bytesPerColumn)
+    final long position = earlierPositions + 2 * (row * m_bytesPerRow + column * m_bytesPerColumn)
         + nibbleInColumn;
 
-    if (position >= 2 * m_dataProvider.getDataLength()) {
+    if (position >= 2 * getDataLength()) {
       return -1;
     }
     else {
@@ -1831,7 +2187,7 @@ public final class JHexView extends JComponent
    *
    * @return The bounds of the nibble in the hex view.
    */
-  private Rectangle getNibbleBoundsHex(final int position)
+  private Rectangle getNibbleBoundsHex(final long position)
   {
     if (position < 2 * getFirstVisibleByte()) {
       return new Rectangle(-1, -1, -1, -1);
@@ -1841,7 +2197,7 @@ public final class JHexView extends JComponent
       return new Rectangle(-1, -1, -1, -1);
     }
 
-    final int relativePosition = position - 2 * getFirstVisibleByte();
+    final int relativePosition = (int) (position - 2 * getFirstVisibleByte());
 
     final int columnSize = getColumnSize();
 
@@ -1962,6 +2318,15 @@ public final class JHexView extends JComponent
     inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_TAB, none), "TAB");
     actionMap.put("TAB", m_tabAction);
 
+    inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_INSERT, none), "INSERT");
+    actionMap.put("INSERT", m_insertAction);
+
+    inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, none), "DELETE");
+    actionMap.put("DELETE", m_deleteAction);
+
+    inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_BACK_SPACE, none), "BACK_SPACE");
+    actionMap.put("BACK_SPACE", m_backspaceAction);
+
     inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_A, ctrl), "ctrl A");
     actionMap.put("ctrl A", m_SelectAllAction);
 
@@ -2010,6 +2375,24 @@ public final class JHexView extends JComponent
     add(m_horizontalScrollbar, BorderLayout.SOUTH);
   }
 
+  /**
+   * Determines whether the color map colors a byte of the frame.
+   *
+   * @param data
+   *          The frame data.
+   * @param index
+   *          The index of the byte in the frame data.
+   * @param currentOffset
+   *          The absolute offset of the byte.
+   */
+  private boolean isColormapped(final byte[] data, final int index, final long currentOffset)
+  {
+    if (m_frameColormap == m_colormap && index < m_frameColormapLength) {
+      return m_frameForeground[index] >= 0 || m_frameBackground[index] >= 0;
+    }
+    return m_colormap.colorize(data[index], currentOffset);
+  }
+
   /**
    * Determines whether data to be displayed is available.
    *
@@ -2031,6 +2414,30 @@ public final class JHexView extends JComponent
         && x < getHexViewLeft() + getHexViewWidth();
   }
 
+  /**
+   * Determines whether all characters of the current font are exactly as wide
+   * as a cell character, so that consecutive cells can be drawn as a single
+   * string.
+   */
+  private boolean isMonospacedFont(final Graphics g, final int charWidth)
+  {
+    final Font font = g.getFont();
+    if (!font.equals(m_runFont) || charWidth != m_runCharWidth) {
+      final FontMetrics metrics = g.getFontMetrics(font);
+
+      boolean monospaced = charWidth > 0;
+      for (int i = 0; monospaced && i < 128; i++) {
+        final double width = metrics.getStringBounds(ASCII_CHARS, i, i + 1, g).getWidth();
+        monospaced = width == charWidth;
+      }
+
+      m_runFont = font;
+      m_runCharWidth = charWidth;
+      m_monospacedFont = monospaced;
+    }
+    return m_monospacedFont;
+  }
+
   /**
    * Determines whether a certain position is visible in the view.
    *
@@ -2041,8 +2448,8 @@ public final class JHexView extends JComponent
    */
   private boolean isPositionVisible(final long position)
   {
-    final int firstVisible = getFirstVisibleByte();
-    final int lastVisible = firstVisible + getMaximumVisibleBytes();
+    final long firstVisible = getFirstVisibleByte();
+    final long lastVisible = firstVisible + getMaximumVisibleBytes();
 
     return position >= 2 * firstVisible && position <= 2 * lastVisible;
   }
@@ -2083,7 +2490,7 @@ public final class JHexView extends JComponent
    */
   private void scrollToPosition(final long position)
   {
-    m_scrollbar.setValue((int) position / (2 * m_bytesPerRow));
+    setFirstRow(position / (2 * m_bytesPerRow));
   }
 
   /**
@@ -2105,6 +2512,53 @@ public final class JHexView extends JComponent
     fireHexListener(getSelectionStart(), 0);
   }
 
+  /**
+   * Inserts data into the current data provider and moves the modification marks
+   * and colored ranges behind the insert position.
+   *
+   * @param offset
+   *          The offset where the data is inserted.
+   * @param data
+   *          The data to insert.
+   * @param markModified
+   *          True to mark the inserted bytes as modified.
+   */
+  private void insertData(final long offset, final byte[] data, final boolean markModified)
+  {
+    // Modification marks and colored ranges are moved by the resulting DataChangedEvent
+    ((IResizableDataProvider) m_dataProvider).insertData(offset, data);
+
+    if (markModified && offset >= 0L) {
+      m_modifiedOffsets.increment(offset, offset + data.length);
+    }
+  }
+
+  /**
+   * Returns whether typed data is inserted into the current data provider.
+   */
+  private boolean isInsertAllowed()
+  {
+    return m_insertMode && m_dataProvider instanceof IResizableDataProvider;
+  }
+
+  /**
+   * Removes data from the current data provider and moves the modification marks
+   * and colored ranges behind the removed bytes.
+   *
+   * @param offset
+   *          The offset of the first removed byte.
+   * @param length
+   *          The number of bytes to remove.
+   *
+   * @return The removed data.
+   */
+  private byte[] removeData(final long offset, final int length)
+  {
+    final byte[] data = m_dataProvider.getData(offset, length);
+    ((IResizableDataProvider) m_dataProvider).removeData(offset, data.length);
+    return data;
+  }
+
   /**
    * Adds the specified offset of the modified data to the list or increment its use if already existing.
    * @param offset The position of data that has been modified by the user.
@@ -2114,17 +2568,65 @@ public final class JHexView extends JComponent
   {
     int retVal = 0;
     if (offset >= 0L) {
-      Long key = Long.valueOf(offset);
-      Integer value = m_modifiedOffsets.get(key);
-      if (value != null) {
-        retVal = value.intValue();
-      }
-      value = Integer.valueOf(retVal + 1);
-      m_modifiedOffsets.put(key, value);
+      retVal = m_modifiedOffsets.increment(offset);
     }
     return retVal;
   }
 
+  /**
+   * Repaints the rows that show the specified data range. Nothing is repainted if
+   * the range is not visible.
+   *
+   * @param offset
+   *          The offset of the first byte to repaint.
+   * @param length
+   *          The number of bytes to repaint, or -1 to repaint all rows from the offset
+   *          to the bottom of the view.
+   */
+  private void repaintData(final long offset, final long length)
+  {
+    final long firstVisible = getFirstVisibleOffset();
+    final long lastVisible = firstVisible + getMaximumVisibleBytes();
+
+    final long start = Math.max(offset, firstVisible);
+    final long end = (length < 0 || offset + length > lastVisible) ? lastVisible : offset + length;
+    if (end <= start) {
+      return;
+    }
+
+    final int firstRow = (int) ((start - firstVisible) / m_bytesPerRow);
+    final int lastRow = (int) ((end - 1 - firstVisible) / m_bytesPerRow);
+
+    final int y = m_paddingTop + getHeaderHeight() - m_charHeight + firstRow * m_rowHeight;
+    repaint(0, y, getWidth(), (lastRow - firstRow + 1) * m_rowHeight);
+  }
+
+  /**
+   * Stops waiting for data requested by {@link #waitForData(long, int)}.
+   */
+  private void stopWaitingForData()
+  {
+    m_dataRequest = null;
+
+    if (m_updateTimer != null) {
+      m_updateTimer.stop();
+    }
+  }
+
+  /**
+   * Moves the modification marks at or behind an offset after bytes have been
+   * inserted or removed. Marks of removed bytes are dropped.
+   *
+   * @param offset
+   *          The offset of the inserted or removed bytes.
+   * @param delta
+   *          The number of inserted bytes, or the negated number of removed bytes.
+   */
+  private void shiftModified(final long offset, final long delta)
+  {
+    m_modifiedOffsets.shift(offset, delta);
+  }
+
   /**
    * Updates the maximum scroll range of the scroll bar depending on the number
    * of bytes in the current data set.
@@ -2138,22 +2640,25 @@ public final class JHexView extends JComponent
     else {
       final int visibleRows = getNumberOfVisibleRows();
 
-      final int totalRows = m_dataProvider.getDataLength() / m_bytesPerRow;
-      int scrollRange = 2 + totalRows - visibleRows;
+      final long totalRows = getDataLength() / m_bytesPerRow;
+      final long scrollRows = 2 + totalRows - visibleRows;
 
-      if (scrollRange < 0) {
-        scrollRange = 0;
-        m_scrollbar.setValue(0);
-        m_scrollbar.setEnabled(false);
-      }
-      else {
-        m_scrollbar.setEnabled(true);
-      }
+      m_scrollbar.setEnabled(scrollRows >= 0);
+
+      m_scrollVirtualizer.setMaximumRow(scrollRows);
+      m_firstRow = Math.min(m_firstRow, m_scrollVirtualizer.getMaximumRow());
 
-      m_scrollbar.setValue(Math.min(m_scrollbar.getValue(), scrollRange));
-      m_scrollbar.setMaximum(scrollRange+visibleRows);
-      m_scrollbar.setVisibleAmount(visibleRows);
-      m_scrollbar.setBlockIncrement(visibleRows);
+      final int scrollRange = m_scrollVirtualizer.getScrollRange();
+
+      m_scrollbarAdjusting = true;
+      try {
+        m_scrollbar.setValues(m_scrollVirtualizer.toValue(m_firstRow), visibleRows, 0,
+                              scrollRange + visibleRows);
+        m_scrollbar.setBlockIncrement(visibleRows);
+        m_lastScrollValue = m_scrollbar.getValue();
+      } finally {
+        m_scrollbarAdjusting = false;
+      }
 
       final int totalWidth = getAsciiViewLeft() + m_paddingAsciiLeft + m_charWidth * m_bytesPerRow;
 
@@ -2170,6 +2675,22 @@ public final class JHexView extends JComponent
     }
   }
 
+  /**
+   * Sets the first visible row and moves the scroll bar accordingly.
+   *
+   * @param row
+   *          The new first visible row. The value is clamped to the valid
+   *          range of rows.
+   */
+  private void setFirstRow(final long row)
+  {
+    m_firstRow = Math.max(0, Math.min(row, m_scrollVirtualizer.getMaximumRow()));
+
+    updateScrollbarValue();
+
+    repaint();
+  }
+
   private void setSelectionStart(final long selectionStart)
   {
     if (selectionStart != m_selectionStart) {
@@ -2179,6 +2700,21 @@ public final class JHexView extends JComponent
     }
   }
 
+  /**
+   * Moves the vertical scroll bar to the position of the first visible row
+   * without triggering another row change.
+   */
+  private void updateScrollbarValue()
+  {
+    m_scrollbarAdjusting = true;
+    try {
+      m_scrollbar.setValue(m_scrollVirtualizer.toValue(m_firstRow));
+      m_lastScrollValue = m_scrollbar.getValue();
+    } finally {
+      m_scrollbarAdjusting = false;
+    }
+  }
+
   private void updateHexViewWidth()
   {
     m_hexViewWidth = 15 + getColumnSize() * getBytesPerRow() / getBytesPerColumn();
@@ -2205,6 +2741,50 @@ public final class JHexView extends JComponent
     revalidate();
   }
 
+  /**
+   * Waits until the data provider has the specified data segment and enables the
+   * component again. Providers that support {@link IDataProvider#requestData(long, int)}
+   * notify the component as soon as the data is available, all other providers are
+   * polled by the update timer.
+   *
+   * @param offset
+   *          The start offset of the missing data.
+   * @param size
+   *          The length of the missing data in bytes.
+   */
+  private void waitForData(final long offset, final int size)
+  {
+    stopWaitingForData();
+
+    final CompletableFuture<Void> request = m_dataProvider.requestData(offset, size);
+
+    if (request != null) {
+      m_dataRequest = request;
+      request.whenComplete(new BiConsumer<Void, Throwable>() {
+        @Override
+        public void accept(final Void result, final Throwable error)
+        {
+          SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run()
+            {
+              dataRequestCompleted(request, error);
+            }
+          });
+        }
+      });
+    }
+    else {
+      if (m_updateTimer == null) {
+        m_updateTimer = new Timer(1000, m_waitingAction);
+        m_updateTimer.setRepeats(true);
+      }
+
+      m_waitingAction.setRange(offset, size);
+      m_updateTimer.start();
+    }
+  }
+
   /**
    * Paints the hex window.
    */
@@ -2243,6 +2823,9 @@ public final class JHexView extends JComponent
     // If the component has defined data, it can be drawn.
     if (m_status == DefinitionStatus.DEFINED && m_dataProvider != null) {
 
+      // Give prefetchers a chance to request the data around the visible region
+      fireViewportListener();
+
       final int bytesToDraw = getBytesToDraw();
 
       if (bytesToDraw != 0 && !m_dataProvider.hasData(getFirstVisibleOffset(), bytesToDraw)) {
@@ -2255,18 +2838,12 @@ public final class JHexView extends JComponent
         setDefinitionStatus(DefinitionStatus.UNDEFINED);
         setEnabled(false);
 
-        if (m_updateTimer != null) {
-          m_updateTimer.setRepeats(false);
-          m_updateTimer.stop();
-        }
-
-        m_updateTimer = new Timer(1000, new ActionWaitingForData(getFirstVisibleOffset(),
-            bytesToDraw));
-        m_updateTimer.setRepeats(true);
-        m_updateTimer.start();
+        waitForData(getFirstVisibleOffset(), bytesToDraw);
 
         return;
       }
+
+      fetchFrameData(bytesToDraw);
     }
 
     if (isDataAvailable() || m_status == DefinitionStatus.UNDEFINED) {
@@ -2301,6 +2878,21 @@ public final class JHexView extends JComponent
     m_listeners.add(IHexViewListener.class, listener);
   }
 
+  /**
+   * Adds a listener that is notified when the visible region of the data changes.
+   *
+   * @param listener
+   *          The listener to add.
+   */
+  public void addViewportListener(final IViewportListener listener)
+  {
+    if (listener == null) {
+      throw new NullPointerException("Error: Listener can't be null");
+    }
+
+    m_listeners.add(IViewportListener.class, listener);
+  }
+
   public void addUndoableEditListener(UndoableEditListener listener)
   {
     if (listener == null) {
@@ -2356,6 +2948,53 @@ public final class JHexView extends JComponent
     repaint();
   }
 
+  /**
+   * Colorizes many ranges of bytes at once. This is much faster than calling
+   * {@link #colorize(int, long, int, Color, Color)} for every range, since
+   * the ranges are merged in a single pass and the view is repainted once.
+   *
+   * @param level
+   *          The level of the ranges.
+   * @param ranges
+   *          The ranges to colorize, in any order.
+   *
+   * @throws NullPointerException
+   *           Thrown if ranges or one of its elements is null.
+   * @throws IllegalArgumentException
+   *           Thrown if an offset is negative or a size is not positive.
+   */
+  public void colorizeAll(final int level, final Iterable<ColoredRange> ranges)
+  {
+    if (ranges == null) {
+      throw new NullPointerException("Error: Ranges can't be null");
+    }
+
+    if (level < 0 || level >= m_coloredRanges.length) {
+      throw new IllegalArgumentException("Error: Invalid level");
+    }
+
+    final List<ColoredRange> list = new ArrayList<ColoredRange>();
+    for (final ColoredRange range : ranges) {
+      if (range == null) {
+        throw new NullPointerException("Error: Range can't be null");
+      }
+
+      if (range.getStart() < 0) {
+        throw new IllegalArgumentException("Error: Offset can't be negative");
+      }
+
+      if (range.getSize() <= 0) {
+        throw new IllegalArgumentException("Error: Size must be positive");
+      }
+
+      list.add(range);
+    }
+
+    m_coloredRanges[level].addRanges(list);
+
+    repaint();
+  }
+
   public void dispose()
   {
     removeMouseListener(m_listener);
@@ -2404,6 +3043,77 @@ public final class JHexView extends JComponent
     return m_flipBytes;
   }
 
+  /**
+   * Starts a background search for all occurrences of a pattern in the data.
+   * Matches are highlighted in the specified level while they are found, one
+   * batch at a time, and are reported to the listener on the event dispatch
+   * thread. The level is cleared first, so a previous search that highlights
+   * the same level should be cancelled.
+   *
+   * @param pattern The pattern to search.
+   * @param caseSensitive Indicates whether to search case sensitive.
+   * @param level The level used to highlight the matches.
+   * @param color The text color of the matches, or null.
+   * @param bgcolor The background color of the matches, or null.
+   * @param listener Listener that receives the matches and the progress of the search, or null.
+   * @return The running search. It can be used to cancel the search.
+   *
+   * @throws IllegalArgumentException
+   *           Thrown if the pattern is empty.
+   */
+  public FindAllSearch findAll(byte[] pattern, boolean caseSensitive, final int level,
+                               final Color color, final Color bgcolor, IFindAllListener listener)
+  {
+    if (pattern == null) {
+      throw new NullPointerException("Error: Pattern can't be null");
+    }
+
+    if (pattern.length == 0) {
+      throw new IllegalArgumentException("Error: Pattern can't be empty");
+    }
+
+    if (level < 0 || level >= m_coloredRanges.length) {
+      throw new IllegalArgumentException("Error: Invalid level");
+    }
+
+    final FindAllSearch search = new FindAllSearch(getData(), pattern, caseSensitive, 0, getDataLength());
+    uncolorizeAll(level);
+
+    if (color != null || bgcolor != null) {
+      search.addListener(new IFindAllListener() {
+        @Override
+        public void matchesFound(FindAllSearch search, int first, int count)
+        {
+          final int size = search.getPatternLength();
+          final List<ColoredRange> ranges = new ArrayList<ColoredRange>(count);
+          for (final long offset : search.getMatches(first, count)) {
+            ranges.add(new ColoredRange(offset, size, color, bgcolor));
+          }
+
+          // One merge and one repaint per batch instead of per match
+          m_coloredRanges[level].addRanges(ranges);
+          repaint();
+        }
+
+        @Override
+        public void progressChanged(FindAllSearch search, long scanned, long total)
+        {
+        }
+
+        @Override
+        public void searchFinished(FindAllSearch search, boolean cancelled)
+        {
+        }
+      });
+    }
+
+    if (listener != null) {
+      search.addListener(listener);
+    }
+
+    return search.start();
+  }
+
   /**
    * Attempts to find the next occurrence of keyword in the ascii view of the data,
    * starting at the specified offset.
@@ -2412,7 +3122,21 @@ public final class JHexView extends JComponent
    * @param caseSensitive Indicates whether to search case sensitive.
    * @return The start position of the match, or -1 if no match has been found.
    */
-  public int findAscii(int offset, String keyword, boolean caseSensitive)
+  public long findAscii(long offset, String keyword, boolean caseSensitive)
+  {
+    return findAscii(offset, keyword, caseSensitive, true);
+  }
+
+  /**
+   * Attempts to find the next or previous occurrence of keyword in the ascii view of the data.
+   * @param offset The start offset for the search. Forward searches find matches starting at
+   *               or after this offset, backward searches find matches starting before it.
+   * @param keyword The keyword to search.
+   * @param caseSensitive Indicates whether to search case sensitive.
+   * @param forward True to search forward, false to search backward.
+   * @return The start position of the match, or -1 if no match has been found.
+   */
+  public long findAscii(long offset, String keyword, boolean caseSensitive, boolean forward)
   {
     if (getDefinitionStatus() == DefinitionStatus.DEFINED) {
       byte[] pattern;
@@ -2426,8 +3150,7 @@ public final class JHexView extends JComponent
         pattern = new byte[0];
       }
 
-      int len = getData().getDataLength() - offset;
-      return findIndexOf(offset, len, pattern, caseSensitive);
+      return find(offset, pattern, caseSensitive, forward);
     }
     return -1;
   }
@@ -2439,14 +3162,103 @@ public final class JHexView extends JComponent
    * @param keyword The keyword to search.
    * @return The start position of the match, or -1 if no match has been found.
    */
-  public int findHex(int offset, byte[] keyword)
+  public long findHex(long offset, byte[] keyword)
+  {
+    return findHex(offset, keyword, true);
+  }
+
+  /**
+   * Attempts to find the next or previous occurrence of keyword in the hex view of the data.
+   * @param offset The start offset for the search. Forward searches find matches starting at
+   *               or after this offset, backward searches find matches starting before it.
+   * @param keyword The keyword to search.
+   * @param forward True to search forward, false to search backward.
+   * @return The start position of the match, or -1 if no match has been found.
+   */
+  public long findHex(long offset, byte[] keyword, boolean forward)
   {
     if (getDefinitionStatus() == DefinitionStatus.DEFINED) {
       if (keyword == null) {
         keyword = new byte[0];
       }
-      int len = getData().getDataLength() - offset;
-      return findIndexOf(offset, len, keyword, false);
+      // Hex patterns match the bytes exactly
+      return find(offset, keyword, true, forward);
+    }
+    return -1;
+  }
+
+  /**
+   * Attempts to find the next or previous occurrence of keyword in the hex view of the data,
+   * allowing some bytes to differ from the keyword. Use
+   * {@link ApproximateSearcher#getMismatches(IDataProvider, long)} to find the differing bytes.
+   * @param offset The start offset for the search. Forward searches find matches starting at
+   *               or after this offset, backward searches find matches starting before it.
+   * @param keyword The keyword to search, with at most 64 bytes.
+   * @param maxMismatches The maximum number of bytes in which a match may differ from the keyword.
+   * @param forward True to search forward, false to search backward.
+   * @return The start position of the match, or -1 if no match has been found.
+   */
+  public long findHex(long offset, byte[] keyword, int maxMismatches, boolean forward)
+  {
+    if (getDefinitionStatus() == DefinitionStatus.DEFINED) {
+      final ApproximateSearcher searcher = new ApproximateSearcher(keyword, maxMismatches);
+      if (forward) {
+        return searcher.indexOf(getData(), offset, getDataLength());
+      } else {
+        // Matches must start before the offset
+        return searcher.lastIndexOf(getData(), 0, offset + keyword.length - 1);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Attempts to find the next or previous match of a compiled hex pattern in the data.
+   * @param offset The start offset for the search. Forward searches find matches starting at
+   *               or after this offset, backward searches find matches starting before it.
+   * @param pattern The pattern to search, see {@link HexPattern#compile(String)}.
+   * @param forward True to search forward, false to search backward.
+   * @return The start position of the match, or -1 if no match has been found.
+   */
+  public long findHex(long offset, HexPattern pattern, boolean forward)
+  {
+    if (pattern == null) {
+      throw new NullPointerException("Error: Pattern can't be null");
+    }
+
+    if (getDefinitionStatus() == DefinitionStatus.DEFINED) {
+      if (forward) {
+        return pattern.indexOf(getData(), offset, getDataLength());
+      } else {
+        return pattern.lastIndexOf(getData(), 0, offset);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Attempts to find the next or previous occurrence of a text in any of the specified encodings.
+   * Unlike {@link #findAscii(long, String, boolean, boolean)}, characters are not truncated to
+   * bytes, so the text can be found in multi-byte encodings as well. All encodings are searched
+   * in a single pass.
+   * @param offset The start offset for the search. Forward searches find matches starting at
+   *               or after this offset, backward searches find matches starting before it.
+   * @param text The text to search.
+   * @param charsets The encodings to search, e.g. {@link TextSearcher#getDefaultCharsets()}.
+   * @param caseSensitive Indicates whether to search case sensitive.
+   * @param forward True to search forward, false to search backward.
+   * @return The start position of the match, or -1 if no match has been found.
+   */
+  public long findText(long offset, String text, Charset[] charsets, boolean caseSensitive,
+                       boolean forward)
+  {
+    if (getDefinitionStatus() == DefinitionStatus.DEFINED) {
+      final TextSearcher searcher = new TextSearcher(text, charsets, caseSensitive);
+      if (forward) {
+        return searcher.indexOf(getData(), offset, getDataLength());
+      } else {
+        return searcher.lastIndexOf(getData(), 0, offset);
+      }
     }
     return -1;
   }
@@ -2714,7 +3526,7 @@ public final class JHexView extends JComponent
 
   public long getLastOffset()
   {
-    return getBaseAddress() + m_dataProvider.getDataLength();
+    return getBaseAddress() + getDataLength();
   }
 
   /**
@@ -2743,12 +3555,7 @@ public final class JHexView extends JComponent
    */
   public int getModifiedCount(long offset)
   {
-    Integer value = m_modifiedOffsets.get(Long.valueOf(offset));
-    if (value != null) {
-      return value.intValue();
-    } else {
-      return 0;
-    }
+    return m_modifiedOffsets.getModificationCount(offset);
   }
 
   /**
@@ -2757,16 +3564,31 @@ public final class JHexView extends JComponent
    */
   public long[] getModifiedOffsets()
   {
-    long[] retVal = new long[m_modifiedOffsets.size()];
-    if (!m_modifiedOffsets.isEmpty()) {
-      int i = 0;
-      Iterator<Long> iter = m_modifiedOffsets.keySet().iterator();
-      while (iter.hasNext()) {
-        retVal[i] = iter.next().longValue();
-        i++;
+    return m_modifiedOffsets.getOffsets();
+  }
+
+  /**
+   * Returns the modified data as runs of consecutive offsets. This is much
+   * more compact than {@link #getModifiedOffsets()} after large modifications.
+   * @return An array with the first offset and the offset behind the last
+   *         offset of every run, i.e. {start0, end0, start1, end1, ...}.
+   */
+  public long[] getModifiedRuns()
+  {
+    final int count = m_modifiedOffsets.getRunCount();
+    final long[] retVal = new long[2 * count];
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      final long start = m_modifiedOffsets.getRunStart(i);
+      if (size > 0 && retVal[size - 1] == start) {
+        // Runs that only differ in the number of modifications are combined
+        retVal[size - 1] = m_modifiedOffsets.getRunEnd(i);
+      } else {
+        retVal[size++] = start;
+        retVal[size++] = m_modifiedOffsets.getRunEnd(i);
       }
     }
-    return retVal;
+    return size == retVal.length ? retVal : Arrays.copyOf(retVal, size);
   }
 
   /**
@@ -2788,6 +3610,14 @@ public final class JHexView extends JComponent
     }
   }
 
+  /**
+   * Returns the index that is used by searches, or null if searches read all data.
+   */
+  public NGramIndex getSearchIndex()
+  {
+    return m_searchIndex;
+  }
+
   /**
    * Returns the current selection background color.
    *
@@ -2817,11 +3647,11 @@ public final class JHexView extends JComponent
   {
     final int visibleBytes = getMaximumVisibleBytes();
 
-    if (m_dataProvider.getDataLength() - getFirstVisibleByte() >= visibleBytes) {
+    if (getDataLength() - getFirstVisibleByte() >= visibleBytes) {
       return visibleBytes;
     }
     else {
-      return m_dataProvider.getDataLength() - getFirstVisibleByte();
+      return (int) (getDataLength() - getFirstVisibleByte());
     }
   }
 
@@ -2851,7 +3681,7 @@ public final class JHexView extends JComponent
 
     final long realOffset = offset - m_baseAddress;
 
-    if (realOffset < 0 || realOffset >= m_dataProvider.getDataLength()) {
+    if (realOffset < 0 || realOffset >= getDataLength()) {
       throw new IllegalArgumentException("Error: Invalid offset");
     }
 
@@ -2886,6 +3716,22 @@ public final class JHexView extends JComponent
     return m_headerVisible;
   }
 
+  /**
+   * Returns whether hex and ASCII cells are drawn from pre-rendered glyph images.
+   */
+  public boolean isGlyphAtlasEnabled()
+  {
+    return m_glyphAtlasEnabled;
+  }
+
+  /**
+   * Returns whether typed data is inserted instead of overwriting existing data.
+   */
+  public boolean isInsertMode()
+  {
+    return m_insertMode;
+  }
+
   /**
    * Returns whether data has been modified by the user.
    * @return True if data has been modified by the user, false otherwise.
@@ -2902,7 +3748,7 @@ public final class JHexView extends JComponent
    */
   public boolean isModified(long offset)
   {
-    return m_modifiedOffsets.containsKey(Long.valueOf(offset));
+    return m_modifiedOffsets.getModificationCount(offset) > 0;
   }
 
   /** Returns whether vertical lines between the individual views are visible. */
@@ -2911,6 +3757,14 @@ public final class JHexView extends JComponent
     return m_separatorsVisible;
   }
 
+  /**
+   * Returns whether forward searches use all processor cores.
+   */
+  public boolean isParallelSearchEnabled()
+  {
+    return m_parallelSearchEnabled;
+  }
+
   /**
    * Returns whether to apply a separate color to modified data.
    */
@@ -2980,6 +3834,21 @@ public final class JHexView extends JComponent
     m_listeners.remove(IHexViewListener.class, listener);
   }
 
+  /**
+   * Removes a listener that was notified when the visible region of the data changed.
+   *
+   * @param listener
+   *          The listener to remove.
+   */
+  public void removeViewportListener(final IViewportListener listener)
+  {
+    if (listener == null) {
+      throw new NullPointerException("Error: Listener can't be null");
+    }
+
+    m_listeners.remove(IViewportListener.class, listener);
+  }
+
   public void removeUndoableEditListener(UndoableEditListener listener)
   {
     if (listener == null) {
@@ -3242,7 +4111,7 @@ public final class JHexView extends JComponent
       return;
     }
 
-    if (offset < getBaseAddress() || offset > getBaseAddress() + m_dataProvider.getDataLength()) {
+    if (offset < getBaseAddress() || offset > getBaseAddress() + getDataLength()) {
       throw new IllegalArgumentException("Error: Invalid offset");
     }
 
@@ -3267,6 +4136,9 @@ public final class JHexView extends JComponent
     }
 
     m_dataProvider = data;
+    m_lastViewportOffset = -1;
+    m_searchIndex = null;
+    stopWaitingForData();
 
     /**
      * Add a data listener to the new data source so that the component can be
@@ -3537,6 +4409,41 @@ public final class JHexView extends JComponent
     }
   }
 
+  /**
+   * Sets whether hex and ASCII cells are drawn from pre-rendered glyph images
+   * instead of rendering text for every cell. Glyph images are considerably
+   * faster, but use grayscale instead of subpixel antialiasing.
+   *
+   * @param set
+   *          True to draw cells from glyph images, false to render text.
+   */
+  public void setGlyphAtlasEnabled(boolean set)
+  {
+    if (m_glyphAtlasEnabled != set) {
+      m_glyphAtlasEnabled = set;
+      if (!set) {
+        m_glyphAtlases.clear();
+      }
+      repaint();
+    }
+  }
+
+  /**
+   * Sets whether typed data is inserted instead of overwriting existing data.
+   * Insert mode only has an effect if the data provider implements
+   * {@link IResizableDataProvider}.
+   *
+   * @param set
+   *          True to insert typed data, false to overwrite existing data.
+   */
+  public void setInsertMode(boolean set)
+  {
+    if (m_insertMode != set) {
+      m_insertMode = set;
+      repaint();
+    }
+  }
+
   /**
    * Sets the width of the hex view.
    *
@@ -3581,6 +4488,33 @@ public final class JHexView extends JComponent
     }
   }
 
+  /**
+   * Sets whether forward searches are spread over the threads of the common
+   * fork-join pool. The data provider must support concurrent reads.
+   *
+   * @param set
+   *          True to search in parallel, false to search in the calling thread.
+   */
+  public void setParallelSearchEnabled(boolean set)
+  {
+    m_parallelSearchEnabled = set;
+  }
+
+  /**
+   * Sets an index of the current data that is used to search only the parts
+   * of the data that can contain a match. The index is dropped as soon as the
+   * data changes or other data is set.
+   *
+   * @param index
+   *          The index of the current data, or null to search all data.
+   *
+   * @see NGramIndex#openInBackground(IDataProvider, java.io.File, java.util.concurrent.ExecutorService)
+   */
+  public void setSearchIndex(NGramIndex index)
+  {
+    m_searchIndex = index;
+  }
+
   /**
    * Sets the current selection background color.
    *
@@ -3787,6 +4721,63 @@ public final class JHexView extends JComponent
     }
   }
 
+  private class ActionDelete extends AbstractAction
+  {
+    private static final long serialVersionUID = 2913487164108274530L;
+
+    private final boolean isBackspace;
+
+    public ActionDelete(boolean isBackspace)
+    {
+      this.isBackspace = isBackspace;
+    }
+
+    @Override
+    public void actionPerformed(final ActionEvent event)
+    {
+      if (!JHexView.this.isEnabled() || m_status != DefinitionStatus.DEFINED
+          || !(m_dataProvider instanceof IResizableDataProvider) || !m_dataProvider.isEditable()) {
+        return;
+      }
+
+      // Remove the selected bytes or the byte next to the caret
+      long first, last;
+      if (getSelectionLength() != 0) {
+        final long start = Math.min(getSelectionStart(), getSelectionStart() + getSelectionLength());
+        final long end = Math.max(getSelectionStart(), getSelectionStart() + getSelectionLength());
+        first = start / 2;
+        last = (end + 1) / 2;
+      }
+      else {
+        first = getCurrentNibble() / 2;
+        if (isBackspace) {
+          first--;
+        }
+        last = first + 1;
+      }
+
+      first = Math.max(first, 0);
+      last = Math.min(last, getDataLength());
+      if (last <= first) {
+        return;
+      }
+
+      if (last - first > MAX_DELETE_LENGTH) {
+        UIManager.getLookAndFeel().provideErrorFeedback(JHexView.this);
+        return;
+      }
+
+      final long offset = m_baseAddress + first;
+      final byte[] data = removeData(offset, (int) (last - first));
+
+      fireUndoableEditListener(new RemoveEdit(offset, data, getActiveView()));
+
+      setSelectionLength(0);
+      setCurrentOffset(offset);
+      repaint();
+    }
+  }
+
   private class ActionEnd extends AbstractAction
   {
     private static final long serialVersionUID = 3857972387525998638L;
@@ -3803,11 +4794,11 @@ public final class JHexView extends JComponent
     {
       long change;
       if (isCtrl) {
-        change = getData().getDataLength()*2 - getCurrentNibble() - 2;
+        change = getDataLength()*2 - getCurrentNibble() - 2;
       } else {
         change = (m_bytesPerRow*2) - (getCurrentNibble() % (m_bytesPerRow*2)) - 2;
       }
-      changeBy(event, (int)change);
+      changeBy(event, change);
     }
   }
 
@@ -3831,7 +4822,18 @@ public final class JHexView extends JComponent
       } else {
         change = -(getCurrentNibble() % (m_bytesPerRow*2));
       }
-      changeBy(event, (int)change);
+      changeBy(event, change);
+    }
+  }
+
+  private class ActionInsert extends AbstractAction
+  {
+    private static final long serialVersionUID = -4830172694201596823L;
+
+    @Override
+    public void actionPerformed(final ActionEvent event)
+    {
+      setInsertMode(!isInsertMode());
     }
   }
 
@@ -3853,7 +4855,7 @@ public final class JHexView extends JComponent
       if (modifier == 0 && getSelectionLength() != 0) {
         long cur = getCurrentNibble();
         long start = Math.min(getSelectionStart(), getSelectionStart()+getSelectionLength()) & ~1L;
-        int p = (int)(cur - start);
+        long p = cur - start;
         changeBy(event, -p);
       } else {
         changeBy(event, m_activeView == Views.HEX_VIEW ? -1 : -2);
@@ -3901,7 +4903,7 @@ public final class JHexView extends JComponent
       if (modifier == 0 && getSelectionLength() != 0) {
         long cur = getCurrentNibble();
         long start = (Math.max(getSelectionStart(), getSelectionStart()+getSelectionLength())+1) & ~1L;
-        int p = (int)(start - cur);
+        long p = start - cur;
         changeBy(event, p);
       } else {
         changeBy(event, m_activeView == Views.HEX_VIEW ? 1 : 2);
@@ -3994,11 +4996,11 @@ public final class JHexView extends JComponent
   {
     private static final long serialVersionUID = -610823391617272365L;
 
-    private final long m_offset;
+    private long m_offset;
 
-    private final int m_size;
+    private int m_size;
 
-    private ActionWaitingForData(final long offset, final int size)
+    private void setRange(final long offset, final int size)
     {
       m_offset = offset;
       m_size = size;
@@ -4007,7 +5009,10 @@ public final class JHexView extends JComponent
     @Override
     public void actionPerformed(final ActionEvent event)
     {
-      if (m_dataProvider.hasData(m_offset, m_size)) {
+      if (m_dataProvider == null) {
+        ((Timer) event.getSource()).stop();
+      }
+      else if (m_dataProvider.hasData(m_offset, m_size)) {
 
         JHexView.this.setEnabled(true);
         setDefinitionStatus(DefinitionStatus.DEFINED);
@@ -4023,11 +5028,11 @@ public final class JHexView extends JComponent
   // Represents the undoable edit for a single byte or character.
   public class DataEdit extends AbstractEdit
   {
-    private final int offset;
+    private final long offset;
     private final byte oldValue, newValue;
     private final Views view;
 
-    public DataEdit(int offset, byte oldValue, byte newValue, Views view)
+    public DataEdit(long offset, byte oldValue, byte newValue, Views view)
     {
       super("Typing");
       this.offset = offset;
@@ -4065,6 +5070,98 @@ public final class JHexView extends JComponent
     }
   }
 
+  // Represents the undoable edit for bytes inserted into the data.
+  public class InsertEdit extends AbstractEdit
+  {
+    private static final long serialVersionUID = 5182394467703151832L;
+
+    private final long offset;
+    private final byte[] data;
+    private final Views view;
+
+    public InsertEdit(long offset, byte[] data, Views view)
+    {
+      super("Typing");
+      this.offset = offset;
+      this.data = data;
+      this.view = view;
+    }
+
+    @Override
+    public void undo() throws CannotUndoException
+    {
+      super.undo();
+      if (getDefinitionStatus() == DefinitionStatus.DEFINED
+          && m_dataProvider instanceof IResizableDataProvider) {
+        setActiveView(view);
+        removeData(offset, data.length);
+        setCurrentOffset(offset);
+      } else {
+        throw new CannotUndoException();
+      }
+    }
+
+    @Override
+    public void redo() throws CannotRedoException
+    {
+      super.redo();
+      if (getDefinitionStatus() == DefinitionStatus.DEFINED
+          && m_dataProvider instanceof IResizableDataProvider) {
+        setActiveView(view);
+        insertData(offset, data, true);
+        setCurrentOffset(offset + data.length);
+      } else {
+        throw new CannotRedoException();
+      }
+    }
+  }
+
+  // Represents the undoable edit for bytes removed from the data.
+  public class RemoveEdit extends AbstractEdit
+  {
+    private static final long serialVersionUID = -2879516302117764419L;
+
+    private final long offset;
+    private final byte[] data;
+    private final Views view;
+
+    public RemoveEdit(long offset, byte[] data, Views view)
+    {
+      super("Delete");
+      this.offset = offset;
+      this.data = data;
+      this.view = view;
+    }
+
+    @Override
+    public void undo() throws CannotUndoException
+    {
+      super.undo();
+      if (getDefinitionStatus() == DefinitionStatus.DEFINED
+          && m_dataProvider instanceof IResizableDataProvider) {
+        setActiveView(view);
+        insertData(offset, data, false);
+        setCurrentOffset(offset);
+      } else {
+        throw new CannotUndoException();
+      }
+    }
+
+    @Override
+    public void redo() throws CannotRedoException
+    {
+      super.redo();
+      if (getDefinitionStatus() == DefinitionStatus.DEFINED
+          && m_dataProvider instanceof IResizableDataProvider) {
+        setActiveView(view);
+        removeData(offset, data.length);
+        setCurrentOffset(offset);
+      } else {
+        throw new CannotRedoException();
+      }
+    }
+  }
+
   /**
    * Handles copy to and paste from clipboard actions.
    *
@@ -4095,7 +5192,7 @@ public final class JHexView extends JComponent
         try {
           data = (String)support.getTransferable().getTransferData(DataFlavor.stringFlavor);
           if (data != null && !support.isDrop()) {
-            if (hv.getCurrentOffset() < getData().getDataLength()) {
+            if (hv.getCurrentOffset() < getDataLength()) {
               if (hv.getActiveView() == Views.HEX_VIEW) {
                 // processing hex view
                 KeyEvent event = new KeyEvent(hv, 0, 0, 0, 0, '\0');
@@ -4136,9 +5233,9 @@ public final class JHexView extends JComponent
 
         // preparing data
         long ofs = hv.getSelectionStart() / 2L;
-        int len = (int)hv.getSelectionLength() / 2;
-        if (ofs+len > getData().getDataLength()) {
-          len = (int)(getData().getDataLength() - ofs);
+        int len = (int) Math.min(hv.getSelectionLength() / 2, Integer.MAX_VALUE);
+        if (ofs+len > getDataLength()) {
+          len = (int)(getDataLength() - ofs);
         }
 
         // creating data
@@ -4185,18 +5282,51 @@ public final class JHexView extends JComponent
   {
     private boolean mouseButtonPressed = false;
 
+    /**
+     * Updates the scroll bar and repaints the rows behind an offset after
+     * bytes have been inserted or removed.
+     */
+    private void dataLengthChanged(final long offset)
+    {
+      final long firstRow = m_firstRow;
+
+      setScrollBarMaximum();
+
+      if (firstRow != m_firstRow) {
+        repaint();
+      }
+      else {
+        repaintData(offset, -1);
+      }
+    }
+
     private void keyPressedInAsciiView(final KeyEvent event)
     {
-      int offset = (int)getCurrentOffset();
+      long offset = getCurrentOffset();
       byte oldValue, newValue;
 
+      if (isInsertAllowed()) {
+        if (getSelectionStart() > getDataLength() * 2) {
+          return;
+        }
+
+        final byte[] data = new byte[]{(byte) event.getKeyChar()};
+        insertData(offset, data, true);
+
+        // register as undoable action
+        fireUndoableEditListener(new InsertEdit(offset, data, getActiveView()));
+
+        changeBy(new ActionEvent(this, 0, "", 0), 2);
+        return;
+      }
+
       final byte[] data = m_dataProvider.getData(getCurrentOffset(), 1);
       if (data == null || data.length == 0) {
         return;
       }
       oldValue = data[0];
 
-      if (getSelectionStart() >= m_dataProvider.getDataLength() * 2) {
+      if (getSelectionStart() >= getDataLength() * 2) {
         return;
       }
 
@@ -4217,9 +5347,27 @@ public final class JHexView extends JComponent
 
     private void keyPressedInHexView(final KeyEvent event)
     {
-      int offset = (int)getCurrentOffset();
+      long offset = getCurrentOffset();
       byte oldValue, newValue;
 
+      // In insert mode the high nibble starts a new byte, the low nibble
+      // completes it like in overwrite mode
+      if (isInsertAllowed() && (m_baseAddress + getSelectionStart()) % 2 == 0) {
+        final int value = Character.digit(event.getKeyChar(), 16);
+        if (value == -1 || getSelectionStart() > getDataLength() * 2) {
+          return;
+        }
+
+        final byte[] data = new byte[]{(byte) (value << 4)};
+        insertData(offset, data, true);
+
+        // register as undoable action
+        fireUndoableEditListener(new InsertEdit(offset, data, getActiveView()));
+
+        changeBy(new ActionEvent(this, 0, "", 0), 1);
+        return;
+      }
+
       final byte[] data = m_dataProvider.getData(getCurrentOffset(), 1);
       if (data == null || data.length == 0) {
         return;
@@ -4228,7 +5376,7 @@ public final class JHexView extends JComponent
 
       final long pos = m_baseAddress + getSelectionStart();
 
-      if (getSelectionStart() >= m_dataProvider.getDataLength() * 2) {
+      if (getSelectionStart() >= getDataLength() * 2) {
         return;
       }
 
@@ -4273,7 +5421,27 @@ public final class JHexView extends JComponent
     public void adjustmentValueChanged(final AdjustmentEvent event)
     {
       if (event.getSource() == m_scrollbar) {
-        m_firstRow = event.getValue();
+        if (m_scrollbarAdjusting) {
+          return;
+        }
+
+        final int value = event.getValue();
+        final int delta = value - m_lastScrollValue;
+        m_lastScrollValue = value;
+
+        if (m_scrollVirtualizer.isScaled() && !m_scrollbar.getValueIsAdjusting() && delta != 0 &&
+            (Math.abs(delta) == m_scrollbar.getUnitIncrement() ||
+             Math.abs(delta) == m_scrollbar.getBlockIncrement())) {
+          // Arrow buttons and clicks into the track move by lines and pages
+          // even if a single scroll bar unit spans many rows.
+          final long rows = Math.abs(delta) == m_scrollbar.getUnitIncrement()
+              ? 1 : getNumberOfVisibleRows();
+          setFirstRow(m_firstRow + (delta < 0 ? -rows : rows));
+          return;
+        }
+
+        // Thumb drags jump directly to the target row.
+        m_firstRow = m_scrollVirtualizer.toRow(value);
       }
       else {
         m_firstColumn = event.getValue();
@@ -4312,9 +5480,33 @@ public final class JHexView extends JComponent
     @Override
     public void dataChanged(DataChangedEvent event)
     {
-      setScrollBarMaximum();
-
-      repaint();
+      // The index describes the old data
+      m_searchIndex = null;
+
+      switch (event.getKind()) {
+        case OVERWRITE:
+          // Only the rows that show the changed bytes need an update
+          repaintData(event.getOffset(), event.getLength());
+          break;
+        case INSERT:
+          shiftModified(event.getOffset(), event.getLength());
+          for (final ColoredRangeManager manager : m_coloredRanges) {
+            manager.insertBytes(event.getOffset(), event.getLength());
+          }
+          dataLengthChanged(event.getOffset());
+          break;
+        case DELETE:
+          shiftModified(event.getOffset(), -event.getLength());
+          for (final ColoredRangeManager manager : m_coloredRanges) {
+            manager.removeBytes(event.getOffset(), event.getLength());
+          }
+          dataLengthChanged(event.getOffset());
+          break;
+        default:
+          setScrollBarMaximum();
+          repaint();
+          break;
+      }
     }
 
     @Override
@@ -4391,14 +5583,14 @@ public final class JHexView extends JComponent
         else if (y >= m_rowHeight * getNumberOfVisibleRows()) {
           scrollToPosition(2 * getFirstVisibleByte() + 2 * m_bytesPerRow);
 
-          if (getSelectionLength() + 2 * m_bytesPerRow > 2 * (m_dataProvider.getDataLength() - getSelectionStart())) {
+          if (getSelectionLength() + 2 * m_bytesPerRow > 2 * (getDataLength() - getSelectionStart())) {
             return;
           }
 
           setSelectionLength(getSelectionLength() + 2 * m_bytesPerRow);
         }
         else {
-          final int position = getNibbleAtCoordinate(x, y);
+          final long position = getNibbleAtCoordinate(x, y);
 
           if (position != -1) {
             setSelectionLength(position - getSelectionStart());
@@ -4445,7 +5637,7 @@ public final class JHexView extends JComponent
         final int x = event.getX();
         final int y = event.getY();
 
-        int position = getNibbleAtCoordinate(x, y);
+        long position = getNibbleAtCoordinate(x, y);
 
         Views oldView = m_activeView;
         if (isInsideHexView(x, y)) {
@@ -4470,11 +5662,11 @@ public final class JHexView extends JComponent
             // starting from click-position, find word delimiter characters in both directions
             final String delimiter = ".,:;()?!-'/\"";
             char ch = ConvertHelpers.toChar(getData().getData(position, 1)[0]);
-            int posStart = position, posEnd = position;
+            long posStart = position, posEnd = position;
             if (!Character.isWhitespace(ch) && delimiter.indexOf(ch) < 0 &&
                 getFont().canDisplay(ch)) {
               // find starting delimiter
-              for (int i = 1; i < position; i++) {
+              for (long i = 1; i < position; i++) {
                 ch = ConvertHelpers.toChar(getData().getData(position-i, 1)[0]);
                 if (Character.isWhitespace(ch) || delimiter.indexOf(ch) >= 0 ||
                     !getFont().canDisplay(ch)) {
@@ -4484,8 +5676,8 @@ public final class JHexView extends JComponent
               }
 
               // find ending delimiter
-              final int maxLength = getData().getDataLength() - position;
-              for (int i = 1; i < maxLength; i++) {
+              final long maxLength = getDataLength() - position;
+              for (long i = 1; i < maxLength; i++) {
                 ch = ConvertHelpers.toChar(getData().getData(position+i, 1)[0]);
                 if (Character.isWhitespace(ch) || delimiter.indexOf(ch) >= 0 ||
                     !getFont().canDisplay(ch)) {
@@ -4539,7 +5731,7 @@ public final class JHexView extends JComponent
       }
 
       final int notches = e.getWheelRotation();
-      m_scrollbar.setValue(m_scrollbar.getValue() + 3*notches); // scrolling 3 lines per notch
+      setFirstRow(m_firstRow + 3*notches); // scrolling 3 lines per notch
     }
 
     @Override
@@ -0,0 +1,132 @@
+package tv.porst.jhexview;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Adapter that makes a plain {@link IDataProvider} usable wherever an
+ * {@link ILargeDataProvider} is expected. All calls are forwarded to the
+ * wrapped provider.
+ */
+public final class LargeDataProviderAdapter implements ILargeDataProvider
+{
+  private final IDataProvider m_provider;
+
+  public LargeDataProviderAdapter(final IDataProvider provider)
+  {
+    if (provider == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    m_provider = provider;
+  }
+
+  /**
+   * Returns the 64-bit data length of an arbitrary data provider.
+   * @param provider The data provider.
+   * @return The data length in number of bytes.
+   */
+  public static long getDataLength(final IDataProvider provider)
+  {
+    if (provider instanceof ILargeDataProvider) {
+      return ((ILargeDataProvider) provider).getLargeDataLength();
+    } else {
+      return provider.getDataLength();
+    }
+  }
+
+  /**
+   * Returns the specified provider as {@link ILargeDataProvider}, wrapping it
+   * into an adapter if necessary.
+   * @param provider The data provider.
+   * @return The data provider as {@link ILargeDataProvider}.
+   */
+  public static ILargeDataProvider wrap(final IDataProvider provider)
+  {
+    if (provider instanceof ILargeDataProvider) {
+      return (ILargeDataProvider) provider;
+    } else {
+      return new LargeDataProviderAdapter(provider);
+    }
+  }
+
+  @Override
+  public void addListener(final IDataChangedListener listener)
+  {
+    m_provider.addListener(listener);
+  }
+
+  @Override
+  public byte[] getData(final long offset, final int length)
+  {
+    return m_provider.getData(offset, length);
+  }
+
+  @Override
+  public int getDataLength()
+  {
+    return m_provider.getDataLength();
+  }
+
+  @Override
+  public long getLargeDataLength()
+  {
+    return m_provider.getDataLength();
+  }
+
+  /**
+   * Returns the wrapped data provider.
+   */
+  public IDataProvider getProvider()
+  {
+    return m_provider;
+  }
+
+  @Override
+  public boolean hasData(final long offset, final int length)
+  {
+    return m_provider.hasData(offset, length);
+  }
+
+  @Override
+  public boolean isEditable()
+  {
+    return m_provider.isEditable();
+  }
+
+  @Override
+  public boolean keepTrying()
+  {
+    return m_provider.keepTrying();
+  }
+
+  @Override
+  public int read(final long offset, final byte[] dst, final int dstOffset, final int length)
+  {
+    return m_provider.read(offset, dst, dstOffset, length);
+  }
+
+  @Override
+  public int read(final long offset, final ByteBuffer dst)
+  {
+    return m_provider.read(offset, dst);
+  }
+
+  @Override
+  public void removeListener(final IDataChangedListener listener)
+  {
+    m_provider.removeListener(listener);
+  }
+
+  @Override
+  public CompletableFuture<Void> requestData(final long offset, final int length)
+  {
+    return m_provider.requestData(offset, length);
+  }
+
+  @Override
+  public void setData(final long offset, final byte[] data)
+  {
+    m_provider.setData(offset, data);
+  }
+}
@@ -0,0 +1,322 @@
+package tv.porst.jhexview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data provider that provides data to the hex view component directly from a
+ * file on disk. The file is mapped into memory in fixed-size windows which are
+ * created on demand, so opening a file takes constant time and does not
+ * allocate heap memory proportional to the file size.
+ */
+public final class MappedFileDataProvider implements ILargeDataProvider, Closeable
+{
+  /**
+   * Default size of a single mapped window in bytes.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final List<IDataChangedListener> listeners = new ArrayList<IDataChangedListener>();
+
+  /**
+   * The file that is mapped by this provider.
+   */
+  private final File m_file;
+
+  /**
+   * Channel used to create the mapped windows.
+   */
+  private final FileChannel m_channel;
+
+  /**
+   * Size of the file at the time it was opened.
+   */
+  private final long m_length;
+
+  /**
+   * Size of a single mapped window in bytes.
+   */
+  private final int m_windowSize;
+
+  /**
+   * Lazily created windows. Index i covers the file range [i * windowSize, (i+1) * windowSize).
+   */
+  private final MappedByteBuffer[] m_windows;
+
+  /**
+   * Determines whether the file has been opened for writing.
+   */
+  private final boolean m_editable;
+
+  /**
+   * Opens the specified file in read-only mode.
+   *
+   * @param file
+   *          The file to map.
+   *
+   * @throws IOException
+   *           Thrown if the file could not be opened.
+   */
+  public MappedFileDataProvider(final File file) throws IOException
+  {
+    this(file, false);
+  }
+
+  /**
+   * Opens the specified file.
+   *
+   * @param file
+   *          The file to map.
+   * @param editable
+   *          If true, changes made through {@link #setData(long, byte[])} are
+   *          written back to the file.
+   *
+   * @throws IOException
+   *           Thrown if the file could not be opened.
+   */
+  public MappedFileDataProvider(final File file, final boolean editable) throws IOException
+  {
+    this(file, editable, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Opens the specified file.
+   *
+   * @param file
+   *          The file to map.
+   * @param editable
+   *          If true, changes made through {@link #setData(long, byte[])} are
+   *          written back to the file.
+   * @param windowSize
+   *          Size of a single mapped window in bytes.
+   *
+   * @throws IOException
+   *           Thrown if the file could not be opened.
+   */
+  public MappedFileDataProvider(final File file, final boolean editable, final int windowSize)
+      throws IOException
+  {
+    if (file == null) {
+      throw new NullPointerException("Error: File can't be null");
+    }
+
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("Error: Window size must be positive");
+    }
+
+    m_file = file;
+    m_editable = editable;
+    m_windowSize = windowSize;
+
+    final RandomAccessFile raf = new RandomAccessFile(file, editable ? "rw" : "r");
+    m_channel = raf.getChannel();
+    m_length = m_channel.size();
+
+    m_windows = new MappedByteBuffer[(int) ((m_length + windowSize - 1) / windowSize)];
+  }
+
+  @Override
+  public void addListener(final IDataChangedListener listener)
+  {
+    if (listener != null && !listeners.contains(listener)) {
+      listeners.add(listener);
+    }
+  }
+
+  /**
+   * Closes the underlying file channel. Mapped windows are released by the
+   * garbage collector.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    m_channel.close();
+  }
+
+  /**
+   * Forces any changes made to the mapped windows to be written to disk.
+   */
+  public synchronized void flush()
+  {
+    for (final MappedByteBuffer window : m_windows) {
+      if (window != null) {
+        window.force();
+      }
+    }
+  }
+
+  @Override
+  public byte[] getData(final long offset, int length)
+  {
+    if (offset < 0 || offset >= m_length || length <= 0) {
+      return new byte[0];
+    }
+
+    if (offset + length > m_length) {
+      length = (int) (m_length - offset);
+    }
+
+    final byte[] data = new byte[length];
+    transfer(offset, data, 0, length, false);
+    return data;
+  }
+
+  /**
+   * Returns the file that is mapped by this provider.
+   */
+  public File getFile()
+  {
+    return m_file;
+  }
+
+  @Override
+  public long getLargeDataLength()
+  {
+    return m_length;
+  }
+
+  /**
+   * Returns the size of a single mapped window in bytes.
+   */
+  public int getWindowSize()
+  {
+    return m_windowSize;
+  }
+
+  @Override
+  public boolean hasData(final long offset, final int length)
+  {
+    return true;
+  }
+
+  @Override
+  public boolean isEditable()
+  {
+    return m_editable;
+  }
+
+  @Override
+  public boolean keepTrying()
+  {
+    return false;
+  }
+
+  @Override
+  public int read(final long offset, final byte[] dst, final int dstOffset, int length)
+  {
+    if (offset < 0 || offset >= m_length || length <= 0) {
+      return 0;
+    }
+
+    if (offset + length > m_length) {
+      length = (int) (m_length - offset);
+    }
+
+    transfer(offset, dst, dstOffset, length, false);
+    return length;
+  }
+
+  @Override
+  public void removeListener(final IDataChangedListener listener)
+  {
+    if (listener != null) {
+      listeners.remove(listener);
+    }
+  }
+
+  @Override
+  public void setData(final long offset, final byte[] data)
+  {
+    if (!m_editable) {
+      throw new IllegalStateException("Error: Data provider is read-only");
+    }
+
+    if (offset < 0 || offset >= m_length) {
+      return;
+    }
+
+    final int length = (int) Math.min(data.length, m_length - offset);
+    if (length > 0) {
+      transfer(offset, data, 0, length, true);
+      fireDataChangedListener(DataChangedEvent.Kind.OVERWRITE, offset, length);
+    }
+  }
+
+  protected void fireDataChangedListener(final DataChangedEvent.Kind kind, final long offset,
+                                         final long length)
+  {
+    if (!listeners.isEmpty()) {
+      final DataChangedEvent event = new DataChangedEvent(this, kind, offset, length);
+      for (final IDataChangedListener l : listeners) {
+        l.dataChanged(event);
+      }
+    }
+  }
+
+  /**
+   * Returns the mapped window with the given index, mapping it if necessary.
+   */
+  private synchronized MappedByteBuffer getWindow(final int index)
+  {
+    MappedByteBuffer window = m_windows[index];
+    if (window == null) {
+      final long position = (long) index * m_windowSize;
+      final long size = Math.min(m_windowSize, m_length - position);
+      try {
+        window = m_channel.map(m_editable ? FileChannel.MapMode.READ_WRITE
+                                          : FileChannel.MapMode.READ_ONLY, position, size);
+      } catch (final IOException e) {
+        throw new IllegalStateException("Error: Unable to map file " + m_file, e);
+      }
+      m_windows[index] = window;
+    }
+    return window;
+  }
+
+  /**
+   * Copies data between the mapped windows and the given array. The range must
+   * be inside the file bounds.
+   *
+   * @param offset
+   *          Start offset in the file.
+   * @param buffer
+   *          The array to copy from or to.
+   * @param bufferOffset
+   *          Start index in the array.
+   * @param length
+   *          Number of bytes to copy.
+   * @param write
+   *          True to copy from the array into the file, false to copy from the
+   *          file into the array.
+   */
+  private void transfer(long offset, final byte[] buffer, int bufferOffset, int length,
+                        final boolean write)
+  {
+    while (length > 0) {
+      final int index = (int) (offset / m_windowSize);
+      final int position = (int) (offset % m_windowSize);
+
+      // Use a duplicate so that concurrent readers don't share a position.
+      final ByteBuffer window = getWindow(index).duplicate();
+      final int count = Math.min(length, window.limit() - position);
+
+      window.position(position);
+      if (write) {
+        window.put(buffer, bufferOffset, count);
+      } else {
+        window.get(buffer, bufferOffset, count);
+      }
+
+      offset += count;
+      bufferOffset += count;
+      length -= count;
+    }
+  }
+}
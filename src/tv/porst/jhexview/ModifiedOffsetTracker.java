@@ -0,0 +1,421 @@
+package tv.porst.jhexview;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the offsets that have been modified by the user and how often
+ * each of them has been modified.
+ *
+ * Consecutive offsets with the same number of modifications are stored as a
+ * single run in primitive arrays, so memory usage depends on the number of
+ * runs only, not on the number of modified bytes. Lookups for ascending
+ * offsets, as done while painting, start at the run of the previous lookup
+ * and take constant time on average.
+ */
+final class ModifiedOffsetTracker
+{
+  /**
+   * Start offsets of the runs in ascending order.
+   */
+  private long[] m_starts = new long[16];
+
+  /**
+   * Offsets behind the runs.
+   */
+  private long[] m_ends = new long[16];
+
+  /**
+   * Number of modifications of every offset of the runs. Always positive.
+   */
+  private int[] m_counts = new int[16];
+
+  /**
+   * Number of runs.
+   */
+  private int m_size = 0;
+
+  /**
+   * Index of the run found by the previous lookup.
+   */
+  private int m_hint = 0;
+
+  /**
+   * Removes all modifications.
+   */
+  public void clear()
+  {
+    m_starts = new long[16];
+    m_ends = new long[16];
+    m_counts = new int[16];
+    m_size = 0;
+    m_hint = 0;
+  }
+
+  /**
+   * Decrements the number of modifications of an offset.
+   *
+   * @param offset
+   *          The modified offset.
+   * @param remove
+   *          True, to remove all modifications of the offset.
+   *
+   * @return True, if the offset had been modified. False, otherwise.
+   */
+  public boolean decrement(final long offset, final boolean remove)
+  {
+    final int count = getModificationCount(offset);
+    if (count == 0) {
+      return false;
+    }
+
+    update(offset, offset + 1, remove ? -count : -1);
+    return true;
+  }
+
+  /**
+   * Returns the number of modifications of an offset.
+   *
+   * @param offset
+   *          The offset.
+   */
+  public int getModificationCount(final long offset)
+  {
+    final int index = findRun(offset);
+    return index < m_size && m_starts[index] <= offset ? m_counts[index] : 0;
+  }
+
+  /**
+   * Returns all modified offsets in ascending order.
+   */
+  public long[] getOffsets()
+  {
+    final long total = getModifiedBytes();
+    if (total > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Error: Too many modified offsets");
+    }
+
+    final long[] offsets = new long[(int) total];
+    int i = 0;
+    for (int run = 0; run < m_size; run++) {
+      for (long offset = m_starts[run]; offset < m_ends[run]; offset++) {
+        offsets[i++] = offset;
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * Returns the number of modified offsets.
+   */
+  public long getModifiedBytes()
+  {
+    long total = 0;
+    for (int run = 0; run < m_size; run++) {
+      total += m_ends[run] - m_starts[run];
+    }
+    return total;
+  }
+
+  /**
+   * Returns the number of runs of modified offsets.
+   */
+  public int getRunCount()
+  {
+    return m_size;
+  }
+
+  /**
+   * Returns the offset behind a run of modified offsets.
+   *
+   * @param index
+   *          The index of the run.
+   */
+  public long getRunEnd(final int index)
+  {
+    return m_ends[index];
+  }
+
+  /**
+   * Returns the first offset of a run of modified offsets.
+   *
+   * @param index
+   *          The index of the run.
+   */
+  public long getRunStart(final int index)
+  {
+    return m_starts[index];
+  }
+
+  /**
+   * Increments the number of modifications of an offset.
+   *
+   * @param offset
+   *          The modified offset.
+   *
+   * @return The number of modifications before the call.
+   */
+  public int increment(final long offset)
+  {
+    final int count = getModificationCount(offset);
+    update(offset, offset + 1, 1);
+    return count;
+  }
+
+  /**
+   * Increments the number of modifications of a range of offsets.
+   *
+   * @param start
+   *          The first modified offset.
+   * @param end
+   *          The offset behind the modified offsets.
+   */
+  public void increment(final long start, final long end)
+  {
+    if (start < end) {
+      update(start, end, 1);
+    }
+  }
+
+  /**
+   * Returns whether no offset has been modified.
+   */
+  public boolean isEmpty()
+  {
+    return m_size == 0;
+  }
+
+  /**
+   * Moves the modifications at or behind an offset after bytes have been
+   * inserted or removed. Modifications of removed bytes are dropped.
+   *
+   * @param offset
+   *          The offset of the inserted or removed bytes.
+   * @param delta
+   *          The number of inserted bytes, or the negated number of removed
+   *          bytes.
+   */
+  public void shift(final long offset, final long delta)
+  {
+    if (delta == 0) {
+      return;
+    }
+
+    if (delta < 0) {
+      update(offset, offset - delta, Integer.MIN_VALUE);
+    }
+    else {
+      // Split the run that spans the offset
+      final int index = findRun(offset);
+      if (index < m_size && m_starts[index] < offset) {
+        insertRun(index + 1, offset, m_ends[index], m_counts[index]);
+        m_ends[index] = offset;
+      }
+    }
+
+    final int first = findRun(delta < 0 ? offset - delta : offset);
+    for (int i = first; i < m_size; i++) {
+      m_starts[i] += delta;
+      m_ends[i] += delta;
+    }
+
+    // Runs on both sides of removed bytes may touch now
+    if (first > 0 && first < m_size) {
+      mergeRuns(first - 1, first + 1);
+    }
+  }
+
+  /**
+   * Returns the index of the first run that ends behind the specified offset,
+   * or the number of runs if there is no such run.
+   */
+  private int findRun(final long offset)
+  {
+    // Check the run of the previous lookup and its successor first
+    int hint = m_hint;
+    if (hint < m_size && (hint == 0 || m_ends[hint - 1] <= offset)) {
+      if (m_ends[hint] > offset) {
+        return hint;
+      }
+      hint++;
+      if (hint == m_size || m_ends[hint] > offset) {
+        m_hint = Math.min(hint, m_size - 1);
+        return hint;
+      }
+    }
+
+    int low = 0;
+    int high = m_size;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (m_ends[mid] <= offset) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+
+    m_hint = Math.max(Math.min(low, m_size - 1), 0);
+    return low;
+  }
+
+  /**
+   * Inserts a new run at the specified index.
+   */
+  private void insertRun(final int index, final long start, final long end, final int count)
+  {
+    if (m_size == m_starts.length) {
+      m_starts = Arrays.copyOf(m_starts, m_size * 2);
+      m_ends = Arrays.copyOf(m_ends, m_size * 2);
+      m_counts = Arrays.copyOf(m_counts, m_size * 2);
+    }
+
+    System.arraycopy(m_starts, index, m_starts, index + 1, m_size - index);
+    System.arraycopy(m_ends, index, m_ends, index + 1, m_size - index);
+    System.arraycopy(m_counts, index, m_counts, index + 1, m_size - index);
+    m_starts[index] = start;
+    m_ends[index] = end;
+    m_counts[index] = count;
+    m_size++;
+  }
+
+  /**
+   * Merges touching runs with the same number of modifications within the
+   * runs [first, last).
+   */
+  private void mergeRuns(final int first, final int last)
+  {
+    int count = first;
+    for (int i = first; i < last; i++) {
+      if (count > first && m_ends[count - 1] == m_starts[i] && m_counts[count - 1] == m_counts[i]) {
+        m_ends[count - 1] = m_ends[i];
+      }
+      else {
+        m_starts[count] = m_starts[i];
+        m_ends[count] = m_ends[i];
+        m_counts[count] = m_counts[i];
+        count++;
+      }
+    }
+
+    removeRuns(count, last);
+  }
+
+  /**
+   * Removes the runs [first, last).
+   */
+  private void removeRuns(final int first, final int last)
+  {
+    if (first < last) {
+      System.arraycopy(m_starts, last, m_starts, first, m_size - last);
+      System.arraycopy(m_ends, last, m_ends, first, m_size - last);
+      System.arraycopy(m_counts, last, m_counts, first, m_size - last);
+      m_size -= last - first;
+      m_hint = 0;
+    }
+  }
+
+  /**
+   * Adds a number to the modification counts of the offsets [start, end).
+   * Offsets whose count drops to zero or below are not modified anymore.
+   */
+  private void update(final long start, final long end, final int delta)
+  {
+    // Runs [first, last) overlap or touch the updated offsets
+    int first = findRun(start);
+    if (first > 0 && m_ends[first - 1] == start) {
+      first--;
+    }
+    int last = first;
+    while (last < m_size && m_starts[last] <= end) {
+      last++;
+    }
+
+    // Build the new runs of the affected area
+    final long[] starts = new long[2 * (last - first) + 3];
+    final long[] ends = new long[starts.length];
+    final int[] counts = new int[starts.length];
+    int size = 0;
+
+    long position = start;
+    for (int i = first; i < last; i++) {
+      // The untouched part in front of the updated offsets
+      if (m_starts[i] < start) {
+        starts[size] = m_starts[i];
+        ends[size] = Math.min(m_ends[i], start);
+        counts[size++] = m_counts[i];
+      }
+
+      // A gap between the runs within the updated offsets
+      if (m_starts[i] > position && position < end) {
+        final long gapEnd = Math.min(m_starts[i], end);
+        size = addRun(starts, ends, counts, size, position, gapEnd, delta);
+        position = gapEnd;
+      }
+
+      // The updated part of the run
+      final long from = Math.max(m_starts[i], start);
+      final long to = Math.min(m_ends[i], end);
+      if (from < to) {
+        size = addRun(starts, ends, counts, size, from, to, m_counts[i] + delta);
+        position = to;
+      }
+
+      // The untouched part behind the updated offsets
+      if (m_ends[i] > end) {
+        size = addRun(starts, ends, counts, size, Math.max(m_starts[i], end), m_ends[i], m_counts[i]);
+      }
+    }
+
+    if (position < end) {
+      size = addRun(starts, ends, counts, size, position, end, delta);
+    }
+
+    // Replace the affected runs by the new runs
+    final int difference = size - (last - first);
+    if (difference > 0) {
+      if (m_size + difference > m_starts.length) {
+        final int capacity = Math.max(m_size + difference, m_size * 2);
+        m_starts = Arrays.copyOf(m_starts, capacity);
+        m_ends = Arrays.copyOf(m_ends, capacity);
+        m_counts = Arrays.copyOf(m_counts, capacity);
+      }
+
+      System.arraycopy(m_starts, last, m_starts, last + difference, m_size - last);
+      System.arraycopy(m_ends, last, m_ends, last + difference, m_size - last);
+      System.arraycopy(m_counts, last, m_counts, last + difference, m_size - last);
+      m_size += difference;
+    }
+    else {
+      removeRuns(last + difference, last);
+    }
+
+    System.arraycopy(starts, 0, m_starts, first, size);
+    System.arraycopy(ends, 0, m_ends, first, size);
+    System.arraycopy(counts, 0, m_counts, first, size);
+  }
+
+  /**
+   * Appends a run to the specified arrays. Runs without modifications are
+   * skipped and runs that continue the previous run are merged with it.
+   *
+   * @return The new number of runs in the arrays.
+   */
+  private static int addRun(final long[] starts, final long[] ends, final int[] counts, final int size,
+                            final long start, final long end, final int count)
+  {
+    if (count <= 0 || start >= end) {
+      return size;
+    }
+
+    if (size > 0 && ends[size - 1] == start && counts[size - 1] == count) {
+      ends[size - 1] = end;
+      return size;
+    }
+
+    starts[size] = start;
+    ends[size] = end;
+    counts[size] = count;
+    return size + 1;
+  }
+}
@@ -0,0 +1,454 @@
+package tv.porst.jhexview;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Searches many byte patterns at once in a single pass over the data.
+ *
+ * The patterns are compiled into an Aho-Corasick automaton. Failure links are
+ * resolved while building, so the automaton is a deterministic state machine
+ * with a dense transition table of 256 entries per state, and the search
+ * costs a single table lookup per byte no matter how many patterns there
+ * are. The table takes one kilobyte per state, and there are at most as many
+ * states as the patterns have bytes in total.
+ *
+ * An optional folding table is baked into the transitions, so searches that
+ * ignore case don't cost anything extra either.
+ *
+ * Large windows can be split into chunks that are searched by the threads of
+ * a {@link ForkJoinPool}.
+ *
+ * A searcher can be used by several threads at the same time.
+ */
+public final class MultiPatternSearcher
+{
+  /**
+   * Minimum number of bytes per chunk of a parallel search.
+   */
+  private static final int MIN_CHUNK_SIZE = 4 * ByteSearcher.DEFAULT_BLOCK_SIZE;
+
+  /**
+   * Number of chunks per thread of a parallel search.
+   */
+  private static final int CHUNKS_PER_THREAD = 8;
+
+  /**
+   * Receives the hits of a search.
+   */
+  public interface IHitHandler
+  {
+    /**
+     * Called after every searched block that contains hits.
+     *
+     * @param patterns
+     *          Indexes of the found patterns.
+     * @param offsets
+     *          Start offsets of the found patterns. Hits are sorted by their
+     *          end offsets. The arrays are reused for the next block.
+     * @param count
+     *          Number of hits in the arrays.
+     *
+     * @return True, to continue the search. False, to stop it.
+     */
+    boolean hitsFound(int[] patterns, long[] offsets, int count);
+  }
+
+  /**
+   * Lengths of the patterns.
+   */
+  private final int[] m_lengths;
+
+  private final int m_maxLength;
+
+  /**
+   * Transition table. The entry for state s and byte b is at index 256 * s +
+   * b and holds the next state, multiplied by 256. The sign bit is set if
+   * patterns end in the next state.
+   */
+  private final int[] m_transitions;
+
+  /**
+   * Indexes of the patterns that end in every state, null if none.
+   */
+  private final int[][] m_outputs;
+
+  /**
+   * Creates a searcher that compares the bytes exactly or ignores the case of
+   * printable characters.
+   *
+   * @param patterns
+   *          The patterns to search.
+   * @param caseSensitive
+   *          False, to ignore the case of printable characters.
+   */
+  public MultiPatternSearcher(final byte[][] patterns, final boolean caseSensitive)
+  {
+    this(patterns, caseSensitive ? null : ByteSearcher.getLowerCaseTable());
+  }
+
+  /**
+   * Creates a new searcher.
+   *
+   * @param patterns
+   *          The patterns to search.
+   * @param foldTable
+   *          Table with 256 entries that maps every byte to the byte it is
+   *          compared as, or null to compare the bytes exactly. Mapping a
+   *          byte that is already the result of a mapping again must not
+   *          change it.
+   *
+   * @throws NullPointerException
+   *           Thrown if the patterns or one of them is null.
+   * @throws IllegalArgumentException
+   *           Thrown if there are no patterns, a pattern is empty or the
+   *           folding table is invalid.
+   */
+  public MultiPatternSearcher(final byte[][] patterns, final byte[] foldTable)
+  {
+    if (patterns == null) {
+      throw new NullPointerException("Error: Patterns can't be null");
+    }
+
+    if (patterns.length == 0) {
+      throw new IllegalArgumentException("Error: No patterns");
+    }
+
+    if (foldTable != null && foldTable.length != 256) {
+      throw new IllegalArgumentException("Error: Folding table must have 256 entries");
+    }
+
+    long totalLength = 0;
+    int maxLength = 0;
+    m_lengths = new int[patterns.length];
+    for (int i = 0; i < patterns.length; i++) {
+      if (patterns[i] == null) {
+        throw new NullPointerException("Error: Pattern can't be null");
+      }
+
+      if (patterns[i].length == 0) {
+        throw new IllegalArgumentException("Error: Patterns can't be empty");
+      }
+
+      m_lengths[i] = patterns[i].length;
+      maxLength = Math.max(maxLength, patterns[i].length);
+      totalLength += patterns[i].length;
+    }
+
+    if (totalLength >= (Integer.MAX_VALUE >> 8) - 1) {
+      throw new IllegalArgumentException("Error: Patterns are too long");
+    }
+
+    m_maxLength = maxLength;
+
+    // Build the trie of the folded patterns, -1 marks missing edges
+    int[] transitions = new int[256 * (int) Math.min(totalLength + 1, 4096)];
+    Arrays.fill(transitions, -1);
+    int states = 1;
+    int[][] outputs = new int[transitions.length / 256][];
+    for (int i = 0; i < patterns.length; i++) {
+      int state = 0;
+      for (final byte value : patterns[i]) {
+        final int b = fold(foldTable, value);
+        if (transitions[256 * state + b] < 0) {
+          if (states == transitions.length / 256) {
+            final int length = (int) Math.min(2L * transitions.length, 256 * (totalLength + 1));
+            transitions = Arrays.copyOf(transitions, length);
+            Arrays.fill(transitions, 256 * states, length, -1);
+            outputs = Arrays.copyOf(outputs, length / 256);
+          }
+          transitions[256 * state + b] = states++;
+        }
+        state = transitions[256 * state + b];
+      }
+      outputs[state] = append(outputs[state], i);
+    }
+
+    // Resolve the failure links in breadth-first order, so that the
+    // transitions of every failure state are complete when they are needed
+    final int[] failures = new int[states];
+    final int[] queue = new int[states];
+    int head = 0;
+    int tail = 0;
+    for (int b = 0; b < 256; b++) {
+      final int child = transitions[b];
+      if (child < 0) {
+        transitions[b] = 0;
+      }
+      else {
+        failures[child] = 0;
+        queue[tail++] = child;
+      }
+    }
+
+    while (head < tail) {
+      final int state = queue[head++];
+      final int failure = failures[state];
+      if (outputs[failure] != null) {
+        outputs[state] = merge(outputs[state], outputs[failure]);
+      }
+
+      for (int b = 0; b < 256; b++) {
+        final int child = transitions[256 * state + b];
+        if (child < 0) {
+          transitions[256 * state + b] = transitions[256 * failure + b];
+        }
+        else {
+          failures[child] = transitions[256 * failure + b];
+          queue[tail++] = child;
+        }
+      }
+    }
+
+    // Bake the folding table into the transitions, premultiply the states
+    // and flag the states with outputs
+    m_transitions = new int[256 * states];
+    for (int state = 0; state < states; state++) {
+      for (int b = 0; b < 256; b++) {
+        final int next = transitions[256 * state + fold(foldTable, (byte) b)];
+        m_transitions[256 * state + b] = 256 * next | (outputs[next] != null ? Integer.MIN_VALUE : 0);
+      }
+    }
+    m_outputs = Arrays.copyOf(outputs, states);
+  }
+
+  /**
+   * Reports all hits of all patterns that lie completely within the specified
+   * window, including overlapping hits. The handler is called on the calling
+   * thread after every block.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window. It is limited to the length of the
+   *          data.
+   * @param handler
+   *          The handler that receives the hits.
+   *
+   * @return True, if the whole window has been searched. False, if the handler
+   *         has stopped the search.
+   */
+  public boolean findAll(final IDataProvider data, final long from, final long to,
+                         final IHitHandler handler)
+  {
+    if (handler == null) {
+      throw new NullPointerException("Error: Handler can't be null");
+    }
+
+    return new Scan(handler).run(data, Math.max(from, 0), Long.MAX_VALUE,
+                                 Math.min(to, LargeDataProviderAdapter.getDataLength(data)), null);
+  }
+
+  /**
+   * Reports all hits of all patterns that lie completely within the specified
+   * window, including overlapping hits. The window is split into chunks that
+   * are searched by the threads of the specified pool.
+   *
+   * The handler is called concurrently by the threads of the pool, for the
+   * chunks in any order. Within a chunk, it is called in ascending order. The
+   * data provider must support concurrent reads.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window. It is limited to the length of the
+   *          data.
+   * @param pool
+   *          The pool whose threads perform the search.
+   * @param handler
+   *          The thread-safe handler that receives the hits.
+   *
+   * @return True, if the whole window has been searched. False, if the handler
+   *         has stopped the search.
+   */
+  public boolean findAll(final IDataProvider data, long from, long to, final ForkJoinPool pool,
+                         final IHitHandler handler)
+  {
+    if (pool == null) {
+      throw new NullPointerException("Error: Pool can't be null");
+    }
+
+    if (handler == null) {
+      throw new NullPointerException("Error: Handler can't be null");
+    }
+
+    from = Math.max(from, 0);
+    to = Math.min(to, LargeDataProviderAdapter.getDataLength(data));
+    final int threads = pool.getParallelism();
+    if (threads <= 1 || to - from <= MIN_CHUNK_SIZE) {
+      return findAll(data, from, to, handler);
+    }
+
+    // Every chunk reports the hits that start within it, and is scanned
+    // further by the length of the longest pattern minus one byte to complete
+    // them
+    final long chunkSize = Math.max(MIN_CHUNK_SIZE, (to - from) / ((long) threads * CHUNKS_PER_THREAD));
+    final long start = from;
+    final long end = to;
+    return ParallelChunks.process(pool, threads, (int) ((end - start + chunkSize - 1) / chunkSize),
+                                  new ParallelChunks.IChunkHandler<Scan>() {
+      @Override
+      public Scan createState()
+      {
+        return new Scan(handler);
+      }
+
+      @Override
+      public boolean processChunk(final int index, final Scan scan, final AtomicBoolean stopped)
+      {
+        final long chunkStart = start + index * chunkSize;
+        final long chunkEnd = Math.min(chunkStart + chunkSize, end);
+        return scan.run(data, chunkStart, chunkEnd, Math.min(chunkEnd + m_maxLength - 1, end), stopped);
+      }
+    });
+  }
+
+  /**
+   * Returns the length of the longest pattern.
+   */
+  public int getMaximumPatternLength()
+  {
+    return m_maxLength;
+  }
+
+  /**
+   * Returns the length of a pattern.
+   *
+   * @param pattern
+   *          The index of the pattern.
+   */
+  public int getPatternLength(final int pattern)
+  {
+    return m_lengths[pattern];
+  }
+
+  /**
+   * Returns the number of patterns.
+   */
+  public int getPatternCount()
+  {
+    return m_lengths.length;
+  }
+
+  private static int[] append(final int[] values, final int value)
+  {
+    if (values == null) {
+      return new int[] { value };
+    }
+
+    final int[] result = Arrays.copyOf(values, values.length + 1);
+    result[values.length] = value;
+    return result;
+  }
+
+  private static int fold(final byte[] foldTable, final byte value)
+  {
+    return foldTable == null ? value & 255 : foldTable[value & 255] & 255;
+  }
+
+  private static int[] merge(final int[] values, final int[] others)
+  {
+    if (values == null) {
+      return others;
+    }
+
+    final int[] result = Arrays.copyOf(values, values.length + others.length);
+    System.arraycopy(others, 0, result, values.length, others.length);
+    return result;
+  }
+
+  /**
+   * A single sequential scan with its own buffers.
+   */
+  private final class Scan
+  {
+    private final IHitHandler m_handler;
+
+    private final byte[] m_buffer = new byte[ByteSearcher.DEFAULT_BLOCK_SIZE];
+
+    private int[] m_patterns = new int[64];
+
+    private long[] m_offsets = new long[64];
+
+    private Scan(final IHitHandler handler)
+    {
+      m_handler = handler;
+    }
+
+    /**
+     * Scans the data from the specified offset on and reports the hits that
+     * start before the limit and end before the end offset.
+     *
+     * @return False, if the handler or another thread has stopped the search.
+     */
+    private boolean run(final IDataProvider data, final long from, final long limit, final long to,
+                        final AtomicBoolean stopped)
+    {
+      final int[] transitions = m_transitions;
+      final int[][] outputs = m_outputs;
+      final byte[] buffer = m_buffer;
+
+      int state = 0;
+      long blockStart = from;
+      while (blockStart < to) {
+        if (stopped != null && stopped.get()) {
+          return false;
+        }
+
+        final int count = Math.max(0, data.read(blockStart, buffer, 0,
+                                                (int) Math.min(buffer.length, to - blockStart)));
+        if (count == 0) {
+          break;
+        }
+
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+          state = transitions[state + (buffer[i] & 255)];
+          if (state < 0) {
+            state &= Integer.MAX_VALUE;
+            found = addHits(outputs[state >> 8], found, blockStart + i + 1, from, limit);
+          }
+        }
+
+        if (found > 0 && !m_handler.hitsFound(m_patterns, m_offsets, found)) {
+          if (stopped != null) {
+            stopped.set(true);
+          }
+          return false;
+        }
+
+        blockStart += count;
+      }
+
+      return true;
+    }
+
+    /**
+     * Adds the hits of the patterns that end in front of the specified offset
+     * and start within [from, limit).
+     *
+     * @return The new number of hits.
+     */
+    private int addHits(final int[] patterns, int found, final long end, final long from,
+                        final long limit)
+    {
+      for (final int pattern : patterns) {
+        final long offset = end - m_lengths[pattern];
+        if (offset >= from && offset < limit) {
+          if (found == m_patterns.length) {
+            m_patterns = Arrays.copyOf(m_patterns, 2 * found);
+            m_offsets = Arrays.copyOf(m_offsets, 2 * found);
+          }
+          m_patterns[found] = pattern;
+          m_offsets[found++] = offset;
+        }
+      }
+      return found;
+    }
+  }
+}
@@ -0,0 +1,712 @@
+package tv.porst.jhexview;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Index of the 3-byte sequences (trigrams) of static data that speeds up
+ * repeated searches.
+ *
+ * The data is split into blocks. For every trigram, the index keeps a posting
+ * list of the blocks that contain it. Trigrams are hashed into a fixed number
+ * of buckets, and the posting lists are stored as delta-encoded variable
+ * length integers in a single byte array. A search intersects the posting
+ * lists of the trigrams of the pattern and reads and verifies only the
+ * candidate blocks, which takes milliseconds for selective patterns, even if
+ * the data has gigabytes.
+ *
+ * The trigrams are indexed with the case of printable characters folded, so
+ * the index serves case-sensitive and case-insensitive searches.
+ *
+ * An index describes the data at the time it was built. It must not be used
+ * anymore once the data changes. An index can be saved next to a file and is
+ * only loaded again if the size, the modification time and a hash of samples
+ * of the file still match.
+ */
+public final class NGramIndex
+{
+  /**
+   * Length of the indexed byte sequences.
+   */
+  public static final int GRAM_LENGTH = 3;
+
+  /**
+   * Default size of the indexed blocks.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+  /**
+   * Extension of the index files that are saved next to the data files.
+   */
+  public static final String FILE_EXTENSION = ".jhxidx";
+
+  private static final int MAGIC = 0x4A48584E;
+
+  private static final int VERSION = 1;
+
+  /**
+   * Number of bits of the bucket numbers.
+   */
+  private static final int BUCKET_BITS = 20;
+
+  /**
+   * Number and size of the samples of the hash that identifies the data.
+   */
+  private static final int SAMPLE_COUNT = 64;
+  private static final int SAMPLE_SIZE = 4096;
+
+  private final long m_dataLength;
+
+  private final int m_blockSize;
+
+  /**
+   * Hash of samples of the indexed data.
+   */
+  private final long m_sampleHash;
+
+  /**
+   * Start of the posting list of every bucket in the pool, followed by the
+   * size of the pool.
+   */
+  private final int[] m_starts;
+
+  /**
+   * The posting lists. Every list holds the differences between the ascending
+   * numbers of the blocks that contain a trigram of the bucket, as variable
+   * length integers. The first block number is stored plus one.
+   */
+  private final byte[] m_pool;
+
+  private NGramIndex(final long dataLength, final int blockSize, final long sampleHash,
+                     final int[] starts, final byte[] pool)
+  {
+    m_dataLength = dataLength;
+    m_blockSize = blockSize;
+    m_sampleHash = sampleHash;
+    m_starts = starts;
+    m_pool = pool;
+  }
+
+  /**
+   * Builds an index with the default block size.
+   *
+   * @param data
+   *          The data to index.
+   *
+   * @return The new index.
+   */
+  public static NGramIndex build(final IDataProvider data)
+  {
+    return build(data, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Builds an index. The build can be cancelled by interrupting the calling
+   * thread.
+   *
+   * @param data
+   *          The data to index.
+   * @param blockSize
+   *          Size of the indexed blocks. Smaller blocks give fewer candidates,
+   *          but a larger index.
+   *
+   * @return The new index.
+   *
+   * @throws IllegalArgumentException
+   *           Thrown if the block size is too small.
+   * @throws IllegalStateException
+   *           Thrown if the index would get too large, which happens if the
+   *           data is close to random.
+   * @throws CancellationException
+   *           Thrown if the thread has been interrupted.
+   */
+  public static NGramIndex build(final IDataProvider data, final int blockSize)
+  {
+    if (data == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    if (blockSize < 256) {
+      throw new IllegalArgumentException("Error: Block size must be at least 256 bytes");
+    }
+
+    final long dataLength = LargeDataProviderAdapter.getDataLength(data);
+    if ((dataLength + blockSize - 1) / blockSize >= Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Error: Block size is too small for the data");
+    }
+
+    // The index must not get larger than an eighth of the data
+    final long maxSize = Math.min(Math.max(dataLength / 8, 1 << 20), Integer.MAX_VALUE - 8);
+    final byte[] fold = ByteSearcher.getLowerCaseTable();
+
+    final int buckets = 1 << BUCKET_BITS;
+    final byte[][] lists = new byte[buckets][];
+    final int[] sizes = new int[buckets];
+    final int[] lastBlocks = new int[buckets];
+    Arrays.fill(lastBlocks, -1);
+    long total = 0;
+
+    final byte[] buffer = new byte[blockSize + GRAM_LENGTH - 1];
+    final int blockCount = (int) ((dataLength + blockSize - 1) / blockSize);
+    for (int block = 0; block < blockCount; block++) {
+      if (Thread.currentThread().isInterrupted()) {
+        throw new CancellationException("Error: Building the index has been cancelled");
+      }
+
+      final long blockStart = (long) block * blockSize;
+      final int count = Math.max(0, data.read(blockStart, buffer, 0,
+                                              (int) Math.min(buffer.length, dataLength - blockStart)));
+      for (int i = 0; i < count; i++) {
+        buffer[i] = fold[buffer[i] & 255];
+      }
+
+      for (int i = 0; i + GRAM_LENGTH <= count && i < blockSize; i++) {
+        final int bucket = bucket(buffer, i);
+        if (lastBlocks[bucket] == block) {
+          continue;
+        }
+
+        // Append the distance to the previous block of the bucket
+        byte[] list = lists[bucket];
+        if (list == null) {
+          list = lists[bucket] = new byte[8];
+        }
+        else if (sizes[bucket] + 5 > list.length) {
+          list = lists[bucket] = Arrays.copyOf(list, list.length * 2);
+        }
+        final int size = sizes[bucket];
+        sizes[bucket] = writeVarInt(list, size, block - lastBlocks[bucket]);
+        total += sizes[bucket] - size;
+        lastBlocks[bucket] = block;
+      }
+
+      if (total > maxSize) {
+        throw new IllegalStateException("Error: The data is too random to be indexed");
+      }
+    }
+
+    final int[] starts = new int[buckets + 1];
+    final byte[] pool = new byte[(int) total];
+    int position = 0;
+    for (int bucket = 0; bucket < buckets; bucket++) {
+      starts[bucket] = position;
+      if (lists[bucket] != null) {
+        System.arraycopy(lists[bucket], 0, pool, position, sizes[bucket]);
+        position += sizes[bucket];
+      }
+    }
+    starts[buckets] = position;
+
+    return new NGramIndex(dataLength, blockSize, getSampleHash(data, dataLength), starts, pool);
+  }
+
+  /**
+   * Returns the file that an index of the specified file is saved to.
+   *
+   * @param dataFile
+   *          The indexed file.
+   */
+  public static File getIndexFile(final File dataFile)
+  {
+    return new File(dataFile.getPath() + FILE_EXTENSION);
+  }
+
+  /**
+   * Loads an index.
+   *
+   * @param indexFile
+   *          The file that contains the index.
+   * @param data
+   *          The indexed data.
+   * @param modificationTime
+   *          The modification time of the indexed file.
+   *
+   * @return The index, or null if the file does not hold an index of the
+   *         data in its current state.
+   *
+   * @throws IOException
+   *           Thrown if the file can't be read.
+   */
+  public static NGramIndex load(final File indexFile, final IDataProvider data,
+                                final long modificationTime) throws IOException
+  {
+    if (data == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+    try {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION || input.readInt() != BUCKET_BITS) {
+        return null;
+      }
+
+      final long dataLength = input.readLong();
+      final long fileTime = input.readLong();
+      final long sampleHash = input.readLong();
+      final int blockSize = input.readInt();
+      if (dataLength != LargeDataProviderAdapter.getDataLength(data) || fileTime != modificationTime
+          || blockSize < 256 || sampleHash != getSampleHash(data, dataLength)) {
+        return null;
+      }
+
+      final int[] starts = new int[(1 << BUCKET_BITS) + 1];
+      for (int i = 0; i < starts.length; i++) {
+        starts[i] = input.readInt();
+        if (starts[i] < (i == 0 ? 0 : starts[i - 1])) {
+          return null;
+        }
+      }
+
+      final byte[] pool = new byte[starts[starts.length - 1]];
+      input.readFully(pool);
+
+      // The sample hash only covers the data, a damaged file must not
+      // produce block numbers outside of it
+      final int blockCount = (int) ((dataLength + blockSize - 1) / blockSize);
+      if (!isValidPool(starts, pool, blockCount)) {
+        return null;
+      }
+
+      return new NGramIndex(dataLength, blockSize, sampleHash, starts, pool);
+    }
+    catch (final EOFException exception) {
+      return null;
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Loads the index saved next to a file, or builds the index and tries to
+   * save it next to the file if there is no valid index. Errors while saving
+   * are ignored.
+   *
+   * @param data
+   *          The data of the file.
+   * @param dataFile
+   *          The indexed file.
+   *
+   * @return The index.
+   *
+   * @see #build(IDataProvider, int)
+   */
+  public static NGramIndex open(final IDataProvider data, final File dataFile)
+  {
+    if (dataFile == null) {
+      throw new NullPointerException("Error: File can't be null");
+    }
+
+    final File indexFile = getIndexFile(dataFile);
+    final long modificationTime = dataFile.lastModified();
+    if (indexFile.isFile()) {
+      try {
+        final NGramIndex index = load(indexFile, data, modificationTime);
+        if (index != null) {
+          return index;
+        }
+      }
+      catch (final IOException exception) {
+        // Rebuild the index
+      }
+    }
+
+    final NGramIndex index = build(data);
+    try {
+      index.save(indexFile, modificationTime);
+    }
+    catch (final IOException exception) {
+      // The index is still usable
+    }
+    return index;
+  }
+
+  /**
+   * Loads or builds the index of a file in the background, see
+   * {@link #open(IDataProvider, File)}. Cancelling the returned future with
+   * interruption stops the build.
+   *
+   * @param data
+   *          The data of the file. It must support reads from the threads of
+   *          the executor.
+   * @param dataFile
+   *          The indexed file.
+   * @param executor
+   *          The executor that loads or builds the index.
+   *
+   * @return The future index.
+   */
+  public static Future<NGramIndex> openInBackground(final IDataProvider data, final File dataFile,
+                                                    final ExecutorService executor)
+  {
+    if (executor == null) {
+      throw new NullPointerException("Error: Executor can't be null");
+    }
+
+    return executor.submit(new Callable<NGramIndex>() {
+      @Override
+      public NGramIndex call()
+      {
+        return open(data, dataFile);
+      }
+    });
+  }
+
+  /**
+   * Returns the size of the indexed blocks.
+   */
+  public int getBlockSize()
+  {
+    return m_blockSize;
+  }
+
+  /**
+   * Returns the length of the indexed data.
+   */
+  public long getDataLength()
+  {
+    return m_dataLength;
+  }
+
+  /**
+   * Returns the size of the posting lists in bytes.
+   */
+  public int getSize()
+  {
+    return m_pool.length;
+  }
+
+  /**
+   * Returns the offset of the first match that lies completely within the
+   * specified window. Only blocks that contain all trigrams of the pattern are
+   * searched. Patterns shorter than a trigram and data whose length differs
+   * from the indexed data are searched without the index.
+   *
+   * @param data
+   *          The indexed data.
+   * @param pattern
+   *          The pattern to search.
+   * @param caseSensitive
+   *          False, to ignore the case of printable characters.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window.
+   *
+   * @return The offset of the first match, or -1 if there is no match.
+   */
+  public long indexOf(final IDataProvider data, final byte[] pattern, final boolean caseSensitive,
+                      final long from, final long to)
+  {
+    final ByteSearcher searcher = new ByteSearcher(pattern, caseSensitive);
+    final long[] candidates = getCandidates(data, pattern);
+    if (candidates == null) {
+      return searcher.indexOf(data, from, to);
+    }
+
+    final int blockCount = getBlockCount();
+    final int first = (int) Math.max(0, Math.min(from / m_blockSize, blockCount));
+    for (int block = nextSetBit(candidates, first, blockCount); block >= 0;) {
+      // Search consecutive candidate blocks at once
+      int end = block + 1;
+      while (end < blockCount && isSet(candidates, end)) {
+        end++;
+      }
+
+      final long blockStart = (long) block * m_blockSize;
+      if (blockStart >= to) {
+        break;
+      }
+
+      final long offset = searcher.indexOf(data, Math.max(from, blockStart),
+                                           Math.min(to, (long) end * m_blockSize + pattern.length - 1));
+      if (offset >= 0) {
+        return offset;
+      }
+
+      block = nextSetBit(candidates, end, blockCount);
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the offset of the last match that lies completely within the
+   * specified window. See {@link #indexOf(IDataProvider, byte[], boolean, long, long)}.
+   *
+   * @param data
+   *          The indexed data.
+   * @param pattern
+   *          The pattern to search.
+   * @param caseSensitive
+   *          False, to ignore the case of printable characters.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window.
+   *
+   * @return The offset of the last match, or -1 if there is no match.
+   */
+  public long lastIndexOf(final IDataProvider data, final byte[] pattern, final boolean caseSensitive,
+                          final long from, final long to)
+  {
+    final ByteSearcher searcher = new ByteSearcher(pattern, caseSensitive);
+    final long[] candidates = getCandidates(data, pattern);
+    if (candidates == null) {
+      return searcher.lastIndexOf(data, from, to);
+    }
+
+    final long lastStart = Math.min(to, m_dataLength) - 1;
+    int block = (int) Math.min(lastStart / m_blockSize, getBlockCount() - 1);
+    while (block >= 0) {
+      if (!isSet(candidates, block)) {
+        block--;
+        continue;
+      }
+
+      // Search consecutive candidate blocks at once
+      int start = block;
+      while (start > 0 && isSet(candidates, start - 1)) {
+        start--;
+      }
+
+      final long blockEnd = (long) (block + 1) * m_blockSize;
+      if (blockEnd <= from) {
+        break;
+      }
+
+      final long offset = searcher.lastIndexOf(data, Math.max(from, (long) start * m_blockSize),
+                                               Math.min(to, blockEnd + pattern.length - 1));
+      if (offset >= 0) {
+        return offset;
+      }
+
+      block = start - 1;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Saves the index.
+   *
+   * @param indexFile
+   *          The file that receives the index.
+   * @param modificationTime
+   *          The modification time of the indexed file.
+   *
+   * @throws IOException
+   *           Thrown if the file can't be written.
+   */
+  public void save(final File indexFile, final long modificationTime) throws IOException
+  {
+    final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(BUCKET_BITS);
+      output.writeLong(m_dataLength);
+      output.writeLong(modificationTime);
+      output.writeLong(m_sampleHash);
+      output.writeInt(m_blockSize);
+      for (final int start : m_starts) {
+        output.writeInt(start);
+      }
+      output.write(m_pool);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Returns the bucket of the trigram at the specified position.
+   */
+  private static int bucket(final byte[] data, final int position)
+  {
+    final int gram = (data[position] & 255) << 16 | (data[position + 1] & 255) << 8 | data[position + 2] & 255;
+    return (gram * 0x9E3779B1) >>> (32 - BUCKET_BITS);
+  }
+
+  /**
+   * Returns a hash of samples spread evenly over the data.
+   */
+  private static long getSampleHash(final IDataProvider data, final long dataLength)
+  {
+    final CRC32 crc = new CRC32();
+    final byte[] buffer = new byte[SAMPLE_SIZE];
+    for (int i = 0; i <= SAMPLE_COUNT; i++) {
+      final long offset = Math.max(0, (dataLength - SAMPLE_SIZE) / SAMPLE_COUNT * i);
+      final int count = Math.max(0, data.read(offset, buffer, 0, (int) Math.min(SAMPLE_SIZE, dataLength - offset)));
+      crc.update(buffer, 0, count);
+    }
+    return crc.getValue() ^ dataLength << 32;
+  }
+
+  private static boolean isSet(final long[] bits, final int index)
+  {
+    return (bits[index >> 6] & 1L << index) != 0;
+  }
+
+  /**
+   * Returns whether all posting lists of the pool decode to ascending block
+   * numbers below the block count, without crossing the end of their buckets.
+   */
+  private static boolean isValidPool(final int[] starts, final byte[] pool, final int blockCount)
+  {
+    for (int bucket = 0; bucket + 1 < starts.length; bucket++) {
+      final int end = starts[bucket + 1];
+      int block = -1;
+      for (int position = starts[bucket]; position < end;) {
+        int delta = 0;
+        int shift = 0;
+        byte b;
+        do {
+          if (position >= end || shift > 28) {
+            return false;
+          }
+          b = pool[position++];
+          delta |= (b & 0x7F) << shift;
+          shift += 7;
+        } while (b < 0);
+
+        if (delta <= 0 || delta >= blockCount - block) {
+          return false;
+        }
+        block += delta;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the index of the first set bit at or behind the specified index
+   * and before the limit, or -1 if there is none.
+   */
+  private static int nextSetBit(final long[] bits, final int index, final int limit)
+  {
+    if (index >= limit) {
+      return -1;
+    }
+
+    int word = index >> 6;
+    long value = bits[word] & -1L << index;
+    while (value == 0) {
+      if (++word >= bits.length) {
+        return -1;
+      }
+      value = bits[word];
+    }
+
+    final int result = word * 64 + Long.numberOfTrailingZeros(value);
+    return result < limit ? result : -1;
+  }
+
+  private static int writeVarInt(final byte[] buffer, int position, int value)
+  {
+    while ((value & ~0x7F) != 0) {
+      buffer[position++] = (byte) (value & 0x7F | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte) value;
+    return position;
+  }
+
+  private int getBlockCount()
+  {
+    return (int) ((m_dataLength + m_blockSize - 1) / m_blockSize);
+  }
+
+  /**
+   * Returns the blocks in which a match of the pattern can start as bit set,
+   * or null if the index can't be used for the pattern.
+   */
+  private long[] getCandidates(final IDataProvider data, final byte[] pattern)
+  {
+    if (pattern == null) {
+      throw new NullPointerException("Error: Pattern can't be null");
+    }
+
+    if (pattern.length < GRAM_LENGTH || LargeDataProviderAdapter.getDataLength(data) != m_dataLength) {
+      return null;
+    }
+
+    final byte[] folded = pattern.clone();
+    final byte[] fold = ByteSearcher.getLowerCaseTable();
+    for (int i = 0; i < folded.length; i++) {
+      folded[i] = fold[folded[i] & 255];
+    }
+
+    final int blockCount = getBlockCount();
+    final int words = (blockCount + 63) >> 6;
+    final long[] candidates = new long[words];
+    Arrays.fill(candidates, -1L);
+    final long[] blocks = new long[words + 1];
+    final long[] reachable = new long[words];
+
+    for (int k = 0; k + GRAM_LENGTH <= folded.length; k++) {
+      final int bucket = bucket(folded, k);
+
+      // Blocks that contain the trigram
+      Arrays.fill(blocks, 0);
+      int block = -1;
+      for (int position = m_starts[bucket]; position < m_starts[bucket + 1];) {
+        int delta = 0;
+        int shift = 0;
+        byte b;
+        do {
+          b = m_pool[position++];
+          delta |= (b & 0x7F) << shift;
+          shift += 7;
+        } while (b < 0);
+        block += delta;
+        blocks[block >> 6] |= 1L << block;
+      }
+
+      // A match starting in block b has the trigram at position k in block
+      // b + k / blockSize or in the block behind it
+      final int distance = k / m_blockSize;
+      for (int word = 0; word < words; word++) {
+        reachable[word] = shiftedWord(blocks, word, distance) | shiftedWord(blocks, word, distance + 1);
+      }
+
+      boolean empty = true;
+      for (int word = 0; word < words; word++) {
+        candidates[word] &= reachable[word];
+        empty &= candidates[word] == 0;
+      }
+
+      if (empty) {
+        break;
+      }
+    }
+
+    return candidates;
+  }
+
+  /**
+   * Returns the word of the bit set whose bit b is bit b + distance of the
+   * specified bit set.
+   */
+  private static long shiftedWord(final long[] bits, final int word, final int distance)
+  {
+    final int source = word + (distance >> 6);
+    final int shift = distance & 63;
+    final long low = source < bits.length ? bits[source] >>> shift : 0;
+    final long high = shift != 0 && source + 1 < bits.length ? bits[source + 1] << (64 - shift) : 0;
+    return low | high;
+  }
+}
@@ -0,0 +1,129 @@
+package tv.porst.jhexview;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of offsets that stores primitive values in fixed-size chunks.
+ *
+ * Growing the list never copies the values, only the small array of chunk
+ * references. Millions of offsets take a few megabytes.
+ */
+public final class OffsetList
+{
+  /**
+   * Maximum number of offsets in a list.
+   */
+  public static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Number of offsets per chunk. Must be a power of two.
+   */
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  private long[][] m_chunks = new long[0][];
+
+  private int m_size = 0;
+
+  /**
+   * Appends an offset to the list.
+   *
+   * @param offset
+   *          The offset to append.
+   *
+   * @throws IllegalStateException
+   *           Thrown if the list already holds {@link #MAX_SIZE} offsets.
+   */
+  public void add(final long offset)
+  {
+    if (m_size == MAX_SIZE) {
+      throw new IllegalStateException("Error: Offset list is full");
+    }
+
+    final int chunk = m_size / CHUNK_SIZE;
+    if (chunk == m_chunks.length) {
+      m_chunks = Arrays.copyOf(m_chunks, Math.max(4, chunk * 2));
+    }
+    if (m_chunks[chunk] == null) {
+      m_chunks[chunk] = new long[CHUNK_SIZE];
+    }
+
+    m_chunks[chunk][m_size % CHUNK_SIZE] = offset;
+    m_size++;
+  }
+
+  /**
+   * Removes all offsets.
+   */
+  public void clear()
+  {
+    m_chunks = new long[0][];
+    m_size = 0;
+  }
+
+  /**
+   * Returns the offset at the specified index.
+   *
+   * @param index
+   *          The index of the offset.
+   *
+   * @throws IndexOutOfBoundsException
+   *           Thrown if the index is invalid.
+   */
+  public long get(final int index)
+  {
+    if (index < 0 || index >= m_size) {
+      throw new IndexOutOfBoundsException("Error: Invalid index " + index);
+    }
+
+    return m_chunks[index / CHUNK_SIZE][index % CHUNK_SIZE];
+  }
+
+  /**
+   * Copies offsets into an array.
+   *
+   * @param index
+   *          Index of the first offset to copy.
+   * @param dst
+   *          The array that receives the offsets.
+   * @param dstOffset
+   *          Index of the first offset in the array.
+   * @param count
+   *          Number of offsets to copy.
+   *
+   * @throws IndexOutOfBoundsException
+   *           Thrown if the offsets are not in the list.
+   */
+  public void get(int index, final long[] dst, int dstOffset, int count)
+  {
+    if (index < 0 || count < 0 || index > m_size - count) {
+      throw new IndexOutOfBoundsException("Error: Invalid range of offsets");
+    }
+
+    while (count > 0) {
+      final int chunkOffset = index % CHUNK_SIZE;
+      final int length = Math.min(count, CHUNK_SIZE - chunkOffset);
+      System.arraycopy(m_chunks[index / CHUNK_SIZE], chunkOffset, dst, dstOffset, length);
+      index += length;
+      dstOffset += length;
+      count -= length;
+    }
+  }
+
+  /**
+   * Returns the number of offsets.
+   */
+  public int size()
+  {
+    return m_size;
+  }
+
+  /**
+   * Returns all offsets as array.
+   */
+  public long[] toArray()
+  {
+    final long[] offsets = new long[m_size];
+    get(0, offsets, 0, m_size);
+    return offsets;
+  }
+}
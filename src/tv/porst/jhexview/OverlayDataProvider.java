@@ -0,0 +1,452 @@
+package tv.porst.jhexview;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Editable data provider that keeps all changes in memory on top of an
+ * unmodified base provider, e.g. a read-only {@link MappedFileDataProvider}.
+ *
+ * Changes are stored as sorted, non-overlapping runs of patched bytes. Memory
+ * usage depends on the number of changed bytes only, never on the size of the
+ * base data. Reads copy the base data and apply the patches on top of it in a
+ * single pass. The changes can be written back with {@link #flush(File)} or
+ * {@link #flush(IDataProvider)}, which only touch the patched runs.
+ */
+public final class OverlayDataProvider implements ILargeDataProvider
+{
+  /**
+   * Adjacent runs are only merged while the merged run stays below this size.
+   */
+  private static final int MAX_MERGED_RUN = 1024 * 1024;
+
+  private final List<IDataChangedListener> listeners = new ArrayList<IDataChangedListener>();
+
+  /**
+   * The unmodified data.
+   */
+  private final ILargeDataProvider m_base;
+
+  /**
+   * Start offsets of the patched runs in ascending order.
+   */
+  private long[] m_starts = new long[16];
+
+  /**
+   * Patched bytes of the runs. A run's array can be longer than the run to
+   * leave room for bytes written right behind it.
+   */
+  private byte[][] m_runs = new byte[16][];
+
+  /**
+   * Lengths of the runs.
+   */
+  private int[] m_lengths = new int[16];
+
+  /**
+   * Number of patched runs.
+   */
+  private int m_count = 0;
+
+  /**
+   * Total number of patched bytes.
+   */
+  private long m_dirtyBytes = 0;
+
+  /**
+   * Forwards changes of the base data.
+   */
+  private final IDataChangedListener m_baseListener = new IDataChangedListener() {
+    @Override
+    public void dataChanged(final DataChangedEvent event)
+    {
+      fireDataChangedListener(event.getKind(), event.getOffset(), event.getLength());
+    }
+  };
+
+  /**
+   * Creates a new overlay.
+   *
+   * @param base
+   *          The unmodified data. It is never written to, except by
+   *          {@link #flush(IDataProvider)}.
+   */
+  public OverlayDataProvider(final IDataProvider base)
+  {
+    if (base == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    m_base = LargeDataProviderAdapter.wrap(base);
+    m_base.addListener(m_baseListener);
+  }
+
+  @Override
+  public void addListener(final IDataChangedListener listener)
+  {
+    if (listener != null && !listeners.contains(listener)) {
+      listeners.add(listener);
+    }
+  }
+
+  /**
+   * Stops listening to the base provider.
+   */
+  public void dispose()
+  {
+    m_base.removeListener(m_baseListener);
+  }
+
+  /**
+   * Writes all patched runs to the specified file and discards them. Only
+   * the patched runs are written, the rest of the file is not touched.
+   *
+   * @param file
+   *          The file to write to, usually the file of the base data.
+   *
+   * @throws IOException
+   *           Thrown if writing to the file failed.
+   */
+  public synchronized void flush(final File file) throws IOException
+  {
+    if (file == null) {
+      throw new NullPointerException("Error: File can't be null");
+    }
+
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      final FileChannel channel = raf.getChannel();
+      for (int i = 0; i < m_count; i++) {
+        final ByteBuffer buffer = ByteBuffer.wrap(m_runs[i], 0, m_lengths[i]);
+        long position = m_starts[i];
+        while (buffer.hasRemaining()) {
+          position += channel.write(buffer, position);
+        }
+      }
+      channel.force(false);
+    } finally {
+      raf.close();
+    }
+
+    clear();
+  }
+
+  /**
+   * Writes all patched runs to the specified data provider and discards them.
+   *
+   * @param target
+   *          The provider to write to, e.g. an editable base provider.
+   */
+  public synchronized void flush(final IDataProvider target)
+  {
+    if (target == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    for (int i = 0; i < m_count; i++) {
+      target.setData(m_starts[i], (m_runs[i].length == m_lengths[i]) ? m_runs[i]
+                                                                     : Arrays.copyOf(m_runs[i], m_lengths[i]));
+    }
+
+    clear();
+  }
+
+  /**
+   * Returns the unmodified data.
+   */
+  public ILargeDataProvider getBase()
+  {
+    return m_base;
+  }
+
+  @Override
+  public byte[] getData(final long offset, final int length)
+  {
+    if (offset < 0 || length <= 0) {
+      return new byte[0];
+    }
+
+    final byte[] data = new byte[length];
+    final int count = read(offset, data, 0, length);
+    return (count == length) ? data : Arrays.copyOf(data, count);
+  }
+
+  /**
+   * Returns the total number of patched bytes.
+   */
+  public synchronized long getDirtyBytes()
+  {
+    return m_dirtyBytes;
+  }
+
+  /**
+   * Returns the number of patched runs.
+   */
+  public synchronized int getDirtyRunCount()
+  {
+    return m_count;
+  }
+
+  @Override
+  public long getLargeDataLength()
+  {
+    return m_base.getLargeDataLength();
+  }
+
+  @Override
+  public boolean hasData(final long offset, final int length)
+  {
+    return m_base.hasData(offset, length);
+  }
+
+  /**
+   * Returns whether any data has been changed.
+   */
+  public synchronized boolean isDirty()
+  {
+    return m_count > 0;
+  }
+
+  /**
+   * Returns whether the byte at the specified offset has been changed.
+   *
+   * @param offset
+   *          The offset of the byte.
+   */
+  public synchronized boolean isDirty(final long offset)
+  {
+    final int index = findRun(offset);
+    return index < m_count && m_starts[index] <= offset;
+  }
+
+  @Override
+  public boolean isEditable()
+  {
+    return true;
+  }
+
+  @Override
+  public boolean keepTrying()
+  {
+    return m_base.keepTrying();
+  }
+
+  @Override
+  public synchronized int read(final long offset, final byte[] dst, final int dstOffset, final int length)
+  {
+    if (offset < 0 || length <= 0) {
+      return 0;
+    }
+
+    final int count = m_base.read(offset, dst, dstOffset, length);
+
+    // Apply the patches that overlap the copied data
+    final long end = offset + count;
+    for (int i = findRun(offset); i < m_count && m_starts[i] < end; i++) {
+      final long start = Math.max(m_starts[i], offset);
+      final long runEnd = Math.min(m_starts[i] + m_lengths[i], end);
+      System.arraycopy(m_runs[i], (int) (start - m_starts[i]), dst,
+                       dstOffset + (int) (start - offset), (int) (runEnd - start));
+    }
+
+    return count;
+  }
+
+  @Override
+  public void removeListener(final IDataChangedListener listener)
+  {
+    if (listener != null) {
+      listeners.remove(listener);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> requestData(final long offset, final int length)
+  {
+    return m_base.requestData(offset, length);
+  }
+
+  /**
+   * Discards all changes.
+   */
+  public void revert()
+  {
+    final boolean changed;
+    synchronized (this) {
+      changed = m_count > 0;
+      clear();
+    }
+
+    if (changed) {
+      fireDataChangedListener(DataChangedEvent.Kind.UNKNOWN, -1, -1);
+    }
+  }
+
+  @Override
+  public void setData(final long offset, final byte[] data)
+  {
+    if (offset < 0 || data == null) {
+      return;
+    }
+
+    final int length = (int) Math.min(data.length, getLargeDataLength() - offset);
+    if (length <= 0) {
+      return;
+    }
+
+    synchronized (this) {
+      patch(offset, data, length);
+    }
+
+    fireDataChangedListener(DataChangedEvent.Kind.OVERWRITE, offset, length);
+  }
+
+  protected void fireDataChangedListener(final DataChangedEvent.Kind kind, final long offset,
+                                         final long length)
+  {
+    if (!listeners.isEmpty()) {
+      final DataChangedEvent event = new DataChangedEvent(this, kind, offset, length);
+      for (final IDataChangedListener l : listeners) {
+        l.dataChanged(event);
+      }
+    }
+  }
+
+  /**
+   * Removes all runs.
+   */
+  private void clear()
+  {
+    m_starts = new long[16];
+    m_runs = new byte[16][];
+    m_lengths = new int[16];
+    m_count = 0;
+    m_dirtyBytes = 0;
+  }
+
+  /**
+   * Returns the index of the first run that ends behind the specified offset,
+   * or the number of runs if there is no such run.
+   */
+  private int findRun(final long offset)
+  {
+    int low = 0;
+    int high = m_count;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (m_starts[mid] + m_lengths[mid] <= offset) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Stores the specified data as patch. Overlapping runs are merged with the
+   * new data, adjacent runs are merged as long as the result stays small.
+   * Merged runs get spare room, so that sequential writes extend their run in
+   * place instead of copying it every time.
+   */
+  private void patch(final long offset, final byte[] data, final int length)
+  {
+    final long end = offset + length;
+
+    // Runs [first, last) overlap or touch the new data
+    int first = findRun(offset);
+    if (first > 0 && m_starts[first - 1] + m_lengths[first - 1] == offset) {
+      first--;
+    }
+    int last = first;
+    while (last < m_count && m_starts[last] <= end) {
+      last++;
+    }
+
+    // Don't merge with runs that only touch the new data if the result gets too large
+    if (first < last && m_starts[first] + m_lengths[first] == offset
+        && end - m_starts[first] > MAX_MERGED_RUN) {
+      first++;
+    }
+    if (first < last && m_starts[last - 1] == end
+        && m_starts[last - 1] + m_lengths[last - 1] - Math.min(offset, m_starts[first]) > MAX_MERGED_RUN) {
+      last--;
+    }
+
+    if (first == last) {
+      // No run to merge, simply insert a new one
+      insertRun(first, offset, Arrays.copyOf(data, length), length);
+      m_dirtyBytes += length;
+      return;
+    }
+
+    if (first + 1 == last && m_starts[first] <= offset
+        && m_starts[first] + m_lengths[first] >= end) {
+      // The new data lies completely inside an existing run
+      System.arraycopy(data, 0, m_runs[first], (int) (offset - m_starts[first]), length);
+      return;
+    }
+
+    final long start = Math.min(offset, m_starts[first]);
+    final int runLength = (int) (Math.max(end, m_starts[last - 1] + m_lengths[last - 1]) - start);
+
+    // Extend the first run in place if it has enough room, otherwise grow it
+    // by half, so that a sequence of appends copies every byte only a few times
+    byte[] run = m_runs[first];
+    int i = first;
+    if (m_starts[first] == start && run.length >= runLength) {
+      m_dirtyBytes -= m_lengths[first];
+      i++;
+    } else {
+      final int capacity = Math.max(runLength, Math.min(runLength + (runLength >> 1), MAX_MERGED_RUN));
+      run = new byte[capacity];
+    }
+
+    for (; i < last; i++) {
+      System.arraycopy(m_runs[i], 0, run, (int) (m_starts[i] - start), m_lengths[i]);
+      m_dirtyBytes -= m_lengths[i];
+    }
+    System.arraycopy(data, 0, run, (int) (offset - start), length);
+    m_dirtyBytes += runLength;
+
+    m_starts[first] = start;
+    m_runs[first] = run;
+    m_lengths[first] = runLength;
+
+    final int removed = last - first - 1;
+    if (removed > 0) {
+      System.arraycopy(m_starts, last, m_starts, first + 1, m_count - last);
+      System.arraycopy(m_runs, last, m_runs, first + 1, m_count - last);
+      System.arraycopy(m_lengths, last, m_lengths, first + 1, m_count - last);
+      Arrays.fill(m_runs, m_count - removed, m_count, null);
+      m_count -= removed;
+    }
+  }
+
+  /**
+   * Inserts a new run at the specified index.
+   */
+  private void insertRun(final int index, final long start, final byte[] run, final int length)
+  {
+    if (m_count == m_starts.length) {
+      m_starts = Arrays.copyOf(m_starts, m_count * 2);
+      m_runs = Arrays.copyOf(m_runs, m_count * 2);
+      m_lengths = Arrays.copyOf(m_lengths, m_count * 2);
+    }
+
+    System.arraycopy(m_starts, index, m_starts, index + 1, m_count - index);
+    System.arraycopy(m_runs, index, m_runs, index + 1, m_count - index);
+    System.arraycopy(m_lengths, index, m_lengths, index + 1, m_count - index);
+    m_starts[index] = start;
+    m_runs[index] = run;
+    m_lengths[index] = length;
+    m_count++;
+  }
+}
@@ -0,0 +1,134 @@
+package tv.porst.jhexview;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes numbered chunks of work on the threads of a fork-join pool.
+ *
+ * Every worker takes the next chunk index until all chunks have been taken
+ * or the work has been stopped, so chunks are started in ascending order.
+ * Every worker creates its own state, e.g. a buffer, before its first chunk.
+ */
+final class ParallelChunks<T>
+{
+  /**
+   * Processes the chunks.
+   */
+  interface IChunkHandler<T>
+  {
+    /**
+     * Creates the state of a worker. Called once per worker before its first
+     * chunk.
+     */
+    T createState();
+
+    /**
+     * Processes a single chunk.
+     *
+     * @param index
+     *          The index of the chunk.
+     * @param state
+     *          The state of the worker.
+     * @param stopped
+     *          Set when the work has been stopped. Long chunks should check it
+     *          regularly.
+     *
+     * @return True, to continue. False, to stop the work.
+     */
+    boolean processChunk(int index, T state, AtomicBoolean stopped);
+  }
+
+  private final int m_count;
+
+  private final IChunkHandler<T> m_handler;
+
+  /**
+   * Index of the next chunk to process.
+   */
+  private final AtomicInteger m_nextChunk = new AtomicInteger();
+
+  /**
+   * Set if a chunk has stopped the work.
+   */
+  private final AtomicBoolean m_stopped = new AtomicBoolean();
+
+  private ParallelChunks(final int count, final IChunkHandler<T> handler)
+  {
+    m_count = count;
+    m_handler = handler;
+  }
+
+  /**
+   * Processes the chunks [0, count) and waits until all workers have
+   * finished.
+   *
+   * @param pool
+   *          The pool whose threads process the chunks.
+   * @param threads
+   *          The maximum number of workers.
+   * @param count
+   *          The number of chunks.
+   * @param handler
+   *          The handler that processes the chunks.
+   *
+   * @return True, if all chunks have been processed. False, if a chunk has
+   *         stopped the work.
+   */
+  static <T> boolean process(final ForkJoinPool pool, final int threads, final int count,
+                             final IChunkHandler<T> handler)
+  {
+    final ParallelChunks<T> chunks = new ParallelChunks<T>(count, handler);
+    pool.invoke(chunks.new Worker(Math.max(1, Math.min(threads, count))));
+    return !chunks.m_stopped.get();
+  }
+
+  /**
+   * Processes chunks until all chunks have been taken or the work has been
+   * stopped.
+   */
+  private final class Worker extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of workers this worker still has to start, including itself.
+     */
+    private final int m_workers;
+
+    private Worker(final int workers)
+    {
+      m_workers = workers;
+    }
+
+    @Override
+    protected void compute()
+    {
+      final Worker sibling = m_workers > 1 ? new Worker(m_workers - 1) : null;
+      if (sibling != null) {
+        sibling.fork();
+      }
+
+      T state = null;
+      while (!m_stopped.get()) {
+        final int index = m_nextChunk.getAndIncrement();
+        if (index >= m_count) {
+          break;
+        }
+
+        if (state == null) {
+          state = m_handler.createState();
+        }
+        if (!m_handler.processChunk(index, state, m_stopped)) {
+          m_stopped.set(true);
+        }
+      }
+
+      if (sibling != null) {
+        sibling.join();
+      }
+    }
+  }
+}
@@ -0,0 +1,559 @@
+package tv.porst.jhexview;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Editable data provider that keeps all modifications in a piece table on top
+ * of an unmodified base provider.
+ *
+ * The content is described by a sequence of pieces, each referring either to a
+ * range of the base data or to a range of an append-only buffer holding all
+ * inserted bytes. Pieces are kept in a treap that stores the total length of
+ * every subtree, so locating, inserting and removing data takes O(log pieces)
+ * and never copies the base data.
+ */
+public final class PieceTableDataProvider implements IResizableDataProvider
+{
+  /**
+   * Size of a single chunk of the buffer that holds inserted bytes.
+   */
+  private static final int ADD_CHUNK_SIZE = 64 * 1024;
+
+  private final List<IDataChangedListener> listeners = new ArrayList<IDataChangedListener>();
+
+  /**
+   * The unmodified data.
+   */
+  private final IDataProvider m_base;
+
+  /**
+   * Chunks of the append-only buffer that holds all inserted bytes.
+   */
+  private final List<byte[]> m_addChunks = new ArrayList<byte[]>();
+
+  /**
+   * Number of bytes stored in the append-only buffer.
+   */
+  private long m_addLength = 0;
+
+  /**
+   * Source of the treap priorities.
+   */
+  private final Random m_random = new Random();
+
+  /**
+   * Root of the piece treap.
+   */
+  private Piece m_root;
+
+  /**
+   * Creates a new piece table with the content of the specified provider as
+   * initial data. The base provider is never modified.
+   *
+   * @param base
+   *          The provider of the initial data.
+   */
+  public PieceTableDataProvider(final IDataProvider base)
+  {
+    if (base == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    m_base = base;
+
+    final long length = LargeDataProviderAdapter.getDataLength(base);
+    if (length > 0) {
+      m_root = new Piece(false, 0, length, m_random.nextInt());
+    }
+  }
+
+  private static long total(final Piece piece)
+  {
+    return piece != null ? piece.total : 0;
+  }
+
+  @Override
+  public void addListener(final IDataChangedListener listener)
+  {
+    if (listener != null && !listeners.contains(listener)) {
+      listeners.add(listener);
+    }
+  }
+
+  /**
+   * Returns the provider of the unmodified data.
+   */
+  public IDataProvider getBase()
+  {
+    return m_base;
+  }
+
+  @Override
+  public byte[] getData(final long offset, int length)
+  {
+    final long dataLength = getLargeDataLength();
+    if (offset < 0 || offset >= dataLength || length <= 0) {
+      return new byte[0];
+    }
+
+    if (offset + length > dataLength) {
+      length = (int) (dataLength - offset);
+    }
+
+    final byte[] data = new byte[length];
+    read(offset, data, 0, length);
+    return data;
+  }
+
+  @Override
+  public long getLargeDataLength()
+  {
+    return total(m_root);
+  }
+
+  /**
+   * Returns the number of pieces that describe the current content.
+   */
+  public int getPieceCount()
+  {
+    return count(m_root);
+  }
+
+  @Override
+  public boolean hasData(final long offset, final int length)
+  {
+    final boolean[] available = { true };
+    visit(m_root, offset, length, 0, new PieceVisitor() {
+      @Override
+      public boolean visit(final Piece piece, final long position, final int count, final int index)
+      {
+        if (!piece.added && !m_base.hasData(position, count)) {
+          available[0] = false;
+        }
+        return available[0];
+      }
+    });
+    return available[0];
+  }
+
+  @Override
+  public void insertData(final long offset, final byte[] data)
+  {
+    if (offset < 0 || offset > getLargeDataLength()) {
+      throw new IllegalArgumentException("Error: Invalid offset");
+    }
+
+    if (data == null || data.length == 0) {
+      return;
+    }
+
+    insertPiece(offset, data);
+    fireDataChangedListener(DataChangedEvent.Kind.INSERT, offset, data.length);
+  }
+
+  @Override
+  public boolean isEditable()
+  {
+    return true;
+  }
+
+  @Override
+  public boolean keepTrying()
+  {
+    return m_base.keepTrying();
+  }
+
+  @Override
+  public int read(final long offset, final byte[] dst, final int dstOffset, final int length)
+  {
+    if (offset < 0 || length <= 0) {
+      return 0;
+    }
+
+    final int[] count = { 0 };
+    visit(m_root, offset, length, 0, new PieceVisitor() {
+      @Override
+      public boolean visit(final Piece piece, final long position, final int n, final int index)
+      {
+        if (piece.added) {
+          readAdded(position, dst, dstOffset + index, n);
+        } else {
+          m_base.read(position, dst, dstOffset + index, n);
+        }
+        count[0] += n;
+        return true;
+      }
+    });
+    return count[0];
+  }
+
+  @Override
+  public void removeData(final long offset, final long length)
+  {
+    if (offset < 0 || length < 0 || offset + length > getLargeDataLength()) {
+      throw new IllegalArgumentException("Error: Invalid range");
+    }
+
+    if (length == 0) {
+      return;
+    }
+
+    removePieces(offset, length);
+    fireDataChangedListener(DataChangedEvent.Kind.DELETE, offset, length);
+  }
+
+  @Override
+  public void removeListener(final IDataChangedListener listener)
+  {
+    if (listener != null) {
+      listeners.remove(listener);
+    }
+  }
+
+  /**
+   * Overwrites data at the given offset. Data that would extend beyond the end
+   * of the current data is ignored.
+   */
+  @Override
+  public void setData(final long offset, final byte[] data)
+  {
+    final long dataLength = getLargeDataLength();
+    if (offset < 0 || offset >= dataLength || data == null) {
+      return;
+    }
+
+    final int length = (int) Math.min(data.length, dataLength - offset);
+    if (length > 0) {
+      final byte[] buffer;
+      if (length < data.length) {
+        buffer = new byte[length];
+        System.arraycopy(data, 0, buffer, 0, length);
+      } else {
+        buffer = data;
+      }
+
+      removePieces(offset, length);
+      insertPiece(offset, buffer);
+      fireDataChangedListener(DataChangedEvent.Kind.OVERWRITE, offset, length);
+    }
+  }
+
+  /**
+   * Writes the current content to the specified stream.
+   *
+   * @param out
+   *          The stream to write to.
+   *
+   * @throws IOException
+   *           Thrown if writing to the stream failed.
+   */
+  public void write(final OutputStream out) throws IOException
+  {
+    final byte[] buffer = new byte[ADD_CHUNK_SIZE];
+    final long length = getLargeDataLength();
+    for (long offset = 0; offset < length;) {
+      final int count = read(offset, buffer, 0, (int) Math.min(buffer.length, length - offset));
+      if (count <= 0) {
+        throw new IOException("Error: Unable to read data at offset " + offset);
+      }
+      out.write(buffer, 0, count);
+      offset += count;
+    }
+  }
+
+  protected void fireDataChangedListener(final DataChangedEvent.Kind kind, final long offset,
+                                         final long length)
+  {
+    if (!listeners.isEmpty()) {
+      final DataChangedEvent event = new DataChangedEvent(this, kind, offset, length);
+      for (final IDataChangedListener l : listeners) {
+        l.dataChanged(event);
+      }
+    }
+  }
+
+  /**
+   * Appends data to the append-only buffer.
+   *
+   * @return The position of the data in the buffer.
+   */
+  private long appendAdded(final byte[] data)
+  {
+    final long position = m_addLength;
+    int index = 0;
+    while (index < data.length) {
+      final int chunkOffset = (int) (m_addLength % ADD_CHUNK_SIZE);
+      if (chunkOffset == 0) {
+        m_addChunks.add(new byte[ADD_CHUNK_SIZE]);
+      }
+      final byte[] chunk = m_addChunks.get(m_addChunks.size() - 1);
+      final int count = Math.min(data.length - index, ADD_CHUNK_SIZE - chunkOffset);
+      System.arraycopy(data, index, chunk, chunkOffset, count);
+      index += count;
+      m_addLength += count;
+    }
+    return position;
+  }
+
+  private int count(final Piece piece)
+  {
+    return piece != null ? count(piece.left) + 1 + count(piece.right) : 0;
+  }
+
+  /**
+   * Inserts a new piece for the specified data. If the data directly follows a
+   * piece that ends at the end of the append-only buffer, that piece is
+   * extended instead.
+   */
+  private void insertPiece(final long offset, final byte[] data)
+  {
+    final long position = appendAdded(data);
+
+    final Piece[] parts = split(m_root, offset);
+
+    // Sequential typing extends the last added piece instead of creating a new one.
+    Piece last = parts[0];
+    while (last != null && last.right != null) {
+      last = last.right;
+    }
+
+    if (last != null && last.added && last.start + last.length == position) {
+      last.length += data.length;
+      updateRightSpine(parts[0]);
+      m_root = merge(parts[0], parts[1]);
+    } else {
+      final Piece piece = new Piece(true, position, data.length, m_random.nextInt());
+      m_root = merge(merge(parts[0], piece), parts[1]);
+    }
+  }
+
+  private Piece merge(final Piece left, final Piece right)
+  {
+    if (left == null) {
+      return right;
+    }
+
+    if (right == null) {
+      return left;
+    }
+
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      left.update();
+      return left;
+    } else {
+      right.left = merge(left, right.left);
+      right.update();
+      return right;
+    }
+  }
+
+  /**
+   * Reads data from the append-only buffer.
+   */
+  private void readAdded(long position, final byte[] dst, int dstOffset, int length)
+  {
+    while (length > 0) {
+      final byte[] chunk = m_addChunks.get((int) (position / ADD_CHUNK_SIZE));
+      final int chunkOffset = (int) (position % ADD_CHUNK_SIZE);
+      final int count = Math.min(length, ADD_CHUNK_SIZE - chunkOffset);
+      System.arraycopy(chunk, chunkOffset, dst, dstOffset, count);
+      position += count;
+      dstOffset += count;
+      length -= count;
+    }
+  }
+
+  private void removePieces(final long offset, final long length)
+  {
+    final Piece[] head = split(m_root, offset);
+    final Piece[] tail = split(head[1], length);
+    m_root = merge(head[0], tail[1]);
+  }
+
+  /**
+   * Splits a subtree into two subtrees, the first containing exactly
+   * <code>offset</code> bytes. A piece that spans the split position is divided
+   * into two pieces.
+   */
+  private Piece[] split(final Piece piece, final long offset)
+  {
+    if (piece == null) {
+      return new Piece[] { null, null };
+    }
+
+    final long leftTotal = total(piece.left);
+
+    if (offset <= leftTotal) {
+      final Piece[] parts = split(piece.left, offset);
+      piece.left = parts[1];
+      piece.update();
+      return new Piece[] { parts[0], piece };
+    }
+
+    if (offset >= leftTotal + piece.length) {
+      final Piece[] parts = split(piece.right, offset - leftTotal - piece.length);
+      piece.right = parts[0];
+      piece.update();
+      return new Piece[] { piece, parts[1] };
+    }
+
+    // The split position is inside this piece. The tail inherits the priority
+    // of the piece, so it can take over the right subtree.
+    final long headLength = offset - leftTotal;
+    final Piece tail = new Piece(piece.added, piece.start + headLength, piece.length - headLength,
+                                 piece.priority);
+    tail.right = piece.right;
+    tail.update();
+
+    piece.length = headLength;
+    piece.right = null;
+    piece.update();
+
+    return new Piece[] { piece, tail };
+  }
+
+  /**
+   * Recalculates the subtree lengths along the right spine of a subtree.
+   */
+  private void updateRightSpine(final Piece piece)
+  {
+    if (piece != null) {
+      updateRightSpine(piece.right);
+      piece.update();
+    }
+  }
+
+  /**
+   * Visits all pieces that overlap the specified range in ascending order.
+   *
+   * @param piece
+   *          Root of the subtree to visit.
+   * @param offset
+   *          Start of the range relative to the start of the subtree.
+   * @param length
+   *          Length of the range.
+   * @param index
+   *          Number of bytes of the range visited so far.
+   * @param visitor
+   *          Visitor that is called for each overlapping piece.
+   *
+   * @return The number of bytes visited in this subtree, or -1 if the visitor
+   *         stopped the traversal.
+   */
+  private int visit(final Piece piece, final long offset, final int length, final int index,
+                    final PieceVisitor visitor)
+  {
+    if (piece == null || length <= 0) {
+      return 0;
+    }
+
+    int count = 0;
+    final long leftTotal = total(piece.left);
+
+    if (offset < leftTotal) {
+      count = visit(piece.left, offset, length, index, visitor);
+      if (count < 0) {
+        return -1;
+      }
+    }
+
+    if (count < length && offset + count < leftTotal + piece.length) {
+      final long position = offset + count - leftTotal;
+      final int n = (int) Math.min(length - count, piece.length - position);
+      if (!visitor.visit(piece, piece.start + position, n, index + count)) {
+        return -1;
+      }
+      count += n;
+    }
+
+    if (count < length) {
+      final long rightOffset = offset + count - leftTotal - piece.length;
+      if (rightOffset >= 0) {
+        final int n = visit(piece.right, rightOffset, length - count, index + count, visitor);
+        if (n < 0) {
+          return -1;
+        }
+        count += n;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * A single piece of the piece table and node of the treap.
+   */
+  private static final class Piece
+  {
+    /**
+     * True if the piece refers to the append-only buffer, false if it refers
+     * to the base data.
+     */
+    private final boolean added;
+
+    /**
+     * Start offset of the piece in its source.
+     */
+    private final long start;
+
+    /**
+     * Length of the piece in bytes.
+     */
+    private long length;
+
+    /**
+     * Treap priority.
+     */
+    private final int priority;
+
+    private Piece left;
+
+    private Piece right;
+
+    /**
+     * Total length of all pieces in this subtree.
+     */
+    private long total;
+
+    private Piece(final boolean added, final long start, final long length, final int priority)
+    {
+      this.added = added;
+      this.start = start;
+      this.length = length;
+      this.priority = priority;
+      this.total = length;
+    }
+
+    private void update()
+    {
+      total = total(left) + length + total(right);
+    }
+  }
+
+  /**
+   * Callback used to traverse the pieces of a data range.
+   */
+  private interface PieceVisitor
+  {
+    /**
+     * Called for each piece that overlaps the traversed range.
+     *
+     * @param piece
+     *          The piece.
+     * @param position
+     *          Start position of the overlapping part in the source of the piece.
+     * @param count
+     *          Number of bytes in the overlapping part.
+     * @param index
+     *          Index of the overlapping part relative to the start of the range.
+     *
+     * @return True to continue the traversal, false to stop it.
+     */
+    boolean visit(Piece piece, long position, int count, int index);
+  }
+}
@@ -0,0 +1,109 @@
+package tv.porst.jhexview;
+
+/**
+ * Maps the bounded value range of a scroll bar onto a 64-bit row space.
+ *
+ * Rows and scroll bar values are identical as long as the number of scrollable
+ * rows fits into {@link #MAX_SCROLL_RANGE}. Larger row spaces are scaled, so
+ * that every scroll bar value stands for a block of rows. Line and page steps
+ * are handled by the owner of the virtualizer directly on the row value and
+ * only thumb positions go through the scaling.
+ */
+final class ScrollVirtualizer
+{
+  /**
+   * Largest scroll bar range that is used before rows get scaled.
+   */
+  static final int MAX_SCROLL_RANGE = 1 << 30;
+
+  /**
+   * The largest valid first row.
+   */
+  private long m_maximumRow = 0;
+
+  /**
+   * Returns the largest valid first row.
+   */
+  public long getMaximumRow()
+  {
+    return m_maximumRow;
+  }
+
+  /**
+   * Returns the largest scroll bar value.
+   */
+  public int getScrollRange()
+  {
+    return (int) Math.min(m_maximumRow, MAX_SCROLL_RANGE);
+  }
+
+  /**
+   * Returns whether scroll bar values are scaled, i.e. whether a single scroll
+   * bar unit spans more than one row.
+   */
+  public boolean isScaled()
+  {
+    return m_maximumRow > MAX_SCROLL_RANGE;
+  }
+
+  /**
+   * Sets the largest valid first row.
+   *
+   * @param row
+   *          The largest valid first row. Negative values are treated as 0.
+   */
+  public void setMaximumRow(final long row)
+  {
+    m_maximumRow = Math.max(0, row);
+  }
+
+  /**
+   * Converts a scroll bar value into the first visible row.
+   *
+   * @param value
+   *          The scroll bar value.
+   *
+   * @return The corresponding row.
+   */
+  public long toRow(final int value)
+  {
+    if (value <= 0) {
+      return 0;
+    }
+
+    if (!isScaled()) {
+      return Math.min(value, m_maximumRow);
+    }
+
+    if (value >= MAX_SCROLL_RANGE) {
+      return m_maximumRow;
+    }
+
+    return Math.min((long) ((double) value * m_maximumRow / MAX_SCROLL_RANGE), m_maximumRow);
+  }
+
+  /**
+   * Converts the first visible row into a scroll bar value.
+   *
+   * @param row
+   *          The first visible row.
+   *
+   * @return The corresponding scroll bar value.
+   */
+  public int toValue(final long row)
+  {
+    if (row <= 0) {
+      return 0;
+    }
+
+    if (!isScaled()) {
+      return (int) Math.min(row, m_maximumRow);
+    }
+
+    if (row >= m_maximumRow) {
+      return MAX_SCROLL_RANGE;
+    }
+
+    return (int) Math.min((double) row * MAX_SCROLL_RANGE / m_maximumRow, MAX_SCROLL_RANGE);
+  }
+}
@@ -76,6 +76,19 @@ public final class SimpleDataProvider implements IDataProvider
     return false;
   }
 
+  @Override
+  public int read(long offset, byte[] dst, int dstOffset, int length)
+  {
+    if (offset < 0 || offset >= getDataLength() || length <= 0) {
+      return 0;
+    }
+    if (offset + length > getDataLength()) {
+      length = getDataLength() - (int)offset;
+    }
+    System.arraycopy(this.m_data, (int) offset, dst, dstOffset, length);
+    return length;
+  }
+
   @Override
   public void removeListener(IDataChangedListener listener)
   {
@@ -92,15 +105,15 @@ public final class SimpleDataProvider implements IDataProvider
       length = getDataLength() - (int)offset;
     }
     if (length > 0) {
-      System.arraycopy(data, 0, this.m_data, (int) offset, data.length);
-      fireDataChangedListener();
+      System.arraycopy(data, 0, this.m_data, (int) offset, length);
+      fireDataChangedListener(DataChangedEvent.Kind.OVERWRITE, offset, length);
     }
   }
 
-  protected void fireDataChangedListener()
+  protected void fireDataChangedListener(DataChangedEvent.Kind kind, long offset, long length)
   {
     if (!listeners.isEmpty()) {
-      DataChangedEvent event = new DataChangedEvent(this);
+      DataChangedEvent event = new DataChangedEvent(this, kind, offset, length);
       for (final IDataChangedListener l: listeners) {
         l.dataChanged(event);
       }
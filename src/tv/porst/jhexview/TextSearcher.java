@@ -0,0 +1,357 @@
+package tv.porst.jhexview;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Searches a text in several encodings at once.
+ *
+ * The text is encoded into every requested charset, and all encodings are
+ * searched in a single pass with a {@link MultiPatternSearcher}.
+ *
+ * Case-insensitive searches fold the bytes with the folding tables of all
+ * requested charsets, see {@link ByteSearcher#getFoldTable(Charset)}, and
+ * confirm every hit by decoding it and comparing it with the text, ignoring
+ * case. The case of non-ASCII characters is only ignored for charsets that
+ * encode every character as a single byte.
+ */
+public final class TextSearcher
+{
+  private final String m_text;
+
+  private final boolean m_caseSensitive;
+
+  /**
+   * The distinct encodings of the text and a charset of every encoding.
+   */
+  private final byte[][] m_patterns;
+  private final Charset[] m_charsets;
+
+  private final MultiPatternSearcher m_searcher;
+
+  /**
+   * Creates a new searcher.
+   *
+   * @param text
+   *          The text to search.
+   * @param charsets
+   *          The encodings to search. Charsets that can't encode the text are
+   *          skipped.
+   * @param caseSensitive
+   *          False, to ignore the case of printable characters.
+   *
+   * @throws IllegalArgumentException
+   *           Thrown if the text is empty or none of the charsets can encode
+   *           it.
+   */
+  public TextSearcher(final String text, final Charset[] charsets, final boolean caseSensitive)
+  {
+    if (text == null) {
+      throw new NullPointerException("Error: Text can't be null");
+    }
+
+    if (charsets == null) {
+      throw new NullPointerException("Error: Charsets can't be null");
+    }
+
+    if (text.isEmpty()) {
+      throw new IllegalArgumentException("Error: Text can't be empty");
+    }
+
+    final List<byte[]> patterns = new ArrayList<byte[]>();
+    final List<Charset> patternCharsets = new ArrayList<Charset>();
+    byte[] foldTable = null;
+    for (final Charset charset : charsets) {
+      if (charset == null) {
+        throw new NullPointerException("Error: Charset can't be null");
+      }
+
+      final byte[] pattern = encode(text, charset);
+      if (pattern == null) {
+        continue;
+      }
+
+      if (!caseSensitive) {
+        foldTable = merge(foldTable, ByteSearcher.getFoldTable(charset));
+      }
+
+      boolean known = false;
+      for (final byte[] other : patterns) {
+        known |= Arrays.equals(other, pattern);
+      }
+      if (!known) {
+        patterns.add(pattern);
+        patternCharsets.add(charset);
+      }
+    }
+
+    if (patterns.isEmpty()) {
+      throw new IllegalArgumentException("Error: None of the charsets can encode the text");
+    }
+
+    m_text = text;
+    m_caseSensitive = caseSensitive;
+    m_patterns = patterns.toArray(new byte[patterns.size()][]);
+    m_charsets = patternCharsets.toArray(new Charset[patternCharsets.size()]);
+    m_searcher = new MultiPatternSearcher(m_patterns, foldTable);
+  }
+
+  /**
+   * Returns the charsets that are usually worth searching: UTF-8, UTF-16LE,
+   * UTF-16BE and the native charset of the platform. The native charset is
+   * taken from the <code>native.encoding</code> property, because the default
+   * charset is UTF-8 since Java 18.
+   */
+  public static Charset[] getDefaultCharsets()
+  {
+    final Set<Charset> charsets = new LinkedHashSet<Charset>();
+    charsets.add(StandardCharsets.UTF_8);
+    charsets.add(StandardCharsets.UTF_16LE);
+    charsets.add(StandardCharsets.UTF_16BE);
+    charsets.add(getNativeCharset());
+    return charsets.toArray(new Charset[charsets.size()]);
+  }
+
+  /**
+   * Returns the charsets whose encodings of the text are searched. Charsets
+   * with the same encoding as a previous charset are left out.
+   */
+  public Charset[] getCharsets()
+  {
+    return m_charsets.clone();
+  }
+
+  /**
+   * Returns the offset of the first match in any encoding that starts within
+   * the specified window. Matches may extend behind the window up to the end
+   * of the data.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window.
+   *
+   * @return The offset of the first match, or -1 if there is no match.
+   */
+  public long indexOf(final IDataProvider data, final long from, final long to)
+  {
+    final long dataLength = LargeDataProviderAdapter.getDataLength(data);
+    final int overlap = m_searcher.getMaximumPatternLength() - 1;
+    final Hits hits = new Hits(data, true, false, to);
+    m_searcher.findAll(data, from, Math.min(dataLength, Math.min(to, dataLength) + overlap), hits);
+    if (hits.m_found < 0) {
+      return -1;
+    }
+
+    // Hits are reported by their end offsets, so a longer encoding may start
+    // a little earlier than the first hit
+    final Hits earlier = new Hits(data, false, false, hits.m_found);
+    m_searcher.findAll(data, Math.max(from, hits.m_found - overlap), hits.m_found + overlap, earlier);
+    return earlier.m_found >= 0 ? earlier.m_found : hits.m_found;
+  }
+
+  /**
+   * Returns the offset of the last match in any encoding that starts within
+   * the specified window. Matches may extend behind the window up to the end
+   * of the data.
+   *
+   * @param data
+   *          The data to search.
+   * @param from
+   *          The first offset of the window.
+   * @param to
+   *          The offset behind the window.
+   *
+   * @return The offset of the last match, or -1 if there is no match.
+   */
+  public long lastIndexOf(final IDataProvider data, long from, long to)
+  {
+    final long dataLength = LargeDataProviderAdapter.getDataLength(data);
+    from = Math.max(from, 0);
+    to = Math.min(to, dataLength);
+
+    // Search the window in blocks from its end
+    final int overlap = m_searcher.getMaximumPatternLength() - 1;
+    for (long end = to; end > from; end -= ByteSearcher.DEFAULT_BLOCK_SIZE) {
+      final long start = Math.max(from, end - ByteSearcher.DEFAULT_BLOCK_SIZE);
+      final Hits hits = new Hits(data, false, true, end);
+      m_searcher.findAll(data, start, Math.min(dataLength, end + overlap), hits);
+      if (hits.m_found >= 0) {
+        return hits.m_found;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the encoding of a text in a charset, or null if the charset can't
+   * encode the text.
+   */
+  private static byte[] encode(final String text, final Charset charset)
+  {
+    if (!charset.canEncode()) {
+      return null;
+    }
+
+    try {
+      final CharsetEncoder encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT);
+      final ByteBuffer buffer = encoder.encode(CharBuffer.wrap(text));
+      final byte[] pattern = new byte[buffer.remaining()];
+      buffer.get(pattern);
+      return pattern.length > 0 ? pattern : null;
+    }
+    catch (final CharacterCodingException exception) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the charset of the <code>native.encoding</code> property, or the
+   * default charset if the property isn't set or names an unsupported charset.
+   */
+  private static Charset getNativeCharset()
+  {
+    try {
+      final String name = System.getProperty("native.encoding");
+      if (name != null) {
+        return Charset.forName(name);
+      }
+    }
+    catch (final IllegalArgumentException exception) {
+      // Unknown or unsupported charset
+    }
+    catch (final SecurityException exception) {
+      // Property can't be read
+    }
+
+    return Charset.defaultCharset();
+  }
+
+  /**
+   * Merges two folding tables, so that bytes that are folded together by
+   * either table are folded to the same byte.
+   */
+  private static byte[] merge(final byte[] table, final byte[] other)
+  {
+    if (table == null) {
+      return other;
+    }
+
+    // Union-find over the byte values, every class is folded to its smallest
+    // member
+    final int[] parents = new int[256];
+    for (int i = 0; i < parents.length; i++) {
+      parents[i] = i;
+    }
+    for (int i = 0; i < parents.length; i++) {
+      union(parents, i, table[i] & 255);
+      union(parents, i, other[i] & 255);
+    }
+
+    final byte[] result = new byte[256];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = (byte) find(parents, i);
+    }
+    return result;
+  }
+
+  private static int find(final int[] parents, int value)
+  {
+    while (parents[value] != value) {
+      value = parents[value] = parents[parents[value]];
+    }
+    return value;
+  }
+
+  private static void union(final int[] parents, final int first, final int second)
+  {
+    final int a = find(parents, first);
+    final int b = find(parents, second);
+    if (a < b) {
+      parents[b] = a;
+    }
+    else {
+      parents[a] = b;
+    }
+  }
+
+  /**
+   * Collects the first or last confirmed hit of a search.
+   */
+  private final class Hits implements MultiPatternSearcher.IHitHandler
+  {
+    private final IDataProvider m_data;
+
+    /**
+     * True, to stop after the block with the first confirmed hit.
+     */
+    private final boolean m_stop;
+
+    /**
+     * True, to keep the hit with the largest offset instead of the smallest.
+     */
+    private final boolean m_last;
+
+    /**
+     * Only hits that start before this offset are kept.
+     */
+    private final long m_limit;
+
+    private long m_found = -1;
+
+    private Hits(final IDataProvider data, final boolean stop, final boolean last, final long limit)
+    {
+      m_data = data;
+      m_stop = stop;
+      m_last = last;
+      m_limit = limit;
+    }
+
+    @Override
+    public boolean hitsFound(final int[] patterns, final long[] offsets, final int count)
+    {
+      for (int i = 0; i < count; i++) {
+        final long offset = offsets[i];
+        final boolean better = offset < m_limit
+            && (m_found < 0 || (m_last ? offset > m_found : offset < m_found));
+
+        if (better && confirm(patterns[i], offset)) {
+          m_found = offset;
+        }
+      }
+
+      return !(m_stop && m_found >= 0);
+    }
+
+    /**
+     * Returns whether a hit really is the text, ignoring case.
+     */
+    private boolean confirm(final int pattern, final long offset)
+    {
+      if (m_caseSensitive) {
+        return true;
+      }
+
+      final byte[] bytes = new byte[m_patterns[pattern].length];
+      if (m_data.read(offset, bytes, 0, bytes.length) != bytes.length) {
+        return false;
+      }
+
+      return new String(bytes, m_charsets[pattern]).equalsIgnoreCase(m_text);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package tv.porst.jhexview;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Color map that colors bytes by their values only, e.g. to highlight zero
+ * bytes or printable characters.
+ *
+ * The colors are compiled into lookup tables with 256 entries, so coloring
+ * the visible bytes only costs a table lookup per byte.
+ */
+public final class ValueColormap implements IBatchColormap
+{
+  /**
+   * Palette index of the foreground color of every byte value, -1 for the
+   * default color.
+   */
+  private final int[] m_foreground = new int[256];
+
+  /**
+   * Palette index of the background color of every byte value, -1 for the
+   * default color.
+   */
+  private final int[] m_background = new int[256];
+
+  /**
+   * The distinct colors that are used by the lookup tables.
+   */
+  private Color[] m_palette = new Color[0];
+
+  /**
+   * Creates a color map that does not color any byte.
+   */
+  public ValueColormap()
+  {
+    Arrays.fill(m_foreground, -1);
+    Arrays.fill(m_background, -1);
+  }
+
+  /**
+   * Resets the colors of all byte values to the default colors.
+   */
+  public void clear()
+  {
+    Arrays.fill(m_foreground, -1);
+    Arrays.fill(m_background, -1);
+    m_palette = new Color[0];
+  }
+
+  @Override
+  public boolean colorize(final byte value, final long currentOffset)
+  {
+    return m_foreground[value & 0xFF] >= 0 || m_background[value & 0xFF] >= 0;
+  }
+
+  @Override
+  public void colorizeAll(final byte[] data, final int dataOffset, final long currentOffset,
+                          final int length, final int[] foreground, final int[] background)
+  {
+    final int[] foregroundTable = m_foreground;
+    final int[] backgroundTable = m_background;
+    for (int i = 0; i < length; i++) {
+      final int value = data[dataOffset + i] & 0xFF;
+      foreground[i] = foregroundTable[value];
+      background[i] = backgroundTable[value];
+    }
+  }
+
+  @Override
+  public Color getBackgroundColor(final byte value, final long currentOffset)
+  {
+    final int index = m_background[value & 0xFF];
+    return index < 0 ? null : m_palette[index];
+  }
+
+  @Override
+  public Color getForegroundColor(final byte value, final long currentOffset)
+  {
+    final int index = m_foreground[value & 0xFF];
+    return index < 0 ? null : m_palette[index];
+  }
+
+  @Override
+  public Color[] getPalette()
+  {
+    return m_palette;
+  }
+
+  /**
+   * Sets the colors of a single byte value.
+   *
+   * @param value
+   *          The byte value (0-255).
+   * @param foreground
+   *          The foreground color. Null, to use the default foreground color.
+   * @param background
+   *          The background color. Null, to use the default background color.
+   */
+  public void setColors(final int value, final Color foreground, final Color background)
+  {
+    setColors(value, value, foreground, background);
+  }
+
+  /**
+   * Sets the colors of a range of byte values.
+   *
+   * @param firstValue
+   *          The first byte value of the range (0-255).
+   * @param lastValue
+   *          The last byte value of the range (0-255).
+   * @param foreground
+   *          The foreground color. Null, to use the default foreground color.
+   * @param background
+   *          The background color. Null, to use the default background color.
+   *
+   * @throws IllegalArgumentException
+   *           Thrown if the range is invalid.
+   */
+  public void setColors(final int firstValue, final int lastValue, final Color foreground,
+                        final Color background)
+  {
+    if (firstValue < 0 || lastValue > 255 || firstValue > lastValue) {
+      throw new IllegalArgumentException("Error: Invalid range of byte values");
+    }
+
+    // Resolve the old palette indices, then rebuild the palette from the
+    // colors that are still in use
+    final Color[] foregroundColors = new Color[256];
+    final Color[] backgroundColors = new Color[256];
+    for (int value = 0; value < 256; value++) {
+      foregroundColors[value] = m_foreground[value] < 0 ? null : m_palette[m_foreground[value]];
+      backgroundColors[value] = m_background[value] < 0 ? null : m_palette[m_background[value]];
+    }
+    Arrays.fill(foregroundColors, firstValue, lastValue + 1, foreground);
+    Arrays.fill(backgroundColors, firstValue, lastValue + 1, background);
+
+    final Map<Color, Integer> indices = new HashMap<Color, Integer>();
+    final int[] foregroundTable = new int[256];
+    final int[] backgroundTable = new int[256];
+    for (int value = 0; value < 256; value++) {
+      foregroundTable[value] = getIndex(indices, foregroundColors[value]);
+      backgroundTable[value] = getIndex(indices, backgroundColors[value]);
+    }
+
+    final Color[] palette = new Color[indices.size()];
+    for (final Map.Entry<Color, Integer> entry : indices.entrySet()) {
+      palette[entry.getValue()] = entry.getKey();
+    }
+
+    System.arraycopy(foregroundTable, 0, m_foreground, 0, 256);
+    System.arraycopy(backgroundTable, 0, m_background, 0, 256);
+    m_palette = palette;
+  }
+
+  /**
+   * Returns the palette index of a color, adding it to the palette if
+   * necessary.
+   */
+  private static int getIndex(final Map<Color, Integer> indices, final Color color)
+  {
+    if (color == null) {
+      return -1;
+    }
+
+    Integer index = indices.get(color);
+    if (index == null) {
+      index = indices.size();
+      indices.put(color, index);
+    }
+    return index;
+  }
+}
@@ -0,0 +1,557 @@
+package tv.porst.jhexview;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds numeric values in data and narrows them down on later snapshots of
+ * the data, like the value scanner of a memory inspector.
+ *
+ * A {@link #scan(IDataProvider, Number, Number) scan} finds all values of a
+ * type that lie within a range, at offsets that are multiples of an
+ * alignment. Every {@link #narrow(IDataProvider, Condition) narrowing} reads
+ * the values of the remaining candidates from a new snapshot and keeps the
+ * candidates whose values have changed in the requested way, or lie within a
+ * new range.
+ *
+ * The candidates are kept in chunks of primitive arrays with their offsets
+ * and the raw bytes of their last values, which takes 8 bytes plus the size
+ * of the type per candidate. Scans and narrowings process the chunks in
+ * parallel on the threads of a {@link ForkJoinPool}, so the data provider
+ * must support concurrent reads.
+ *
+ * A scanner must not be used by several threads at the same time.
+ */
+public final class ValueScanner
+{
+  /**
+   * Types of the scanned values. Integers are signed.
+   */
+  public enum Type
+  {
+    INT8(1, false), INT16(2, false), INT32(4, false), INT64(8, false), FLOAT32(4, true), FLOAT64(8, true);
+
+    private final int m_size;
+
+    private final boolean m_floatingPoint;
+
+    private Type(final int size, final boolean floatingPoint)
+    {
+      m_size = size;
+      m_floatingPoint = floatingPoint;
+    }
+
+    /**
+     * Returns the size of a value in bytes.
+     */
+    public int getSize()
+    {
+      return m_size;
+    }
+
+    /**
+     * Returns whether the values are floating point numbers.
+     */
+    public boolean isFloatingPoint()
+    {
+      return m_floatingPoint;
+    }
+  }
+
+  /**
+   * Conditions that compare the values of the candidates with their values in
+   * the previous snapshot.
+   */
+  public enum Condition
+  {
+    CHANGED, UNCHANGED, INCREASED, DECREASED
+  }
+
+  /**
+   * Size of the parts of the data that are scanned as one task.
+   */
+  private static final int SCAN_CHUNK_SIZE = 4 * 1024 * 1024;
+
+  /**
+   * Maximum number of candidates per chunk after a narrowing.
+   */
+  private static final int CANDIDATE_CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * Maximum number of bytes read at once while narrowing.
+   */
+  private static final int READ_SIZE = 1024 * 1024;
+
+  /**
+   * Maximum number of bytes between two candidates that are read at once
+   * while narrowing. Candidates further apart are read separately.
+   */
+  private static final int MAX_READ_GAP = 4096;
+
+  private final Type m_type;
+
+  private final ByteOrder m_order;
+
+  private final int m_alignment;
+
+  private final ForkJoinPool m_pool;
+
+  /**
+   * The candidates in ascending order of their offsets.
+   */
+  private List<Chunk> m_chunks = new ArrayList<Chunk>();
+
+  /**
+   * Creates a scanner that uses the common fork-join pool.
+   *
+   * @param type
+   *          The type of the values.
+   * @param order
+   *          The byte order of the values.
+   * @param alignment
+   *          The alignment of the values. Values are only found at offsets
+   *          that are multiples of the alignment.
+   */
+  public ValueScanner(final Type type, final ByteOrder order, final int alignment)
+  {
+    this(type, order, alignment, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a new scanner.
+   *
+   * @param type
+   *          The type of the values.
+   * @param order
+   *          The byte order of the values.
+   * @param alignment
+   *          The alignment of the values. Values are only found at offsets
+   *          that are multiples of the alignment.
+   * @param pool
+   *          The pool whose threads scan the data.
+   *
+   * @throws IllegalArgumentException
+   *           Thrown if the alignment is not positive.
+   */
+  public ValueScanner(final Type type, final ByteOrder order, final int alignment, final ForkJoinPool pool)
+  {
+    if (type == null) {
+      throw new NullPointerException("Error: Type can't be null");
+    }
+
+    if (order == null) {
+      throw new NullPointerException("Error: Byte order can't be null");
+    }
+
+    if (pool == null) {
+      throw new NullPointerException("Error: Pool can't be null");
+    }
+
+    if (alignment <= 0) {
+      throw new IllegalArgumentException("Error: Alignment must be positive");
+    }
+
+    m_type = type;
+    m_order = order;
+    m_alignment = alignment;
+    m_pool = pool;
+  }
+
+  /**
+   * Returns the offsets of the first candidates.
+   *
+   * @param maxCount
+   *          The maximum number of returned offsets.
+   */
+  public long[] getCandidates(final int maxCount)
+  {
+    final long[] offsets = new long[(int) Math.min(Math.max(maxCount, 0), getCandidateCount())];
+    int count = 0;
+    for (final Chunk chunk : m_chunks) {
+      final int length = Math.min(chunk.m_count, offsets.length - count);
+      System.arraycopy(chunk.m_offsets, 0, offsets, count, length);
+      count += length;
+      if (count == offsets.length) {
+        break;
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * Returns the number of candidates.
+   */
+  public long getCandidateCount()
+  {
+    long count = 0;
+    for (final Chunk chunk : m_chunks) {
+      count += chunk.m_count;
+    }
+    return count;
+  }
+
+  /**
+   * Returns the type of the values.
+   */
+  public Type getType()
+  {
+    return m_type;
+  }
+
+  /**
+   * Keeps the candidates whose values have changed in the specified way since
+   * the previous scan or narrowing.
+   *
+   * @param data
+   *          The new snapshot of the data.
+   * @param condition
+   *          The condition the values must fulfill.
+   *
+   * @return The number of remaining candidates.
+   */
+  public long narrow(final IDataProvider data, final Condition condition)
+  {
+    if (condition == null) {
+      throw new NullPointerException("Error: Condition can't be null");
+    }
+
+    return narrow(data, new Filter(condition, null, null));
+  }
+
+  /**
+   * Keeps the candidates whose values lie within the specified range. Use the
+   * same value as minimum and maximum to keep the candidates that are equal
+   * to a value.
+   *
+   * @param data
+   *          The new snapshot of the data.
+   * @param min
+   *          The smallest value.
+   * @param max
+   *          The largest value.
+   *
+   * @return The number of remaining candidates.
+   */
+  public long narrow(final IDataProvider data, final Number min, final Number max)
+  {
+    return narrow(data, new Filter(null, min, max));
+  }
+
+  /**
+   * Removes all candidates.
+   */
+  public void reset()
+  {
+    m_chunks = new ArrayList<Chunk>();
+  }
+
+  /**
+   * Finds all values within the specified range and makes them the
+   * candidates. Previous candidates are removed. Use the same value as
+   * minimum and maximum to find the values that are equal to a value.
+   *
+   * @param data
+   *          The data to scan.
+   * @param min
+   *          The smallest value.
+   * @param max
+   *          The largest value.
+   *
+   * @return The number of candidates.
+   */
+  public long scan(final IDataProvider data, final Number min, final Number max)
+  {
+    if (data == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    final Filter filter = new Filter(null, min, max);
+    final long dataLength = LargeDataProviderAdapter.getDataLength(data);
+
+    // Chunks start at multiples of the alignment
+    final long chunkSize = Math.max(1, SCAN_CHUNK_SIZE / m_alignment) * m_alignment;
+    final int chunkCount = (int) ((dataLength + chunkSize - 1) / chunkSize);
+    final Chunk[] chunks = new Chunk[chunkCount];
+
+    final int bufferSize = (int) Math.min(chunkSize + m_type.m_size - 1, Integer.MAX_VALUE - 8);
+    process(chunkCount, new BufferedChunkHandler(bufferSize) {
+      @Override
+      public boolean processChunk(final int index, final byte[] buffer, final AtomicBoolean stopped)
+      {
+        final long start = index * chunkSize;
+        final int length = (int) Math.min(chunkSize + m_type.m_size - 1, dataLength - start);
+        final int count = Math.max(0, data.read(start, buffer, 0, length));
+        final ByteBuffer values = ByteBuffer.wrap(buffer).order(m_order);
+
+        final Chunk chunk = new Chunk(1024);
+        for (int i = 0; i + m_type.m_size <= count && i < chunkSize; i += m_alignment) {
+          if (filter.accept(values, i, null, 0)) {
+            chunk.add(start + i, buffer, i, m_type.m_size);
+          }
+        }
+        chunks[index] = chunk;
+        return true;
+      }
+    });
+
+    m_chunks = compact(Arrays.asList(chunks));
+    return getCandidateCount();
+  }
+
+  /**
+   * Removes empty chunks and merges small neighboring chunks.
+   */
+  private List<Chunk> compact(final List<Chunk> chunks)
+  {
+    final List<Chunk> result = new ArrayList<Chunk>();
+    Chunk last = null;
+    for (final Chunk chunk : chunks) {
+      if (chunk == null || chunk.m_count == 0) {
+        continue;
+      }
+
+      if (last != null && last.m_count + chunk.m_count <= CANDIDATE_CHUNK_SIZE) {
+        for (int i = 0; i < chunk.m_count; i++) {
+          last.add(chunk.m_offsets[i], chunk.m_values, i * m_type.m_size, m_type.m_size);
+        }
+      }
+      else {
+        chunk.trim(m_type.m_size);
+        result.add(chunk);
+        last = chunk;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads the values of all candidates and keeps the candidates that are
+   * accepted by the filter. The values are updated to the new values.
+   */
+  private long narrow(final IDataProvider data, final Filter filter)
+  {
+    if (data == null) {
+      throw new NullPointerException("Error: Data provider can't be null");
+    }
+
+    final List<Chunk> chunks = m_chunks;
+    final long dataLength = LargeDataProviderAdapter.getDataLength(data);
+    final int size = m_type.m_size;
+
+    process(chunks.size(), new BufferedChunkHandler(READ_SIZE) {
+      @Override
+      public boolean processChunk(final int index, final byte[] buffer, final AtomicBoolean stopped)
+      {
+        final Chunk chunk = chunks.get(index);
+        final ByteBuffer values = ByteBuffer.wrap(buffer).order(m_order);
+        final ByteBuffer previous = ByteBuffer.wrap(chunk.m_values).order(m_order);
+        int kept = 0;
+        int i = 0;
+        while (i < chunk.m_count) {
+          // Read the values of the following candidates at once, as long as
+          // they are close enough to each other
+          final long start = chunk.m_offsets[i];
+          int last = i;
+          while (last + 1 < chunk.m_count
+                 && chunk.m_offsets[last + 1] - chunk.m_offsets[last] - size <= MAX_READ_GAP
+                 && chunk.m_offsets[last + 1] + size - start <= READ_SIZE) {
+            last++;
+          }
+
+          final long end = Math.min(dataLength, chunk.m_offsets[last] + size);
+          final int count = start < end ? Math.max(0, data.read(start, buffer, 0, (int) (end - start))) : 0;
+
+          for (; i <= last; i++) {
+            final int position = (int) (chunk.m_offsets[i] - start);
+            if (position + size <= count && filter.accept(values, position, previous, i * size)) {
+              chunk.m_offsets[kept] = chunk.m_offsets[i];
+              System.arraycopy(buffer, position, chunk.m_values, kept * size, size);
+              kept++;
+            }
+          }
+        }
+        chunk.m_count = kept;
+        return true;
+      }
+    });
+
+    m_chunks = compact(chunks);
+    return getCandidateCount();
+  }
+
+  /**
+   * Processes the chunks [0, count) on the threads of the pool.
+   */
+  private void process(final int count, final BufferedChunkHandler handler)
+  {
+    ParallelChunks.process(m_pool, m_pool.getParallelism(), count, handler);
+  }
+
+  /**
+   * Returns the raw bits of the value at the specified position, sign
+   * extended to 64 bits. For integers, these are the values themselves.
+   */
+  private long getBits(final ByteBuffer buffer, final int position)
+  {
+    switch (m_type) {
+      case INT8:
+        return buffer.get(position);
+      case INT16:
+        return buffer.getShort(position);
+      case INT32:
+      case FLOAT32:
+        return buffer.getInt(position);
+      default:
+        return buffer.getLong(position);
+    }
+  }
+
+  /**
+   * Returns the floating point value of the specified raw bits.
+   */
+  private double toDouble(final long bits)
+  {
+    return m_type == Type.FLOAT32 ? Float.intBitsToFloat((int) bits) : Double.longBitsToDouble(bits);
+  }
+
+  /**
+   * Candidates with their offsets and the raw bytes of their last values.
+   */
+  private static final class Chunk
+  {
+    private long[] m_offsets;
+
+    private byte[] m_values;
+
+    private int m_count = 0;
+
+    private Chunk(final int capacity)
+    {
+      m_offsets = new long[Math.max(capacity, 16)];
+      m_values = new byte[0];
+    }
+
+    private void add(final long offset, final byte[] buffer, final int position, final int size)
+    {
+      if (m_count == m_offsets.length) {
+        m_offsets = Arrays.copyOf(m_offsets, m_count * 2);
+      }
+      if ((m_count + 1) * size > m_values.length) {
+        m_values = Arrays.copyOf(m_values, Math.max(m_offsets.length * size, (m_count + 1) * size));
+      }
+
+      m_offsets[m_count] = offset;
+      System.arraycopy(buffer, position, m_values, m_count * size, size);
+      m_count++;
+    }
+
+    /**
+     * Releases the unused capacity.
+     */
+    private void trim(final int size)
+    {
+      if (m_offsets.length > m_count + m_count / 4) {
+        m_offsets = Arrays.copyOf(m_offsets, m_count);
+        m_values = Arrays.copyOf(m_values, m_count * size);
+      }
+    }
+  }
+
+  /**
+   * Processes chunks with a buffer of a fixed size per thread.
+   */
+  private abstract static class BufferedChunkHandler implements ParallelChunks.IChunkHandler<byte[]>
+  {
+    private final int m_bufferSize;
+
+    private BufferedChunkHandler(final int bufferSize)
+    {
+      m_bufferSize = bufferSize;
+    }
+
+    @Override
+    public byte[] createState()
+    {
+      return new byte[m_bufferSize];
+    }
+  }
+
+  /**
+   * Decides whether a value is kept, either by comparing it with the previous
+   * value or with a range.
+   */
+  private final class Filter
+  {
+    private final Condition m_condition;
+
+    /**
+     * The smallest integer and the width of the integer range, shifted so
+     * that the range can be checked with a single signed comparison.
+     */
+    private final long m_minLong;
+    private final long m_rangeLong;
+
+    private final double m_minDouble;
+    private final double m_maxDouble;
+
+    private Filter(final Condition condition, final Number min, final Number max)
+    {
+      m_condition = condition;
+      if (condition == null) {
+        if (min == null || max == null) {
+          throw new NullPointerException("Error: Range can't be null");
+        }
+
+        if (m_type.m_floatingPoint ? min.doubleValue() > max.doubleValue() : min.longValue() > max.longValue()) {
+          throw new IllegalArgumentException("Error: Minimum can't be larger than maximum");
+        }
+      }
+
+      m_minLong = min == null ? 0 : min.longValue();
+      m_rangeLong = (max == null ? 0 : max.longValue()) - m_minLong + Long.MIN_VALUE;
+      m_minDouble = min == null ? 0 : min.doubleValue();
+      m_maxDouble = max == null ? 0 : max.doubleValue();
+    }
+
+    /**
+     * Returns whether the value at the specified position of the buffer is
+     * kept.
+     *
+     * @param previous
+     *          Buffer with the previous value, or null for the first scan.
+     */
+    private boolean accept(final ByteBuffer buffer, final int position, final ByteBuffer previous,
+                           final int previousPosition)
+    {
+      final long bits = getBits(buffer, position);
+      if (m_condition == null) {
+        if (m_type.m_floatingPoint) {
+          final double value = toDouble(bits);
+          return value >= m_minDouble & value <= m_maxDouble;
+        }
+        return bits - m_minLong + Long.MIN_VALUE <= m_rangeLong;
+      }
+
+      final long previousBits = getBits(previous, previousPosition);
+      switch (m_condition) {
+        case CHANGED:
+          return bits != previousBits;
+        case UNCHANGED:
+          return bits == previousBits;
+        case INCREASED:
+          return m_type.m_floatingPoint ? toDouble(bits) > toDouble(previousBits)
+              : bits > previousBits;
+        case DECREASED:
+          return m_type.m_floatingPoint ? toDouble(bits) < toDouble(previousBits)
+              : bits < previousBits;
+        default:
+          return false;
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package tv.porst.jhexview;
+
+import java.util.EventObject;
+
+/**
+ * ViewportEvent is used to notify listeners of the data region that is
+ * currently visible in a hex view. Besides the region itself it describes how
+ * the view moved since the last notification, which allows listeners to guess
+ * which data is requested next.
+ */
+public class ViewportEvent extends EventObject
+{
+  private static final long serialVersionUID = -7604851223180263392L;
+
+  private final long offset;
+  private final int length;
+  private final int direction;
+  private final double speed;
+
+  /**
+   * Constructs a ViewportEvent.
+   * @param source The hex view component.
+   * @param offset Offset of the first visible byte.
+   * @param length Maximum number of visible bytes.
+   * @param direction 1 if the view moved towards the end of the data, -1 if it moved
+   *                  towards the beginning, 0 if it didn't move.
+   * @param speed Scroll speed in bytes per second.
+   */
+  public ViewportEvent(Object source, long offset, int length, int direction, double speed)
+  {
+    super(source);
+    this.offset = offset;
+    this.length = length;
+    this.direction = direction;
+    this.speed = speed;
+  }
+
+  /**
+   * Returns the scroll direction.
+   * @return 1 if the view moved towards the end of the data, -1 if it moved towards the
+   *         beginning, 0 if it didn't move.
+   */
+  public int getDirection()
+  {
+    return direction;
+  }
+
+  /**
+   * Returns the maximum number of visible bytes.
+   * @return The maximum number of visible bytes.
+   */
+  public int getLength()
+  {
+    return length;
+  }
+
+  /**
+   * Returns the offset of the first visible byte.
+   * @return The offset of the first visible byte.
+   */
+  public long getOffset()
+  {
+    return offset;
+  }
+
+  /**
+   * Returns the scroll speed.
+   * @return The scroll speed in bytes per second.
+   */
+  public double getSpeed()
+  {
+    return speed;
+  }
+}